@@ -0,0 +1,45 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders;
+
+import com.attivio.sdk.ingest.IngestDocument;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Sets the title of a document with a few fields. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SampleDocumentModifyingTransformerBenchmark {
+
+  private SampleDocumentModifyingTransformer transformer;
+
+  private IngestDocument doc;
+
+  @Setup
+  public void setUp() {
+    transformer = new SampleDocumentModifyingTransformer();
+    doc = new IngestDocument("doc");
+    for (int i = 0; i < 10; i++) {
+      doc.setField("field" + i, "value " + i);
+    }
+  }
+
+  @Benchmark
+  public void processDocument(Blackhole blackhole) throws Exception {
+    blackhole.consume(transformer.processDocument(doc));
+    blackhole.consume(doc);
+  }
+}
@@ -0,0 +1,51 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders;
+
+import com.attivio.sdk.ingest.IngestFieldValue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Lower-cases a mixed case value of <code>length</code> characters. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SampleFieldValueCreatingTransformerBenchmark {
+
+  @Param({"16", "1024"})
+  public int length;
+
+  private SampleFieldValueCreatingTransformer transformer;
+
+  private IngestFieldValue value;
+
+  @Setup
+  public void setUp() {
+    transformer = new SampleFieldValueCreatingTransformer();
+    Random random = new Random(42);
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      char c = (char) ('a' + random.nextInt(26));
+      text.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+    }
+    value = new IngestFieldValue(text.toString());
+  }
+
+  @Benchmark
+  public IngestFieldValue createMappedValue() throws Exception {
+    return transformer.createMappedValue("title", value);
+  }
+}
@@ -0,0 +1,69 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.util.XMLUtils;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jaxen.XPath;
+import org.jaxen.dom.DOMXPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Selects the items of a parsed {@link SyntheticFeed} and reads their <code>@id</code>, once with
+ * Jaxen and once with the {@link SimplePath} walker and attribute lookup used for simple rules.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SplitPathBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  public int items;
+
+  private Element feed;
+
+  private XPath documentPath;
+
+  private XPath idPath;
+
+  private SimplePath simplePath;
+
+  @Setup
+  public void setUp() throws Exception {
+    feed = XMLUtils.parseAsW3c(SyntheticFeed.xml(items)).getDocumentElement();
+    documentPath = new DOMXPath("/feed/item");
+    idPath = new DOMXPath("@id");
+    simplePath = SimplePath.parse("/feed/item", null);
+  }
+
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public void jaxen(Blackhole blackhole) throws Exception {
+    for (Element item : (List<Element>) documentPath.selectNodes(feed)) {
+      blackhole.consume(((Node) idPath.selectSingleNode(item)).getTextContent());
+    }
+  }
+
+  @Benchmark
+  public void simplePath(Blackhole blackhole) {
+    for (Element item : simplePath.select(feed)) {
+      blackhole.consume(item.getAttributeNode("id").getValue());
+    }
+  }
+}
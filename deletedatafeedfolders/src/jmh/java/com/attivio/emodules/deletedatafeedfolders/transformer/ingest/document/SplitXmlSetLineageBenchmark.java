@@ -0,0 +1,114 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.schema.FieldNames;
+import com.attivio.sdk.search.query.Query;
+import com.attivio.sdk.test.MockIngestClient;
+import com.attivio.util.XMLUtils;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Splits a {@link SyntheticFeed} of <code>items</code> items, including the delete log and the
+ * lineage deletes. One operation is one whole feed.
+ *
+ * <p><code>input</code> is <code>dom</code> for a feed parsed before the benchmark and <code>
+ * streaming</code> for a feed held as text and split with StAX.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SplitXmlSetLineageBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  public int items;
+
+  @Param({"dom", "streaming"})
+  public String input;
+
+  @Param({"dom", "text"})
+  public String childXmlFormat;
+
+  private SplitXmlSetLineage transformer;
+
+  private IngestDocument feed;
+
+  private File deleteLog;
+
+  /** Hands the output to the blackhole instead of keeping it. */
+  private static final class ConsumingClient extends MockIngestClient {
+    private final Blackhole blackhole;
+
+    ConsumingClient(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void feed(IngestDocument... docs) {
+      for (IngestDocument doc : docs) {
+        blackhole.consume(doc);
+      }
+    }
+
+    @Override
+    public void deleteByQuery(String zone, Query query) {
+      blackhole.consume(query);
+    }
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    String xml = SyntheticFeed.xml(items);
+    feed = new IngestDocument("feed");
+    feed.setField(FieldNames.TITLE, "Synthetic feed");
+    transformer = new SplitXmlSetLineage();
+    if ("streaming".equals(input)) {
+      feed.setField("xml", xml);
+      transformer.setInput(Collections.singletonList("xml"));
+      transformer.setStreaming(true);
+    } else {
+      feed.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+    }
+    Map<String, String> rules = new LinkedHashMap<String, String>();
+    rules.put("/feed/item", "@id");
+    transformer.setRules(rules);
+    Map<String, String> deleteFlag = new LinkedHashMap<String, String>();
+    deleteFlag.put("/feed/item", "@deleted");
+    transformer.setDeleteFlag(deleteFlag);
+    deleteLog = File.createTempFile("deletePaths", ".txt");
+    transformer.setDeleteFile(deleteLog.getAbsolutePath());
+    transformer.setChildXmlFormat(childXmlFormat);
+    transformer.startComponent();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    transformer.stopComponent();
+    deleteLog.delete();
+  }
+
+  @Benchmark
+  public void split(Blackhole blackhole) throws Exception {
+    transformer.process(feed, new ConsumingClient(blackhole));
+  }
+}
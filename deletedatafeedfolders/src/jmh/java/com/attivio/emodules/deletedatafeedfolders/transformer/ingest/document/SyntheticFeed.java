@@ -0,0 +1,51 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+/**
+ * Generates datafeed XML for the benchmarks:
+ *
+ * <pre>
+ * &lt;feed&gt;
+ *   &lt;item id="/assets/f0/doc0.pdf"&gt;&lt;title&gt;Document 0&lt;/title&gt;...&lt;/item&gt;
+ *   ...
+ *   &lt;item id="/assets/f3" deleted="true"/&gt;
+ * &lt;/feed&gt;
+ * </pre>
+ *
+ * Items are spread over folders of {@link #ITEMS_PER_FOLDER} documents, one in every {@link
+ * #DELETE_EVERY} items flags a folder for deletion.
+ */
+final class SyntheticFeed {
+
+  static final int ITEMS_PER_FOLDER = 100;
+
+  static final int DELETE_EVERY = 1000;
+
+  private SyntheticFeed() {}
+
+  /** @return a feed of <code>items</code> items */
+  static String xml(int items) {
+    StringBuilder xml = new StringBuilder(items * 160);
+    xml.append("<feed>");
+    for (int i = 0; i < items; i++) {
+      int folder = i / ITEMS_PER_FOLDER;
+      if (i % DELETE_EVERY == DELETE_EVERY - 1) {
+        xml.append("<item id=\"/assets/deleted/f").append(folder).append("\" deleted=\"true\"/>");
+        continue;
+      }
+      xml.append("<item id=\"/assets/f")
+          .append(folder)
+          .append("/doc")
+          .append(i)
+          .append(".pdf\"><title>Document ")
+          .append(i)
+          .append("</title><author>Author ")
+          .append(i % 97)
+          .append("</author><text>Synthetic body text of document ")
+          .append(i)
+          .append(" &amp; some more words</text></item>");
+    }
+    xml.append("</feed>");
+    return xml.toString();
+  }
+}
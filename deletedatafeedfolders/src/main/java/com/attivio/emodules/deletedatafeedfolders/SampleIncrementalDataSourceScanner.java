@@ -1,12 +1,12 @@
 package com.attivio.emodules.deletedatafeedfolders;
 
+import com.attivio.emodules.deletedatafeedfolders.connector.FileDocuments;
 import com.attivio.sdk.AttivioException;
 import com.attivio.sdk.client.IndexCommitter;
 import com.attivio.sdk.client.IngestionHistoryApi;
 import com.attivio.sdk.connector.DocumentPublisher;
 import com.attivio.sdk.error.ConnectorError;
 import com.attivio.sdk.ingest.IngestDocument;
-import com.attivio.sdk.ingest.IngestFieldValue;
 import com.attivio.sdk.scanner.DataSourceScanner;
 import com.attivio.sdk.scanner.IncrementalDataSourceScanner;
 import com.attivio.sdk.scanner.IndexCommitterAware;
@@ -20,14 +20,11 @@ import com.attivio.sdk.server.annotation.ConfigurationOption;
 import com.attivio.sdk.server.annotation.ConfigurationOptionInfo;
 import com.attivio.sdk.server.annotation.ScannerInfo;
 import com.attivio.sdk.service.ServiceFactoryFactory;
-import com.attivio.util.FileUtils;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * An example for an incremental file system scanner. The sample demonstrates:
@@ -63,7 +60,10 @@ import java.util.UUID;
     })
 public class SampleIncrementalDataSourceScanner
     implements DataSourceScanner, IncrementalDataSourceScanner, IndexCommitterAware {
-  private static int CONTENT_STORE_THRESHOLD_KB = 64000;
+  /** Files larger than this many bytes go to the content store. */
+  private static int CONTENT_STORE_THRESHOLD_BYTES = 64000;
+
+  private final FileDocuments files = new FileDocuments(CONTENT_STORE_THRESHOLD_BYTES);
 
   private List<String> fileList;
 
@@ -200,29 +200,22 @@ public class SampleIncrementalDataSourceScanner
     return acl;
   }
 
-  private void feedDocument(IngestDocument doc) throws AttivioException {
+  private void feedDocument(IngestDocument doc, byte[] signature) throws AttivioException {
 
-    if (shouldFeedThisDoc(doc)) {
+    if (shouldFeedThisDoc(doc, signature)) {
       AttivioAcl acl = createACL();
       if (acl == null) publisher.feed(doc);
       else publisher.feed(doc, acl);
     }
 
     if (incrementalModeActivated && !publisher.isInTestMode())
-      history.visit(connectorName, doc.getId(), getDocSignature(doc).getBytes());
-  }
-
-  private String getDocSignature(IngestDocument doc) {
-    IngestFieldValue ifv = doc.getFirstValue(FieldNames.TEXT);
-    return ifv == null ? "" : ifv.stringValue();
+      history.visit(connectorName, doc.getId(), signature);
   }
 
-  private boolean shouldFeedThisDoc(IngestDocument doc) throws AttivioException {
+  private boolean shouldFeedThisDoc(IngestDocument doc, byte[] signature) throws AttivioException {
     if (!incrementalModeActivated || publisher.isInTestMode()) return true;
 
-    byte[] sBytes = history.getSignature(connectorName, doc.getId());
-    String prevSignature = sBytes != null ? new String(sBytes) : null;
-    return prevSignature == null || !prevSignature.equals(getDocSignature(doc));
+    return FileDocuments.isChanged(history, connectorName, doc.getId(), signature);
   }
 
   private void scanDirectory(File dir) throws AttivioException {
@@ -237,46 +230,28 @@ public class SampleIncrementalDataSourceScanner
 
     try {
 
-      String docText = "";
-      for (String line : FileUtils.readLines(file)) {
-        docText += line;
-      }
       IngestDocument doc = new IngestDocument(file.getAbsolutePath());
 
+      addMetadata(file, doc);
+      boolean trigger = files.addContent(file, doc, publisher);
+
       // This demonstrates the use of indexCommitter. It is should be used only when an explicit
       // commit is required because of
       // some scanner condition. More typically, the publisher will manage index commits.
-      if (docText.contains("some trigger text")) indexCommitter.commit("default");
+      if (trigger) indexCommitter.commit("default");
 
-      addMetadata(file, doc, docText);
-      addContent(doc, docText);
-
-      feedDocument(doc);
+      feedDocument(doc, files.signature(file, realm, principal));
 
     } catch (IOException e) {
       throw new AttivioException(ConnectorError.CRAWL_FAILED, e, "Crawl failed");
     }
   }
 
-  private void addMetadata(File file, IngestDocument doc, String docText) throws AttivioException {
+  private void addMetadata(File file, IngestDocument doc) throws AttivioException {
     doc.addValue(FieldNames.TITLE, file.getName());
     doc.addValue(FieldNames.DATE, new Date(file.lastModified()));
   }
 
-  private void addContent(IngestDocument doc, String docText) throws AttivioException {
-    if (docText.length() > CONTENT_STORE_THRESHOLD_KB) {
-      // This code demonstrates the storing of the content in the content store and setting a
-      // pointer in the document. Note that using this
-      // technique is most efficient when the document is large and the content can be streamed out
-      // rather than be stored first in memory.
-      publisher.put(
-          doc,
-          FieldNames.CONTENT_POINTER,
-          UUID.randomUUID().toString(),
-          new ByteArrayInputStream(docText.getBytes()));
-    } else doc.addValue(FieldNames.TEXT, docText);
-  }
-
   private void filesAndDirectoriesToDocuments(List<String> fileList) throws AttivioException {
 
     for (String path : fileList) {
@@ -2,12 +2,13 @@
 package com.attivio.emodules.deletedatafeedfolders.connector;
 
 import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.client.DocumentOutputClient;
 import com.attivio.sdk.client.IndexCommitter;
+import com.attivio.sdk.client.IngestClient;
 import com.attivio.sdk.client.IngestionHistoryApi;
 import com.attivio.sdk.connector.DocumentPublisher;
 import com.attivio.sdk.error.ConnectorError;
 import com.attivio.sdk.ingest.IngestDocument;
-import com.attivio.sdk.ingest.IngestFieldValue;
 import com.attivio.sdk.scanner.DataSourceScanner;
 import com.attivio.sdk.scanner.IncrementalDataSourceScanner;
 import com.attivio.sdk.scanner.IndexCommitterAware;
@@ -21,17 +22,14 @@ import com.attivio.sdk.server.annotation.ConfigurationOption;
 import com.attivio.sdk.server.annotation.ConfigurationOptionInfo;
 import com.attivio.sdk.server.annotation.ScannerInfo;
 import com.attivio.sdk.service.ServiceFactoryFactory;
-import com.attivio.util.FileUtils;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 /**
  * An example for an incremental file system scanner. The sample demonstrates:
@@ -67,7 +65,10 @@ import java.util.UUID;
     })
 public class DatafeedWithAssetDelete
     implements DataSourceScanner, IncrementalDataSourceScanner, IndexCommitterAware {
-  private static int CONTENT_STORE_THRESHOLD_KB = 64000;
+  /** Files larger than this many bytes go to the content store. */
+  private static int CONTENT_STORE_THRESHOLD_BYTES = 64000;
+
+  private final FileDocuments files = new FileDocuments(CONTENT_STORE_THRESHOLD_BYTES);
 
   private List<String> fileList;
 
@@ -87,6 +88,26 @@ public class DatafeedWithAssetDelete
 
   private IndexCommitter indexCommitter;
 
+  /** Most delete logs whose executors are kept between calls. */
+  private static final int MAX_LINEAGE_DELETES = 16;
+
+  /**
+   * The delete logs read last, by path, least recently read first. An executor keeps its position
+   * in a file next to its log, so one dropped here is resumed where it stopped.
+   */
+  private final Map<String, LineageDeleteExecutor> lineageDeletes =
+      new LinkedHashMap<String, LineageDeleteExecutor>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LineageDeleteExecutor> eldest) {
+          return size() > MAX_LINEAGE_DELETES;
+        }
+      };
+
+  /** Where {@link #deleteDocsUsingLineageIds(String)} sends its deletes, made on first use. */
+  private IngestClient ingestClient;
+
   @ConfigurationOption(
       longOpt = "file-list",
       displayName = "File and Directory List",
@@ -204,38 +225,61 @@ public class DatafeedWithAssetDelete
     return acl;
   }
 
-  private void feedDocument(IngestDocument doc) throws AttivioException {
+  private void feedDocument(IngestDocument doc, byte[] signature) throws AttivioException {
 
-    if (shouldFeedThisDoc(doc)) {
+    if (shouldFeedThisDoc(doc, signature)) {
       AttivioAcl acl = createACL();
       if (acl == null) publisher.feed(doc);
       else publisher.feed(doc, acl);
     }
 
     if (incrementalModeActivated && !publisher.isInTestMode())
-      history.visit(connectorName, doc.getId(), getDocSignature(doc).getBytes());
+      history.visit(connectorName, doc.getId(), signature);
   }
   
+  /**
+   * Deletes the folders listed in the delete log at <code>path</code> through the ingest client of
+   * the platform, see {@link #deleteDocsUsingLineageIds(String, DocumentOutputClient)}.
+   */
   public void deleteDocsUsingLineageIds(String path) throws AttivioException {
-	  try {
-		FileInputStream fis = new FileInputStream(path);
-	} catch (FileNotFoundException e) {
-		// TODO Auto-generated catch block
-		e.printStackTrace();
-	}
+    IngestClient out;
+    synchronized (lineageDeletes) {
+      if (ingestClient == null) {
+        ingestClient = ServiceFactoryFactory.get().getService(IngestClient.class);
+      }
+      out = ingestClient;
+    }
+    deleteDocsUsingLineageIds(path, out);
   }
 
-  private String getDocSignature(IngestDocument doc) {
-    IngestFieldValue ifv = doc.getFirstValue(FieldNames.TEXT);
-    return ifv == null ? "" : ifv.stringValue();
+  /**
+   * Deletes the folders listed in the delete log at <code>path</code> and every document below
+   * them, see {@link LineageDeleteExecutor}. Every call only deletes the folders appended to the
+   * log since the previous call for the same path, also across restarts.
+   *
+   * @return the number of folders deleted
+   */
+  public int deleteDocsUsingLineageIds(String path, DocumentOutputClient out)
+      throws AttivioException {
+    LineageDeleteExecutor executor;
+    synchronized (lineageDeletes) {
+      executor = lineageDeletes.get(path);
+      if (executor == null) {
+        executor =
+            LineageDeleteExecutor.resume(
+                new File(path),
+                LineageDeleteExecutor.DEFAULT_MAX_CLAUSES,
+                LineageDeleteExecutor.DEFAULT_ZONE);
+        lineageDeletes.put(path, executor);
+      }
+    }
+    return executor.deleteNew(out);
   }
 
-  private boolean shouldFeedThisDoc(IngestDocument doc) throws AttivioException {
+  private boolean shouldFeedThisDoc(IngestDocument doc, byte[] signature) throws AttivioException {
     if (!incrementalModeActivated || publisher.isInTestMode()) return true;
 
-    byte[] sBytes = history.getSignature(connectorName, doc.getId());
-    String prevSignature = sBytes != null ? new String(sBytes) : null;
-    return prevSignature == null || !prevSignature.equals(getDocSignature(doc));
+    return FileDocuments.isChanged(history, connectorName, doc.getId(), signature);
   }
 
   private void scanDirectory(File dir) throws AttivioException {
@@ -250,46 +294,28 @@ public class DatafeedWithAssetDelete
 
     try {
 
-      String docText = "";
-      for (String line : FileUtils.readLines(file)) {
-        docText += line;
-      }
       IngestDocument doc = new IngestDocument(file.getAbsolutePath());
 
+      addMetadata(file, doc);
+      boolean trigger = files.addContent(file, doc, publisher);
+
       // This demonstrates the use of indexCommitter. It is should be used only when an explicit
       // commit is required because of
       // some scanner condition. More typically, the publisher will manage index commits.
-      if (docText.contains("some trigger text")) indexCommitter.commit("default");
-
-      addMetadata(file, doc, docText);
-      addContent(doc, docText);
+      if (trigger) indexCommitter.commit("default");
 
-      feedDocument(doc);
+      feedDocument(doc, files.signature(file, realm, principal));
 
     } catch (IOException e) {
       throw new AttivioException(ConnectorError.CRAWL_FAILED, e, "Crawl failed");
     }
   }
 
-  private void addMetadata(File file, IngestDocument doc, String docText) throws AttivioException {
+  private void addMetadata(File file, IngestDocument doc) throws AttivioException {
     doc.addValue(FieldNames.TITLE, file.getName());
     doc.addValue(FieldNames.DATE, new Date(file.lastModified()));
   }
 
-  private void addContent(IngestDocument doc, String docText) throws AttivioException {
-    if (docText.length() > CONTENT_STORE_THRESHOLD_KB) {
-      // This code demonstrates the storing of the content in the content store and setting a
-      // pointer in the document. Note that using this
-      // technique is most efficient when the document is large and the content can be streamed out
-      // rather than be stored first in memory.
-      publisher.put(
-          doc,
-          FieldNames.CONTENT_POINTER,
-          UUID.randomUUID().toString(),
-          new ByteArrayInputStream(docText.getBytes()));
-    } else doc.addValue(FieldNames.TEXT, docText);
-  }
-
   private void filesAndDirectoriesToDocuments(List<String> fileList) throws AttivioException {
 
     for (String path : fileList) {
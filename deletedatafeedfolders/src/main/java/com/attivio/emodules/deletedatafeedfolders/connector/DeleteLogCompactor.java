@@ -0,0 +1,89 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Turns the sealed pieces of a delete log into {@link DeleteLogSegment}s: the folder paths are
+ * deduplicated, sorted and every folder below another folder of the piece is dropped, deleting the
+ * ancestor deletes it anyway. The sealed piece is removed once its segment is written.
+ *
+ * <p>A piece is held in memory while it is compacted, the rotation size of the log bounds it.
+ */
+public final class DeleteLogCompactor {
+
+  private DeleteLogCompactor() {}
+
+  /**
+   * Compacts one sealed piece.
+   *
+   * @param sealed the sealed piece, one folder path per line
+   * @param segment the segment to write
+   * @return the number of paths in the segment
+   */
+  public static int compact(File sealed, File segment) throws IOException {
+    TreeSet<String> paths = new TreeSet<>();
+    try (BufferedReader in = Files.newBufferedReader(sealed.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String path = line.trim();
+        if (!path.isEmpty()) {
+          paths.add(path);
+        }
+      }
+    }
+    List<String> compacted = coalesce(paths);
+    DeleteLogSegment.write(segment, compacted);
+    Files.delete(sealed.toPath());
+    return compacted.size();
+  }
+
+  /**
+   * Compacts every sealed piece of a delete log, the ones a crash left behind included.
+   *
+   * @return the number of pieces compacted
+   */
+  public static int compactSealed(File log) throws IOException {
+    int compacted = 0;
+    for (Map.Entry<Long, File> piece : DeleteLogSegment.list(log).entrySet()) {
+      if (!DeleteLogSegment.isSegment(piece.getValue())) {
+        compact(piece.getValue(), DeleteLogSegment.segmentFile(log, piece.getKey()));
+        compacted++;
+      }
+    }
+    return compacted;
+  }
+
+  /** @return the sorted paths without those below another one */
+  static List<String> coalesce(TreeSet<String> paths) {
+    Set<String> all = new HashSet<>(paths);
+    List<String> coalesced = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      if (!hasAncestorIn(path, all)) {
+        coalesced.add(path);
+      }
+    }
+    return coalesced;
+  }
+
+  private static boolean hasAncestorIn(String path, Set<String> paths) {
+    int end = path.indexOf('/', 1);
+    while (end > 0) {
+      if (paths.contains(path.substring(0, end))) {
+        return true;
+      }
+      end = path.indexOf('/', end + 1);
+    }
+    return false;
+  }
+}
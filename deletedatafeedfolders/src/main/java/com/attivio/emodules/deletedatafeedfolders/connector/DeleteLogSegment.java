@@ -0,0 +1,318 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compacted piece of a delete log: the folder paths sorted, without duplicates and without
+ * folders below another folder of the segment, see {@link DeleteLogCompactor}.
+ *
+ * <p>Paths are front coded, each one stores the length of the prefix it shares with the previous
+ * path and the rest. Every {@link #INDEX_INTERVAL}th path is stored in full and listed in a sparse
+ * index at the end of the file, so a reader loads the index only and seeks straight to the block
+ * that holds a path.
+ *
+ * <p>A delete log <code>deletePaths.txt</code> is rotated into numbered files next to it: <code>
+ * deletePaths.txt.0000000001.log</code> while it is sealed but not yet compacted, <code>
+ * deletePaths.txt.0000000001.seg</code> once compacted. The numbers give the order of the pieces.
+ */
+public final class DeleteLogSegment {
+
+  /** Every this many paths one is stored in full and indexed. */
+  public static final int INDEX_INTERVAL = 128;
+
+  private static final int MAGIC = 0x444c5331;
+
+  /** Index offset, path count and magic. */
+  private static final int TRAILER_SIZE = 8 + 4 + 4;
+
+  private static final Pattern PIECE = Pattern.compile("\\.(\\d{10})\\.(log|seg)");
+
+  private final File file;
+
+  private final int size;
+
+  /** The indexed paths and their positions. */
+  private final String[] keys;
+
+  private final long[] offsets;
+
+  private DeleteLogSegment(File file, int size, String[] keys, long[] offsets) {
+    this.file = file;
+    this.size = size;
+    this.keys = keys;
+    this.offsets = offsets;
+  }
+
+  /** Reads the index of a segment, the paths stay on disk. */
+  public static DeleteLogSegment open(File file) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      long length = in.length();
+      if (length < 4 + TRAILER_SIZE) {
+        throw new IOException("Not a delete log segment: " + file);
+      }
+      in.seek(length - TRAILER_SIZE);
+      long indexOffset = in.readLong();
+      int size = in.readInt();
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a delete log segment: " + file);
+      }
+      in.seek(indexOffset);
+      DataInputStream index =
+          new DataInputStream(new BufferedInputStream(Channels.newInputStream(in.getChannel())));
+      int count = index.readInt();
+      String[] keys = new String[count];
+      long[] offsets = new long[count];
+      for (int i = 0; i < count; i++) {
+        keys[i] = index.readUTF();
+        offsets[i] = index.readLong();
+      }
+      return new DeleteLogSegment(file, size, keys, offsets);
+    }
+  }
+
+  /**
+   * Writes a segment, through a temporary file so readers never see half of it.
+   *
+   * @param paths sorted paths without duplicates
+   */
+  static void write(File file, List<String> paths) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    List<String> keys = new ArrayList<>(paths.size() / INDEX_INTERVAL + 1);
+    List<Long> offsets = new ArrayList<>(paths.size() / INDEX_INTERVAL + 1);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+      out.writeInt(MAGIC);
+      String previous = "";
+      for (int i = 0; i < paths.size(); i++) {
+        String path = paths.get(i);
+        int shared = 0;
+        if (i % INDEX_INTERVAL == 0) {
+          keys.add(path);
+          offsets.add((long) out.size());
+        } else {
+          shared = sharedPrefix(previous, path);
+        }
+        out.writeShort(shared);
+        out.writeUTF(path.substring(shared));
+        previous = path;
+      }
+      long indexOffset = out.size();
+      out.writeInt(keys.size());
+      for (int i = 0; i < keys.size(); i++) {
+        out.writeUTF(keys.get(i));
+        out.writeLong(offsets.get(i));
+      }
+      out.writeLong(indexOffset);
+      out.writeInt(paths.size());
+      out.writeInt(MAGIC);
+    }
+    try {
+      Files.move(
+          tmp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static int sharedPrefix(String a, String b) {
+    int max = Math.min(Math.min(a.length(), b.length()), 0xffff);
+    int i = 0;
+    while (i < max && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    // never split a surrogate pair, the rest is written as UTF
+    if (i > 0 && Character.isHighSurrogate(b.charAt(i - 1))) {
+      i--;
+    }
+    return i;
+  }
+
+  /** @return the number of paths */
+  public int size() {
+    return size;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Opens a cursor on the first path not before <code>from</code>, reading only the index block
+   * that holds it.
+   *
+   * @param from the path to start at, <code>null</code> to read every path
+   */
+  public Cursor seek(String from) throws IOException {
+    int block = 0;
+    if (from != null) {
+      int i = Arrays.binarySearch(keys, from);
+      block = i >= 0 ? i : Math.max(0, -i - 2);
+    }
+    Cursor cursor = new Cursor(block);
+    if (from != null) {
+      cursor.skipBefore(from);
+    }
+    return cursor;
+  }
+
+  /** @return whether the segment holds exactly this path */
+  public boolean contains(String path) throws IOException {
+    try (Cursor cursor = seek(path)) {
+      return path.equals(cursor.next());
+    }
+  }
+
+  /** @return whether <code>path</code> or one of its ancestors is in the segment */
+  public boolean covers(String path) throws IOException {
+    int end = path.indexOf('/', 1);
+    while (end > 0) {
+      if (contains(path.substring(0, end))) {
+        return true;
+      }
+      end = path.indexOf('/', end + 1);
+    }
+    return contains(path);
+  }
+
+  /**
+   * Lists the rotated pieces of a delete log by number, the compacted segment when there is one,
+   * the sealed log otherwise.
+   */
+  public static SortedMap<Long, File> list(File log) {
+    SortedMap<Long, File> pieces = new TreeMap<>();
+    File dir = log.getAbsoluteFile().getParentFile();
+    String[] names = dir == null ? null : dir.list();
+    if (names == null) {
+      return pieces;
+    }
+    String prefix = log.getName();
+    for (String name : names) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+      Matcher m = PIECE.matcher(name.substring(prefix.length()));
+      if (!m.matches()) {
+        continue;
+      }
+      Long sequence = Long.valueOf(m.group(1));
+      File piece = new File(dir, name);
+      if ("seg".equals(m.group(2)) || !pieces.containsKey(sequence)) {
+        pieces.put(sequence, piece);
+      }
+    }
+    return pieces;
+  }
+
+  /** @return the number of the last rotated piece of a delete log, 0 if it was never rotated */
+  public static long lastSequence(File log) {
+    SortedMap<Long, File> pieces = list(log);
+    return pieces.isEmpty() ? 0 : pieces.lastKey();
+  }
+
+  /** @return the compacted segment number <code>sequence</code> of a delete log */
+  public static File segmentFile(File log, long sequence) {
+    return new File(log.getPath() + String.format(".%010d.seg", sequence));
+  }
+
+  /** @return the sealed, not yet compacted, piece number <code>sequence</code> of a delete log */
+  public static File sealedFile(File log, long sequence) {
+    return new File(log.getPath() + String.format(".%010d.log", sequence));
+  }
+
+  /** @return whether a piece of a delete log is a compacted segment */
+  public static boolean isSegment(File piece) {
+    return piece.getName().endsWith(".seg");
+  }
+
+  /** Reads the paths of a segment in order. Not thread safe. */
+  public final class Cursor implements Closeable {
+
+    private final FileChannel channel;
+
+    private final DataInputStream in;
+
+    /** Paths left before the index. */
+    private int remaining;
+
+    private String previous = "";
+
+    /** A path read ahead by {@link #skipBefore(String)}. */
+    private String peeked = null;
+
+    private Cursor(int block) throws IOException {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      if (keys.length == 0) {
+        remaining = 0;
+      } else {
+        channel.position(offsets[block]);
+        remaining = size - block * INDEX_INTERVAL;
+      }
+      in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    }
+
+    private void skipBefore(String from) throws IOException {
+      String path;
+      while ((path = next()) != null && path.compareTo(from) < 0) {
+        // skip
+      }
+      peeked = path;
+    }
+
+    /** @return the next path, <code>null</code> after the last one */
+    public String next() throws IOException {
+      if (peeked != null) {
+        String path = peeked;
+        peeked = null;
+        return path;
+      }
+      if (remaining == 0) {
+        return null;
+      }
+      try {
+        int shared = in.readUnsignedShort();
+        String path = previous.substring(0, shared) + in.readUTF();
+        previous = path;
+        remaining--;
+        return path;
+      } catch (EOFException e) {
+        throw new IOException("Truncated delete log segment: " + file, e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+      channel.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d paths, %d index entries", file, size, keys.length);
+  }
+}
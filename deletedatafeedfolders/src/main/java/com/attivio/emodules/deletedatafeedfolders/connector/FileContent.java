@@ -0,0 +1,249 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reads the content of crawled files for the scanners. Whether a file is small enough to be sent
+ * as text is decided from its size on disk, before any of it is read: small files are read whole
+ * through a buffer reused from file to file, line breaks included, large files are streamed as
+ * they are to the content store and never held in memory.
+ *
+ * <p>Text is decoded in the platform charset, as the bytes of a streamed file are. Not thread safe,
+ * a scanner reads one file at a time.
+ *
+ * <p>The bytes of every file are hashed with MD5 as they are read, so the incremental history can
+ * keep a {@link #signature(String...)} of 16 bytes per document instead of its text.
+ */
+public final class FileContent {
+
+  /** Size of the buffers files are read through. */
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  private final long inlineLimit;
+
+  private final char[] buffer = new char[BUFFER_SIZE];
+
+  /** Reused for every file, it never grows much beyond the inline limit. */
+  private final StringBuilder text = new StringBuilder();
+
+  /** Hashes the bytes of the file being read. */
+  private final MessageDigest digest;
+
+  /** The hash of the last file read, <code>null</code> while it is streamed. */
+  private byte[] contentHash = null;
+
+  /** @param inlineLimit the largest file in bytes read as text */
+  public FileContent(long inlineLimit) {
+    this.inlineLimit = inlineLimit;
+    try {
+      this.digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  /** @return whether the file is read as text, see {@link #read(File)} */
+  public boolean isInline(File file) {
+    return file.length() <= inlineLimit;
+  }
+
+  /** @return the whole file as text, line breaks included */
+  public String read(File file) throws IOException {
+    text.setLength(0);
+    digest.reset();
+    try (Reader in =
+        new InputStreamReader(
+            new DigestInputStream(new FileInputStream(file), digest), Charset.defaultCharset())) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        text.append(buffer, 0, read);
+      }
+      contentHash = digest.digest();
+      return text.toString();
+    } finally {
+      if (text.capacity() > inlineLimit + BUFFER_SIZE) {
+        // a file that grew since its size was checked
+        text.setLength(0);
+        text.trimToSize();
+      }
+    }
+  }
+
+  /**
+   * Opens a file to be streamed, watching its bytes for <code>marker</code> on the way. Closing the
+   * stream reads what was left unread, so once it is closed the marker and the hash behind {@link
+   * #signature(String...)} have seen the whole file, however much of it the consumer read.
+   *
+   * @param marker the text to watch for, encoded in the platform charset
+   */
+  public MarkerInputStream open(File file, String marker) throws IOException {
+    digest.reset();
+    contentHash = null;
+    return new MarkerInputStream(
+        new DigestInputStream(
+            new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), digest),
+        marker.getBytes(Charset.defaultCharset()));
+  }
+
+  /**
+   * The signature of the file last read or streamed: a 128-bit MD5 hash of its bytes and of the
+   * metadata, whatever the size of the file.
+   *
+   * @param metadata values such as the title or the ACL, <code>null</code> values included
+   */
+  public byte[] signature(String... metadata) {
+    if (contentHash == null) {
+      contentHash = digest.digest();
+    }
+    digest.reset();
+    digest.update(contentHash);
+    for (String value : metadata) {
+      if (value == null) {
+        digest.update((byte) 0);
+      } else {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // the length keeps ("ab", "c") apart from ("a", "bc")
+        digest.update((byte) 1);
+        digest.update(
+            new byte[] {
+              (byte) (bytes.length >>> 24),
+              (byte) (bytes.length >>> 16),
+              (byte) (bytes.length >>> 8),
+              (byte) bytes.length
+            });
+        digest.update(bytes);
+      }
+    }
+    return digest.digest();
+  }
+
+  /**
+   * A stream that tells whether a marker went through it, found across buffer boundaries.
+   * Closing it before the end reads the rest first, closing it again does nothing.
+   */
+  public static final class MarkerInputStream extends FilterInputStream {
+
+    private final byte[] marker;
+
+    /** Longest proper prefix of the marker that is also a suffix, per prefix length. */
+    private final int[] fallback;
+
+    /** Bytes of the marker matched so far. */
+    private int matched = 0;
+
+    private boolean found = false;
+
+    private boolean ended = false;
+
+    private boolean closed = false;
+
+    MarkerInputStream(InputStream in, byte[] marker) {
+      super(in);
+      this.marker = marker;
+      this.fallback = new int[marker.length + 1];
+      int k = 0;
+      for (int i = 1; i < marker.length; i++) {
+        while (k > 0 && marker[i] != marker[k]) {
+          k = fallback[k];
+        }
+        if (marker[i] == marker[k]) {
+          k++;
+        }
+        fallback[i + 1] = k;
+      }
+      found = marker.length == 0;
+    }
+
+    /** @return whether the marker was in the bytes read so far, in the whole file once closed */
+    public boolean found() {
+      return found;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        scan((byte) b);
+      } else {
+        ended = true;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read < 0) {
+        ended = true;
+      }
+      for (int i = 0; i < read && !found; i++) {
+        scan(b[off + i]);
+      }
+      return read;
+    }
+
+    /** Reads the rest of the stream, so the marker and the file hash see every byte. */
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (!ended) {
+          skip(Long.MAX_VALUE);
+        }
+      } finally {
+        super.close();
+      }
+    }
+
+    /** Skipped bytes are read, so the marker is not missed. */
+    @Override
+    public long skip(long n) throws IOException {
+      byte[] skipped = new byte[(int) Math.min(n, BUFFER_SIZE)];
+      long total = 0;
+      while (total < n) {
+        int read = read(skipped, 0, (int) Math.min(skipped.length, n - total));
+        if (read < 0) {
+          break;
+        }
+        total += read;
+      }
+      return total;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void scan(byte b) {
+      if (found) {
+        return;
+      }
+      while (matched > 0 && b != marker[matched]) {
+        matched = fallback[matched];
+      }
+      if (b == marker[matched]) {
+        matched++;
+      }
+      if (matched == marker.length) {
+        found = true;
+      }
+    }
+  }
+}
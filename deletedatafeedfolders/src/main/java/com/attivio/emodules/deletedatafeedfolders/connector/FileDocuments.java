@@ -0,0 +1,77 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.client.IngestionHistoryApi;
+import com.attivio.sdk.connector.DocumentPublisher;
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.schema.FieldNames;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * What the file scanners share to turn a crawled file into a document: its content, sent as text
+ * or streamed to the content store, see {@link FileContent}, and the signature the incremental
+ * history keeps to tell changed files from unchanged ones. Not thread safe, a scanner reads one
+ * file at a time.
+ */
+public final class FileDocuments {
+
+  /** Content holding this text triggers an explicit index commit. */
+  public static final String COMMIT_TRIGGER = "some trigger text";
+
+  private final FileContent content;
+
+  /** @param inlineLimit the largest file in bytes sent as text */
+  public FileDocuments(long inlineLimit) {
+    this.content = new FileContent(inlineLimit);
+  }
+
+  /**
+   * Adds the content of the file to the document, as text if the file is small enough, otherwise
+   * as a pointer to the file streamed to the content store.
+   *
+   * @param publisher stores the content of large files
+   * @return whether the content holds the commit trigger text
+   */
+  public boolean addContent(File file, IngestDocument doc, DocumentPublisher publisher)
+      throws AttivioException, IOException {
+    if (content.isInline(file)) {
+      String docText = content.read(file);
+      doc.addValue(FieldNames.TEXT, docText);
+      return docText.contains(COMMIT_TRIGGER);
+    }
+    // This code demonstrates the storing of the content in the content store and setting a
+    // pointer in the document. The file is streamed out as it is read, it is never held in
+    // memory, which is why the size on disk decides between the content store and text.
+    FileContent.MarkerInputStream in = content.open(file, COMMIT_TRIGGER);
+    try {
+      publisher.put(doc, FieldNames.CONTENT_POINTER, UUID.randomUUID().toString(), in);
+    } finally {
+      // reads what put left, the marker and the signature cover the whole file
+      in.close();
+    }
+    return in.found();
+  }
+
+  /**
+   * @return a 128-bit hash of the bytes of the file last added and of what the document gets
+   *     besides its content, the title and the ACL, the same size whatever the size of the file
+   */
+  public byte[] signature(File file, String realm, String principal) {
+    return content.signature(file.getName(), realm, principal);
+  }
+
+  /**
+   * @return whether the document is new or its signature differs from the one the history kept
+   *     for it
+   */
+  public static boolean isChanged(
+      IngestionHistoryApi history, String connectorName, String docId, byte[] signature)
+      throws AttivioException {
+    byte[] prevSignature = history.getSignature(connectorName, docId);
+    return prevSignature == null || !Arrays.equals(prevSignature, signature);
+  }
+}
@@ -0,0 +1,310 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.client.DocumentOutputClient;
+import com.attivio.sdk.error.ConnectorError;
+import com.attivio.sdk.schema.FieldNames;
+import com.attivio.sdk.search.query.BooleanOrQuery;
+import com.attivio.sdk.search.query.PhraseQuery;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deletes the folders listed in a delete log, one folder path per line, together with everything
+ * below them.
+ *
+ * <p>A folder is deleted by deleting every document whose {@link FieldNames#LINEAGE_IDS} contain
+ * the folder path. Folders are deduplicated and OR-ed together into queries of at most <code>
+ * maxClauses</code> clauses, so deleting 10,000 folders takes a handful of delete-by-query
+ * operations instead of 10,000. The executor remembers how far it has read the log; every run
+ * only deletes the folders appended since the previous one. A line still being written, one
+ * without its newline, is left for the next run.
+ *
+ * <p>A rotated log is read piece by piece, see {@link DeleteLogSegment}: every run first streams
+ * the pieces numbered after the last one it read, then the active log. Once a new piece is read
+ * the active log is read from its start again, since the log was rotated. Folders read from the
+ * active log before it was rotated are deleted a second time, which changes nothing.
+ *
+ * <p>An executor made by {@link #resume} also keeps how far it has read in a position file next
+ * to the log, so the executor made after a restart goes on from there instead of deleting every
+ * folder in the log again.
+ */
+public class LineageDeleteExecutor {
+
+  public static final int DEFAULT_MAX_CLAUSES = 1024;
+
+  public static final String DEFAULT_ZONE = "default";
+
+  private final File log;
+
+  private final int maxClauses;
+
+  private final String zone;
+
+  /** Where the segment and offset are kept between runs, null to keep them in memory only. */
+  private File position;
+
+  private long segment;
+
+  private long offset;
+
+  private long foldersDeleted = 0;
+
+  private long queries = 0;
+
+  /**
+   * @param log the delete log
+   * @param maxClauses most folders per delete query
+   * @param zone the zone to delete from
+   * @param offset position in the log to start reading from
+   */
+  public LineageDeleteExecutor(File log, int maxClauses, String zone, long offset) {
+    this(log, maxClauses, zone, 0, offset);
+  }
+
+  /**
+   * @param log the delete log
+   * @param maxClauses most folders per delete query
+   * @param zone the zone to delete from
+   * @param segment number of the last rotated piece already read, 0 to read every piece
+   * @param offset position in the active log to start reading from
+   */
+  public LineageDeleteExecutor(File log, int maxClauses, String zone, long segment, long offset) {
+    this.log = log;
+    this.maxClauses = Math.max(1, maxClauses);
+    this.zone = zone;
+    this.segment = segment;
+    this.offset = offset;
+  }
+
+  /**
+   * Makes an executor that starts where the previous executor on the same log stopped, and keeps
+   * its own position the same way.
+   *
+   * @param log the delete log
+   * @param maxClauses most folders per delete query
+   * @param zone the zone to delete from
+   */
+  public static LineageDeleteExecutor resume(File log, int maxClauses, String zone)
+      throws AttivioException {
+    File position = positionFile(log);
+    long segment = 0;
+    long offset = 0;
+    if (position.exists()) {
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(position.toPath()))) {
+        segment = in.readLong();
+        offset = in.readLong();
+      } catch (IOException e) {
+        throw new AttivioException(
+            ConnectorError.CRAWL_FAILED, e, "Failed to read delete log position %s", position);
+      }
+    }
+    LineageDeleteExecutor executor =
+        new LineageDeleteExecutor(log, maxClauses, zone, segment, offset);
+    executor.position = position;
+    return executor;
+  }
+
+  /** @return the file {@link #resume} keeps the position in the log in */
+  public static File positionFile(File log) {
+    return new File(log.getPath() + ".position");
+  }
+
+  /**
+   * Deletes the folders appended to the log since the previous run.
+   *
+   * @return the number of folders deleted
+   */
+  public synchronized int deleteNew(DocumentOutputClient out) throws AttivioException {
+    long startSegment = segment;
+    long startOffset = offset;
+    try {
+      return deleteFrom(out);
+    } finally {
+      // also after a failure, the deletes issued before it are not issued again
+      if (position != null && (segment != startSegment || offset != startOffset)) {
+        savePosition();
+      }
+    }
+  }
+
+  private int deleteFrom(DocumentOutputClient out) throws AttivioException {
+    Set<String> seen = new HashSet<String>();
+    List<String> folders = new ArrayList<String>(Math.min(maxClauses, 4096));
+    int deleted = 0;
+    for (Map.Entry<Long, File> piece : DeleteLogSegment.list(log).tailMap(segment + 1).entrySet()) {
+      deleted += deletePiece(piece.getKey(), piece.getValue(), seen, folders, out);
+      segment = piece.getKey();
+      // the active log was rotated into this piece
+      offset = 0;
+    }
+    if (!log.exists() || log.length() <= offset) return deleted;
+
+    try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+      channel.position(offset);
+      InputStream in = Channels.newInputStream(channel);
+      byte[] buffer = new byte[64 * 1024];
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      long position = offset;
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        int start = 0;
+        for (int i = 0; i < read; i++) {
+          if (buffer[i] != '\n') continue;
+          line.write(buffer, start, i - start);
+          position += line.size() + 1;
+          String folder = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+          line.reset();
+          start = i + 1;
+          if (folder.isEmpty() || !seen.add(folder)) continue;
+          folders.add(folder);
+          if (folders.size() >= maxClauses) {
+            deleted += delete(folders, out);
+            // only move past folders whose delete has been issued
+            offset = position;
+          }
+        }
+        line.write(buffer, start, read - start);
+      }
+      deleted += delete(folders, out);
+      offset = position;
+    } catch (IOException e) {
+      throw new AttivioException(
+          ConnectorError.CRAWL_FAILED, e, "Failed to read delete log %s", log);
+    }
+    return deleted;
+  }
+
+  /** Writes through a temporary file, a crash never leaves half a position behind. */
+  private void savePosition() throws AttivioException {
+    File tmp = new File(position.getPath() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp.toPath()))) {
+        out.writeLong(segment);
+        out.writeLong(offset);
+      }
+      try {
+        Files.move(
+            tmp.toPath(),
+            position.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), position.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      throw new AttivioException(
+          ConnectorError.CRAWL_FAILED, e, "Failed to save delete log position %s", position);
+    }
+  }
+
+  private int deletePiece(
+      long sequence, File piece, Set<String> seen, List<String> folders, DocumentOutputClient out)
+      throws AttivioException {
+    int deleted = 0;
+    try {
+      if (!DeleteLogSegment.isSegment(piece)) {
+        try {
+          deleted += deleteSealed(piece, seen, folders, out);
+          return deleted + delete(folders, out);
+        } catch (NoSuchFileException e) {
+          // compacted in the meantime
+          piece = DeleteLogSegment.segmentFile(log, sequence);
+        }
+      }
+      try (DeleteLogSegment.Cursor cursor = DeleteLogSegment.open(piece).seek(null)) {
+        String folder;
+        while ((folder = cursor.next()) != null) {
+          if (!seen.add(folder)) continue;
+          folders.add(folder);
+          if (folders.size() >= maxClauses) {
+            deleted += delete(folders, out);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new AttivioException(
+          ConnectorError.CRAWL_FAILED, e, "Failed to read delete log %s", piece);
+    }
+    return deleted + delete(folders, out);
+  }
+
+  /** Reads a sealed piece, which is complete, the way {@link #deleteNew} reads the active log. */
+  private int deleteSealed(
+      File piece, Set<String> seen, List<String> folders, DocumentOutputClient out)
+      throws AttivioException, IOException {
+    int deleted = 0;
+    for (String line : Files.readAllLines(piece.toPath(), StandardCharsets.UTF_8)) {
+      String folder = line.trim();
+      if (folder.isEmpty() || !seen.add(folder)) continue;
+      folders.add(folder);
+      if (folders.size() >= maxClauses) {
+        deleted += delete(folders, out);
+      }
+    }
+    return deleted;
+  }
+
+  private int delete(List<String> folders, DocumentOutputClient out) throws AttivioException {
+    if (folders.isEmpty()) return 0;
+
+    BooleanOrQuery query = new BooleanOrQuery();
+    for (String folder : folders) {
+      query.add(new PhraseQuery(FieldNames.LINEAGE_IDS, folder));
+    }
+    out.deleteByQuery(zone, query);
+    int size = folders.size();
+    foldersDeleted += size;
+    queries++;
+    folders.clear();
+    return size;
+  }
+
+  /** @return the number of the last rotated piece whose folders have been deleted */
+  public synchronized long getSegment() {
+    return segment;
+  }
+
+  /** @return the position in the active log up to which folders have been deleted */
+  public synchronized long getOffset() {
+    return offset;
+  }
+
+  public synchronized long getFoldersDeleted() {
+    return foldersDeleted;
+  }
+
+  /** @return the number of delete-by-query operations issued */
+  public synchronized long getQueries() {
+    return queries;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%s: %d folders deleted with %d queries, segment %d, offset %d",
+        log,
+        foldersDeleted,
+        queries,
+        segment,
+        offset);
+  }
+}
@@ -0,0 +1,141 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.client.DocumentOutputClient;
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.ingest.IngestFieldValue;
+import java.util.ArrayList;
+import java.util.List;
+import org.w3c.dom.Node;
+
+/**
+ * Hands the children of one parent document to the output client in batches instead of one by
+ * one, see {@link DocumentOutputClient#feed(IngestDocument...)}.
+ *
+ * <p>A batch is fed once it holds <code>maxDocuments</code> children or their XML reaches <code>
+ * maxBytes</code>, estimated from the length of the child XML in characters, and by {@link
+ * #flush()} at the end of the parent. Feeding blocks the thread splitting the parent, so a slow
+ * workflow holds back the split. Not thread safe, {@link OrderedChildEmitter} feeds from a single
+ * thread.
+ */
+final class ChildBatcher implements OrderedChildEmitter.ChildSink {
+
+  private final DocumentOutputClient out;
+
+  private final int maxDocuments;
+
+  private final long maxBytes;
+
+  /** The field holding the child XML, sized when there is a byte limit. */
+  private final String xmlField;
+
+  private final SplitMetrics metrics;
+
+  private final List<IngestDocument> batch;
+
+  private long batchBytes = 0;
+
+  /** Memory budget bytes held by the batch, given back once it is fed. */
+  private long budgetBytes = 0;
+
+  private MemoryBudget budget = null;
+
+  /**
+   * @param out receives the batches
+   * @param maxDocuments most children per batch, 1 or less to feed every child on its own
+   * @param maxBytes most estimated XML bytes per batch, 0 or less for no limit
+   * @param xmlField the field holding the child XML
+   * @param metrics counts the children and batches fed, <code>null</code> without metrics
+   */
+  ChildBatcher(
+      DocumentOutputClient out,
+      int maxDocuments,
+      long maxBytes,
+      String xmlField,
+      SplitMetrics metrics) {
+    this.out = out;
+    this.maxDocuments = Math.max(1, maxDocuments);
+    this.maxBytes = maxBytes;
+    this.xmlField = xmlField;
+    this.metrics = metrics;
+    this.batch = new ArrayList<>(Math.min(this.maxDocuments, 1024));
+  }
+
+  @Override
+  public void feed(IngestDocument child, long bytes, MemoryBudget budget)
+      throws AttivioException {
+    // the budget is held until the batch is fed
+    this.budget = budget;
+    budgetBytes += bytes;
+    feed(child);
+  }
+
+  @Override
+  public void feed(IngestDocument child) throws AttivioException {
+    if (maxDocuments == 1) {
+      feedBatch(new IngestDocument[] {child});
+      return;
+    }
+    batch.add(child);
+    if (maxBytes > 0) {
+      batchBytes += estimateBytes(child);
+    }
+    if (batch.size() >= maxDocuments || maxBytes > 0 && batchBytes >= maxBytes) {
+      flush();
+    }
+  }
+
+  /** Feeds the children waiting in the batch. */
+  @Override
+  public void flush() throws AttivioException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    IngestDocument[] docs = batch.toArray(new IngestDocument[batch.size()]);
+    batch.clear();
+    batchBytes = 0;
+    feedBatch(docs);
+  }
+
+  /** Drops the children waiting in the batch, used when the split failed. */
+  void discard() {
+    batch.clear();
+    batchBytes = 0;
+    releaseBudget();
+  }
+
+  private void feedBatch(IngestDocument[] docs) throws AttivioException {
+    try {
+      out.feed(docs);
+    } finally {
+      releaseBudget();
+    }
+    if (metrics != null) {
+      // only children the output client took are counted
+      for (IngestDocument doc : docs) {
+        metrics.childOut(estimateBytes(doc));
+      }
+      metrics.batchOut();
+    }
+  }
+
+  private void releaseBudget() {
+    if (budget != null && budgetBytes > 0) {
+      budget.release(budgetBytes);
+    }
+    budgetBytes = 0;
+  }
+
+  private long estimateBytes(IngestDocument child) {
+    IngestFieldValue value = child.getFirstValue(xmlField);
+    if (value == null) {
+      return 0;
+    }
+    Object xml = value.getValue();
+    if (xml instanceof Node) {
+      return SplitMetrics.xmlSize((Node) xml);
+    }
+    return xml == null ? 0 : xml.toString().length();
+  }
+}
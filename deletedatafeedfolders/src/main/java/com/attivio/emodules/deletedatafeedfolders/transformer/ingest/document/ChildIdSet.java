@@ -0,0 +1,127 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The child ids of one feed, to tell repeated ids from new ones. By default the ids themselves are
+ * kept, so two different ids are never taken for each other.
+ *
+ * <p>A compact set keeps 64-bit fingerprints in an open addressing table instead, 8 to 16 bytes
+ * per id whatever its length. Two different ids share a fingerprint with a probability of about
+ * <code>n * n / 2^65</code> for <code>n</code> ids, less than one in a million for a feed of five
+ * million children; such an id is taken for a repeated one and its child is left out. Not thread
+ * safe, ids are added on the thread walking the XML.
+ */
+final class ChildIdSet {
+
+  /** Marks an empty slot, the fingerprint 0 is stored in {@link #hasZero}. */
+  private static final long EMPTY = 0;
+
+  /** The ids, <code>null</code> if the set is compact. */
+  private final Set<String> ids;
+
+  private long[] table;
+
+  private boolean hasZero = false;
+
+  private int size = 0;
+
+  ChildIdSet() {
+    this(false);
+  }
+
+  /** @param compact whether fingerprints are kept instead of the ids */
+  ChildIdSet(boolean compact) {
+    this(compact, 64);
+  }
+
+  /**
+   * @param compact whether fingerprints are kept instead of the ids
+   * @param expected the number of ids the set is sized for, it grows past them
+   */
+  ChildIdSet(boolean compact, int expected) {
+    if (!compact) {
+      ids = new HashSet<>();
+      return;
+    }
+    ids = null;
+    int capacity = 16;
+    while (capacity < expected * 2L && capacity < 1 << 30) {
+      capacity <<= 1;
+    }
+    table = new long[capacity];
+  }
+
+  /** @return <code>true</code> if the id is new, <code>false</code> if it was added before */
+  boolean add(String id) {
+    if (ids != null) {
+      if (!ids.add(id)) {
+        return false;
+      }
+      size++;
+      return true;
+    }
+    long fingerprint = fingerprint(id);
+    if (fingerprint == EMPTY) {
+      if (hasZero) {
+        return false;
+      }
+      hasZero = true;
+      size++;
+      return true;
+    }
+    if (!insert(table, fingerprint)) {
+      return false;
+    }
+    size++;
+    // at most half full
+    if (size * 2L > table.length) {
+      grow();
+    }
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private static boolean insert(long[] table, long fingerprint) {
+    int mask = table.length - 1;
+    int i = (int) fingerprint & mask;
+    while (table[i] != EMPTY) {
+      if (table[i] == fingerprint) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    table[i] = fingerprint;
+    return true;
+  }
+
+  private void grow() {
+    long[] grown = new long[table.length * 2];
+    for (long fingerprint : table) {
+      if (fingerprint != EMPTY) {
+        insert(grown, fingerprint);
+      }
+    }
+    table = grown;
+  }
+
+  /** FNV-1a over the UTF-16 chars, mixed so the low bits spread over the table. */
+  static long fingerprint(String id) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < id.length(); i++) {
+      h ^= id.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,379 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.IngestField;
+import com.attivio.sdk.ingest.IngestFieldValue;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Signatures of the children split off in previous runs, by parent document id and child id, kept
+ * in a file so unchanged children are not fed again.
+ *
+ * <p>A signature is the MD5 hash of the child XML: of the text for text children, of the names,
+ * attributes and text of the subtree for DOM children. The fields the children inherit from their
+ * parent get a signature of their own, kept with the parent; when it changes every child counts as
+ * changed. Signatures are only stored once the feed of their parent went through, see {@link
+ * Feed#commit()}, so a failed feed is split again in full.
+ *
+ * <p>The file is a log: a feed that changed anything appends one record with the signatures of its
+ * parent, and a later record of a parent replaces the earlier ones. Once the log holds more
+ * replaced records than live ones, and at least {@link #COMPACT_MIN_RECORDS}, it is rewritten
+ * through a temporary file with the live records only. A record cut short by a crash is dropped
+ * when the file is read.
+ */
+final class ChildSignatureStore {
+
+  private static final int MAGIC = 0x43534732;
+
+  /** Fewest replaced records that make the log worth compacting. */
+  static final int COMPACT_MIN_RECORDS = 1024;
+
+  private static final ThreadLocal<MessageDigest> digests =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+              throw new IllegalStateException("MD5 is not available", e);
+            }
+          });
+
+  private final File file;
+
+  /** Signatures by parent id. Replaced, never modified. */
+  private final Map<String, Parent> parents = new HashMap<>();
+
+  /** Records in the file replaced by a later record of the same parent. */
+  private int replaced = 0;
+
+  /** The signatures of the children of one parent and of the fields they inherit. */
+  private static final class Parent {
+    /** Empty if the children inherit no fields. */
+    private final byte[] fields;
+
+    private final Map<String, byte[]> children;
+
+    private Parent(byte[] fields, Map<String, byte[]> children) {
+      this.fields = fields;
+      this.children = children;
+    }
+  }
+
+  /**
+   * @param file the signature file, read if it exists
+   */
+  ChildSignatureStore(File file) throws IOException {
+    this.file = file;
+    if (file.exists()) {
+      load();
+    }
+  }
+
+  private void load() throws IOException {
+    int records = 0;
+    boolean complete = true;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (file.length() < 4 || in.readInt() != MAGIC) {
+        throw new IOException("Not a child signature file: " + file);
+      }
+      long left = file.length() - 4;
+      while (left > 0) {
+        int length = left < 4 ? -1 : in.readInt();
+        if (length < 0 || length > left - 4) {
+          complete = false;
+          break;
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        readRecord(record);
+        records++;
+        left -= 4 + length;
+      }
+    }
+    replaced = records - parents.size();
+    if (!complete) {
+      // appending after the cut record would make the records after it unreadable
+      save();
+    }
+  }
+
+  private void readRecord(byte[] record) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    String parent = in.readUTF();
+    byte[] fields = new byte[in.readUnsignedByte()];
+    in.readFully(fields);
+    int childCount = in.readInt();
+    Map<String, byte[]> children = new HashMap<>(childCount * 4 / 3 + 1);
+    for (int c = 0; c < childCount; c++) {
+      String child = in.readUTF();
+      byte[] signature = new byte[in.readUnsignedByte()];
+      in.readFully(signature);
+      children.put(child, signature);
+    }
+    parents.put(parent, new Parent(fields, children));
+  }
+
+  /** @return the record of a parent, its length in front */
+  private static byte[] record(String parentId, Parent parent) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(64 + 32 * parent.children.size());
+    DataOutputStream out = new DataOutputStream(payload);
+    out.writeUTF(parentId);
+    out.writeByte(parent.fields.length);
+    out.write(parent.fields);
+    out.writeInt(parent.children.size());
+    for (Map.Entry<String, byte[]> child : parent.children.entrySet()) {
+      out.writeUTF(child.getKey());
+      out.writeByte(child.getValue().length);
+      out.write(child.getValue());
+    }
+    ByteArrayOutputStream record = new ByteArrayOutputStream(4 + payload.size());
+    new DataOutputStream(record).writeInt(payload.size());
+    payload.writeTo(record);
+    return record.toByteArray();
+  }
+
+  /** Rewrites the file with the live records only. */
+  private void save() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+      new DataOutputStream(out).writeInt(MAGIC);
+      for (Map.Entry<String, Parent> parent : parents.entrySet()) {
+        out.write(record(parent.getKey(), parent.getValue()));
+      }
+    }
+    try {
+      Files.move(
+          tmp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    replaced = 0;
+  }
+
+  /** Appends the record of one parent, in a single write. */
+  private void append(String parentId, Parent parent) throws IOException {
+    byte[] record = record(parentId, parent);
+    try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND)) {
+      out.write(record);
+    }
+  }
+
+  /**
+   * Starts comparing the children of a parent document with those of the previous run.
+   *
+   * @param fields the signature of the fields the children inherit, see {@link
+   *     #signature(Collection)}
+   */
+  synchronized Feed begin(String parentId, byte[] fields) {
+    Parent previous = parents.get(parentId);
+    return new Feed(parentId, fields, previous);
+  }
+
+  private synchronized void commit(String parentId, Parent parent) throws IOException {
+    Parent previous = parents.put(parentId, parent);
+    if (previous != null
+        && Arrays.equals(previous.fields, parent.fields)
+        && sameSignatures(previous.children, parent.children)) {
+      return;
+    }
+    if (previous != null) {
+      replaced++;
+    }
+    if (!file.exists() || replaced >= COMPACT_MIN_RECORDS && replaced > parents.size()) {
+      save();
+    } else {
+      append(parentId, parent);
+    }
+  }
+
+  private static boolean sameSignatures(Map<String, byte[]> a, Map<String, byte[]> b) {
+    if (a.size() != b.size()) {
+      return false;
+    }
+    for (Map.Entry<String, byte[]> entry : b.entrySet()) {
+      if (!Arrays.equals(a.get(entry.getKey()), entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return the number of children with a signature */
+  synchronized int size() {
+    int size = 0;
+    for (Parent parent : parents.values()) {
+      size += parent.children.size();
+    }
+    return size;
+  }
+
+  /** @return the number of records in the file replaced by later ones */
+  synchronized int getReplaced() {
+    return replaced;
+  }
+
+  /**
+   * @param fields the fields the children inherit
+   * @return the signature of the fields, in name order, empty without fields
+   */
+  static byte[] signature(Collection<IngestField> fields) {
+    if (fields.isEmpty()) {
+      return new byte[0];
+    }
+    List<IngestField> sorted = new ArrayList<>(fields);
+    sorted.sort((x, y) -> x.getName().compareTo(y.getName()));
+    MessageDigest digest = digests.get();
+    digest.reset();
+    for (IngestField field : sorted) {
+      digest.update((byte) 'F');
+      update(digest, field.getName());
+      for (IngestFieldValue value : field) {
+        digest.update((byte) 'V');
+        if (value.getValue() instanceof Node) {
+          update(digest, (Node) value.getValue());
+        } else {
+          update(digest, String.valueOf(value.getValue()));
+        }
+      }
+    }
+    return digest.digest();
+  }
+
+  /** @return the signature of the XML of a child, given as text or as a DOM node */
+  static byte[] signature(Object xml) {
+    MessageDigest digest = digests.get();
+    digest.reset();
+    if (xml instanceof Node) {
+      update(digest, (Node) xml);
+    } else {
+      digest.update(String.valueOf(xml).getBytes(StandardCharsets.UTF_8));
+    }
+    return digest.digest();
+  }
+
+  /** Hashes names, attributes in name order and text of the subtree, nothing else. */
+  private static void update(MessageDigest digest, Node node) {
+    switch (node.getNodeType()) {
+      case Node.DOCUMENT_NODE:
+        break;
+      case Node.ELEMENT_NODE:
+        digest.update((byte) 'E');
+        update(digest, node.getNamespaceURI());
+        update(digest, node.getLocalName() != null ? node.getLocalName() : node.getNodeName());
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes.getLength() > 0) {
+          List<Attr> sorted = new ArrayList<>(attributes.getLength());
+          for (int i = 0; i < attributes.getLength(); i++) {
+            sorted.add((Attr) attributes.item(i));
+          }
+          sorted.sort((x, y) -> x.getName().compareTo(y.getName()));
+          for (Attr attribute : sorted) {
+            digest.update((byte) 'A');
+            update(digest, attribute.getName());
+            update(digest, attribute.getValue());
+          }
+        }
+        break;
+      case Node.TEXT_NODE:
+      case Node.CDATA_SECTION_NODE:
+        digest.update((byte) 'T');
+        update(digest, node.getNodeValue());
+        break;
+      default:
+        // comments and processing instructions are not content
+        return;
+    }
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      update(digest, child);
+    }
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      digest.update((byte) 'e');
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) {
+    if (s != null) {
+      digest.update(s.getBytes(StandardCharsets.UTF_8));
+    }
+    digest.update((byte) 0);
+  }
+
+  /** The children of one parent document in the current run. Thread safe. */
+  final class Feed {
+
+    private final String parentId;
+
+    private final byte[] fields;
+
+    private final Map<String, byte[]> previous;
+
+    /** Whether the inherited fields changed, which changes every child. */
+    private final boolean fieldsChanged;
+
+    private final Map<String, byte[]> current = new ConcurrentHashMap<>();
+
+    private Feed(String parentId, byte[] fields, Parent previous) {
+      this.parentId = parentId;
+      this.fields = fields;
+      this.previous =
+          previous == null ? Collections.<String, byte[]>emptyMap() : previous.children;
+      this.fieldsChanged = previous != null && !Arrays.equals(previous.fields, fields);
+    }
+
+    /**
+     * Records the signature of a child of this run.
+     *
+     * @return whether the child is new or differs from the previous run
+     */
+    boolean changed(String childId, byte[] signature) {
+      current.put(childId, signature);
+      return fieldsChanged || !Arrays.equals(previous.get(childId), signature);
+    }
+
+    /** @return the children of the previous run that were not seen in this one */
+    List<String> missing() {
+      List<String> missing = new ArrayList<>();
+      for (String childId : previous.keySet()) {
+        if (!current.containsKey(childId)) {
+          missing.add(childId);
+        }
+      }
+      return missing;
+    }
+
+    /** Stores the signatures of this run, replacing those of the previous one. */
+    void commit() throws IOException {
+      ChildSignatureStore.this.commit(parentId, new Parent(fields, new HashMap<>(current)));
+    }
+  }
+}
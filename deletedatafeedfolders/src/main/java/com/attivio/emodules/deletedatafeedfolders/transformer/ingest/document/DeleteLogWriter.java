@@ -0,0 +1,431 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.emodules.deletedatafeedfolders.connector.DeleteLogCompactor;
+import com.attivio.emodules.deletedatafeedfolders.connector.DeleteLogSegment;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appends folder paths to the delete log of {@link SplitXmlSetLineage}, one path per line.
+ *
+ * <p>Any number of threads may append at once. Entries are queued without locking and committed
+ * in groups: once <code>maxBatchEntries</code> entries are queued, whichever thread finds the file
+ * free writes out everything queued so far, so concurrent writers never wait for each other. When
+ * <code>maxBatchDelayMillis</code> is positive a background timer also commits entries that have
+ * been queued for that long. How far a commit goes is decided by the {@link Durability}.
+ *
+ * <p>With a rotation size or age the log does not grow forever: when {@link #flush()} finds the
+ * log past either, the log is sealed into the next numbered piece and started over. A background
+ * thread compacts sealed pieces into sorted, indexed segments, see {@link DeleteLogSegment}.
+ */
+final class DeleteLogWriter implements Closeable {
+
+  /** How far a group commit pushes its entries. */
+  enum Durability {
+    /** Entries stay buffered until the buffer fills up or the log is flushed. */
+    NONE,
+    /** Every group commit is written to the file. */
+    FLUSH,
+    /** Every group commit is written to the file and forced to disk. */
+    FSYNC
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // using \n instead of newline because that is what serializer does.
+  private static final byte NEWLINE = '\n';
+
+  private final File file;
+
+  private final boolean closeAfterWrite;
+
+  private final int maxBatchEntries;
+
+  private final Durability durability;
+
+  private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger pendingCount = new AtomicInteger();
+
+  private final ReentrantLock drainLock = new ReentrantLock();
+
+  private final ScheduledExecutorService timer;
+
+  private final long rotateBytes;
+
+  private final long rotateMillis;
+
+  /** Compacts sealed pieces, <code>null</code> without rotation. */
+  private final ExecutorService compactor;
+
+  private volatile IOException compactFailure = null;
+
+  /** Guarded by {@link #drainLock}. */
+  private long activeBytes;
+
+  /** When the first entry went into the active log, guarded by {@link #drainLock}. */
+  private long activeSince;
+
+  /** Number of the last sealed piece, guarded by {@link #drainLock}. */
+  private long sequence;
+
+  /** Guarded by {@link #drainLock}. */
+  private FileChannel channel = null;
+
+  /** Guarded by {@link #drainLock}. */
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  /** Guarded by {@link #drainLock}. */
+  private IOException timerFailure = null;
+
+  // statistics, only written with drainLock held
+  private volatile long entriesWritten = 0;
+  private volatile long bytesWritten = 0;
+  private volatile long batches = 0;
+  private volatile long maxBatchSize = 0;
+  private volatile long writeNanos = 0;
+  private volatile long rotations = 0;
+
+  /**
+   * @param file the log file, entries are appended to it
+   * @param closeAfterWrite close the file after every write so other programs can modify it
+   * @param maxBatchEntries number of queued entries that triggers a group commit
+   * @param maxBatchDelayMillis longest time an entry stays queued, 0 or less to only commit by size
+   * @param durability how far every group commit goes
+   */
+  DeleteLogWriter(
+      File file,
+      boolean closeAfterWrite,
+      int maxBatchEntries,
+      long maxBatchDelayMillis,
+      Durability durability) {
+    this(file, closeAfterWrite, maxBatchEntries, maxBatchDelayMillis, durability, 0, 0);
+  }
+
+  /**
+   * @param file the log file, entries are appended to it
+   * @param closeAfterWrite close the file after every write so other programs can modify it
+   * @param maxBatchEntries number of queued entries that triggers a group commit
+   * @param maxBatchDelayMillis longest time an entry stays queued, 0 or less to only commit by size
+   * @param durability how far every group commit goes
+   * @param rotateBytes size at which the log is rotated, 0 or less for no limit
+   * @param rotateMillis age of the oldest entry at which the log is rotated, 0 or less for no limit
+   */
+  DeleteLogWriter(
+      File file,
+      boolean closeAfterWrite,
+      int maxBatchEntries,
+      long maxBatchDelayMillis,
+      Durability durability,
+      long rotateBytes,
+      long rotateMillis) {
+    this.file = file;
+    this.closeAfterWrite = closeAfterWrite;
+    this.maxBatchEntries = Math.max(1, maxBatchEntries);
+    this.durability = durability;
+    this.rotateBytes = rotateBytes;
+    this.rotateMillis = rotateMillis;
+    this.activeBytes = file.length();
+    this.activeSince = System.currentTimeMillis();
+    if (rotateBytes > 0 || rotateMillis > 0) {
+      sequence = DeleteLogSegment.lastSequence(file);
+      compactor =
+          Executors.newSingleThreadExecutor(
+              r -> {
+                Thread t = new Thread(r, "delete-log-compact-" + file.getName());
+                t.setDaemon(true);
+                return t;
+              });
+      // pieces sealed by a previous run that stopped before compacting them
+      compactor.execute(this::compactSealed);
+    } else {
+      compactor = null;
+    }
+    if (maxBatchDelayMillis > 0) {
+      timer =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread t = new Thread(r, "delete-log-commit-" + file.getName());
+                t.setDaemon(true);
+                return t;
+              });
+      timer.scheduleWithFixedDelay(
+          this::timedCommit, maxBatchDelayMillis, maxBatchDelayMillis, TimeUnit.MILLISECONDS);
+    } else {
+      timer = null;
+    }
+  }
+
+  /** Queues a folder path, committing the queue if it reached the batch size. */
+  void append(String folderName) throws IOException {
+    pending.add(folderName);
+    pendingCount.incrementAndGet();
+    // whoever holds the lock commits everybody's entries; the others return right away.
+    // re-check after unlocking: entries may have been queued while the previous owner was writing
+    while (pendingCount.get() >= maxBatchEntries && drainLock.tryLock()) {
+      try {
+        commit(false);
+      } finally {
+        drainLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Writes every queued entry to the file, forcing it to disk for {@link Durability#FSYNC}, and
+   * rotates the log if it is due.
+   */
+  void flush() throws IOException {
+    drainLock.lock();
+    try {
+      rethrowTimerFailure();
+      commit(true);
+      if (rotationDue()) {
+        rotate();
+      }
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  /** Must be called with {@link #drainLock} held. */
+  private boolean rotationDue() {
+    if (compactor == null || activeBytes == 0) {
+      return false;
+    }
+    return rotateBytes > 0 && activeBytes >= rotateBytes
+        || rotateMillis > 0 && System.currentTimeMillis() - activeSince >= rotateMillis;
+  }
+
+  /**
+   * Seals the active log into the next piece and hands it to the compactor. Must be called with
+   * {@link #drainLock} held, after a flushing commit.
+   */
+  private void rotate() throws IOException {
+    closeChannel();
+    File sealed = DeleteLogSegment.sealedFile(file, sequence + 1);
+    try {
+      Files.move(file.toPath(), sealed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(file.toPath(), sealed.toPath());
+    }
+    sequence++;
+    rotations++;
+    activeBytes = 0;
+    compactor.execute(this::compactSealed);
+  }
+
+  private void compactSealed() {
+    try {
+      DeleteLogCompactor.compactSealed(file);
+    } catch (IOException e) {
+      // the sealed pieces stay readable, the next flush or close reports the failure
+      compactFailure = e;
+    }
+  }
+
+  private void timedCommit() {
+    if (pendingCount.get() == 0 || !drainLock.tryLock()) {
+      return;
+    }
+    try {
+      commit(false);
+    } catch (IOException e) {
+      // nobody is waiting for this commit, the next flush or close reports the failure
+      timerFailure = e;
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  /** Must be called with {@link #drainLock} held. */
+  private void rethrowTimerFailure() throws IOException {
+    if (timerFailure != null) {
+      IOException e = timerFailure;
+      timerFailure = null;
+      throw e;
+    }
+    if (compactFailure != null) {
+      IOException e = compactFailure;
+      compactFailure = null;
+      throw e;
+    }
+  }
+
+  /** Must be called with {@link #drainLock} held. */
+  private void commit(boolean flush) throws IOException {
+    long start = System.nanoTime();
+    long size = 0;
+    long bytes = 0;
+    String entry;
+    while ((entry = pending.poll()) != null) {
+      pendingCount.decrementAndGet();
+      bytes += put(entry.getBytes(StandardCharsets.UTF_8));
+      size++;
+    }
+    if (flush || durability != Durability.NONE) {
+      writeBuffer();
+      if (durability == Durability.FSYNC && channel != null && channel.isOpen()) {
+        channel.force(false);
+      }
+      if (closeAfterWrite) {
+        closeChannel();
+      }
+    }
+    if (size > 0) {
+      if (activeBytes == 0) {
+        activeSince = System.currentTimeMillis();
+      }
+      activeBytes += bytes;
+      entriesWritten += size;
+      bytesWritten += bytes;
+      batches++;
+      maxBatchSize = Math.max(maxBatchSize, size);
+    }
+    writeNanos += System.nanoTime() - start;
+  }
+
+  private long put(byte[] entry) throws IOException {
+    if (buffer.remaining() < entry.length + 1) {
+      writeBuffer();
+    }
+    if (buffer.remaining() < entry.length + 1) {
+      // larger than the whole buffer
+      write(ByteBuffer.wrap(entry));
+    } else {
+      buffer.put(entry);
+    }
+    buffer.put(NEWLINE);
+    return entry.length + 1;
+  }
+
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    write(buffer);
+    buffer.clear();
+  }
+
+  private void write(ByteBuffer src) throws IOException {
+    if (!src.hasRemaining()) {
+      return;
+    }
+    if (channel != null && !channel.isOpen()) {
+      // closed by an interrupt of the thread that was writing, the file itself is fine
+      channel = null;
+    }
+    if (channel == null) {
+      channel =
+          FileChannel.open(
+              file.toPath(),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND);
+    }
+    while (src.hasRemaining()) {
+      channel.write(src);
+    }
+  }
+
+  private void closeChannel() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    channel.close();
+    channel = null;
+  }
+
+  /** Commits any queued entries and closes the file. */
+  @Override
+  public void close() throws IOException {
+    if (timer != null) {
+      // no shutdownNow(): interrupting a commit in progress would close the channel under it
+      timer.shutdown();
+      try {
+        timer.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    drainLock.lock();
+    try {
+      commit(true);
+      closeChannel();
+    } finally {
+      drainLock.unlock();
+    }
+    if (compactor != null) {
+      compactor.shutdown();
+      try {
+        compactor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    drainLock.lock();
+    try {
+      rethrowTimerFailure();
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  long getEntriesWritten() {
+    return entriesWritten;
+  }
+
+  long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  long getBatches() {
+    return batches;
+  }
+
+  long getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /** @return the number of times the log was sealed into a new piece */
+  long getRotations() {
+    return rotations;
+  }
+
+  /** @return the time spent committing entries */
+  long getWriteNanos() {
+    return writeNanos;
+  }
+
+  /** Summary of the write statistics, useful to tune the batch size and delay. */
+  @Override
+  public String toString() {
+    long nanos = Math.max(1, writeNanos);
+    return String.format(
+        "%s: %d entries, %d bytes in %d batches (avg %.1f, max %d entries), "
+            + "%.0f entries/s, %.0f KB/s",
+        file,
+        entriesWritten,
+        bytesWritten,
+        batches,
+        batches == 0 ? 0.0 : (double) entriesWritten / batches,
+        maxBatchSize,
+        entriesWritten * 1e9 / nanos,
+        bytesWritten * 1e9 / 1024 / nanos);
+  }
+}
@@ -0,0 +1,134 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The folders flagged for deletion in one feed, reduced to the ones that need a delete of their
+ * own.
+ *
+ * <p>A folder already in the set is dropped, and so is a folder below one in the set: deleting
+ * <code>/assets/a</code> deletes everything in <code>/assets/a/b</code> as well. Adding a folder
+ * removes the folders below it that were added before. Paths are compared segment by segment on
+ * <code>/</code>, empty segments are ignored. Not thread safe.
+ */
+final class DeleteSet {
+
+  private final Node root = new Node();
+
+  private int size = 0;
+
+  /**
+   * @param folder the folder to delete
+   * @return <code>false</code> if the folder is already deleted by the set
+   */
+  boolean add(String folder) {
+    Node node = root;
+    int start = 0;
+    int length = folder.length();
+    while (start <= length) {
+      if (node.folder != null) {
+        return false;
+      }
+      int end = folder.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      if (end > start) {
+        String segment = folder.substring(start, end);
+        Node child = node.children.get(segment);
+        if (child == null) {
+          child = new Node();
+          node.children.put(segment, child);
+        }
+        node = child;
+      }
+      start = end + 1;
+    }
+    if (node == root || node.folder != null) {
+      return false;
+    }
+    size -= node.clear();
+    node.folder = folder;
+    size++;
+    return true;
+  }
+
+  /** @return whether <code>path</code> is one of the folders or lies below one of them */
+  boolean covers(String path) {
+    return coveringFolder(path) != null;
+  }
+
+  /**
+   * @return the folder <code>path</code> is or lies below, as it was added, <code>null</code> if
+   *     none
+   */
+  String coveringFolder(String path) {
+    Node node = root;
+    int start = 0;
+    int length = path.length();
+    while (start <= length && node != null) {
+      if (node.folder != null) {
+        return node.folder;
+      }
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      if (end > start) {
+        node = node.children.get(path.substring(start, end));
+      }
+      start = end + 1;
+    }
+    return node == null ? null : node.folder;
+  }
+
+  /** @return the folders to delete, grouped by parent folder in the order they were first seen */
+  List<String> folders() {
+    List<String> folders = new ArrayList<>(size);
+    collect(root, folders);
+    return folders;
+  }
+
+  private static void collect(Node node, List<String> folders) {
+    if (node.folder != null) {
+      folders.add(node.folder);
+      return;
+    }
+    for (Node child : node.children.values()) {
+      collect(child, folders);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    root.clear();
+    size = 0;
+  }
+
+  private static final class Node {
+    /** The folder as it was added, <code>null</code> unless this path is deleted. */
+    private String folder;
+    private final Map<String, Node> children = new LinkedHashMap<>();
+
+    /** Removes everything below this node, returning the number of folders removed. */
+    int clear() {
+      int removed = 0;
+      for (Node child : children.values()) {
+        removed += (child.folder != null ? 1 : 0) + child.clear();
+      }
+      children.clear();
+      return removed;
+    }
+  }
+}
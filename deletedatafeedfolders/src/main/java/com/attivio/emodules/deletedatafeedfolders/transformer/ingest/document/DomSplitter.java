@@ -0,0 +1,271 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import com.attivio.sdk.ingest.IngestDocument;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSSerializer;
+
+/**
+ * Splits XML held as a DOM: every rule selects its nodes, the delete flags of the selected nodes
+ * are read and every node of a rule with an id path is split off as a child. The children are
+ * built and submitted through {@link SplitXmlSetLineage}, which applies the checks that span the
+ * whole feed. {@link StreamingSplitter} reads ids and delete flags of its elements here as well.
+ *
+ * <p>Thread safe once built, the shards of a feed split on their own threads.
+ */
+final class DomSplitter {
+
+  private final SplitXmlSetLineage split;
+
+  private final Collection<SplitRule> rules;
+
+  private final FieldExtractor fieldExtractor;
+
+  private final boolean childXmlNeeded;
+
+  private final boolean textChildren;
+
+  private final SplitXmlSetLineage.Suppression suppression;
+
+  private final SplitXmlSetLineage.Duplicates duplicates;
+
+  private final boolean duplicateFingerprints;
+
+  /** <code>null</code> unless folders are classified by a type. */
+  private final XPath folderTypePath;
+
+  /** The attribute folderTypePath selects, <code>null</code> if it is not a plain attribute. */
+  private final String folderTypeAttribute;
+
+  /**
+   * @param split builds and submits the children
+   * @param rules the split plan, in configuration order
+   * @param fieldExtractor maps child values to fields
+   * @param childXmlNeeded whether the children carry their XML or a signature of it
+   * @param textChildren whether the children carry their XML as text rather than as a DOM
+   * @param suppression what happens to children under a folder the feed deletes
+   * @param duplicates which children with the same id are fed
+   * @param duplicateFingerprints whether child ids are compared as 64-bit fingerprints
+   * @param folderTypePath selects the type of a flagged item, <code>null</code> without type
+   * @param folderTypeAttribute the attribute <code>folderTypePath</code> selects, if plain
+   */
+  DomSplitter(
+      SplitXmlSetLineage split,
+      Collection<SplitRule> rules,
+      FieldExtractor fieldExtractor,
+      boolean childXmlNeeded,
+      boolean textChildren,
+      SplitXmlSetLineage.Suppression suppression,
+      SplitXmlSetLineage.Duplicates duplicates,
+      boolean duplicateFingerprints,
+      XPath folderTypePath,
+      String folderTypeAttribute) {
+    this.split = split;
+    this.rules = rules;
+    this.fieldExtractor = fieldExtractor;
+    this.childXmlNeeded = childXmlNeeded;
+    this.textChildren = textChildren;
+    this.suppression = suppression;
+    this.duplicates = duplicates;
+    this.duplicateFingerprints = duplicateFingerprints;
+    this.folderTypePath = folderTypePath;
+    this.folderTypeAttribute = folderTypeAttribute;
+  }
+
+  /**
+   * Splits the XML of the feed and adds all of the parent document field values to the child
+   * documents, feeding the parent first unless it is dropped.
+   */
+  void split(Element elem, FeedState feed) throws AttivioException {
+    IngestDocument doc = feed.doc;
+    split.feedParent(feed);
+
+    try {
+      // with suppression every delete flag is read before the first child is split off
+      boolean flagsFirst = suppression != SplitXmlSetLineage.Suppression.OFF;
+      List<List<Element>> selected = new ArrayList<>(rules.size());
+      for (SplitRule rule : rules) {
+        long start = SplitXmlSetLineage.startTimer(rule.getSelectLatency());
+        List<Element> nodes = rule.select(elem);
+        SplitXmlSetLineage.stopTimer(rule.getSelectLatency(), start);
+        selected.add(nodes);
+        if (flagsFirst && rule.getDeleteFlagPath() != null) {
+          for (Element node : nodes) {
+            checkDeleteFlag(node, rule, feed);
+          }
+        }
+      }
+      String[][] ids =
+          duplicates == SplitXmlSetLineage.Duplicates.LAST ? lastOccurrences(selected, doc) : null;
+      // otherwise one visit per node handles both its delete flag and its split
+      int r = 0;
+      for (SplitRule rule : rules) {
+        List<Element> nodes = selected.get(r);
+        for (int n = 0; n < nodes.size(); n++) {
+          Element node = nodes.get(n);
+          if (!flagsFirst && rule.getDeleteFlagPath() != null) {
+            checkDeleteFlag(node, rule, feed);
+          }
+          if (rule.getIdPath() == null) {
+            continue;
+          }
+          final String id = ids != null ? ids[r][n] : childId(node, rule, n, doc);
+          if (id == null) {
+            // a later child has the same id
+            split.duplicate();
+            continue;
+          }
+          if (suppression == SplitXmlSetLineage.Suppression.DROP && feed.deletes.covers(id)) {
+            // not worth a copy
+            split.submitChild(id, 0, null, feed);
+            continue;
+          }
+          if (textChildren || !childXmlNeeded) {
+            final FieldExtractor.Values fields = fieldExtractor.extract(node);
+            final String xml = childXmlNeeded ? serialize(node) : null;
+            split.submitChild(
+                id, split.childBytes(xml), () -> split.buildChild(id, xml, fields, feed), feed);
+            continue;
+          }
+          // cloned here, the parent's DOM may not be read by two threads at once
+          final Node copy = node.cloneNode(true);
+          split.submitChild(
+              id,
+              split.childBytes(copy),
+              () -> {
+                Document d = split.docBuilder().newDocument();
+                // the following line of code is silly but required
+                Node root = d.appendChild(d.importNode(copy, true));
+                return split.buildChild(id, d, fieldExtractor.extract(root), feed);
+              },
+              feed);
+        }
+        r++;
+      }
+      feed.emitter.finish();
+    } catch (JaxenException je) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, je, "Error evaluating xpath expression");
+    }
+  }
+
+  /** @return the id of the child split off <code>node</code>, numbered if so configured */
+  String childId(Element node, SplitRule rule, int childId, IngestDocument doc)
+      throws AttivioException {
+    XPath xpathToId = rule.getIdPath();
+    Node idNode;
+    long start = SplitXmlSetLineage.startTimer(rule.getIdLatency());
+    if (rule.getIdAttribute() != null) {
+      idNode = node.getAttributeNode(rule.getIdAttribute());
+    } else {
+      try {
+        idNode = (Node) xpathToId.selectSingleNode(node);
+      } catch (JaxenException je) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR, je, "Error evaluating xpath expression");
+      }
+    }
+    SplitXmlSetLineage.stopTimer(rule.getIdLatency(), start);
+    if (idNode == null) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          "xpathToId %s not found for document %s",
+          xpathToId,
+          doc.getId());
+    }
+    return split.numberChildId(idNode.getTextContent(), childId);
+  }
+
+  /** Flags the item of <code>node</code> for deletion if it carries the delete flag of the rule. */
+  void checkDeleteFlag(Element node, SplitRule rule, FeedState feed) throws AttivioException {
+    Node deleteNode;
+    long start = SplitXmlSetLineage.startTimer(rule.getDeleteFlagLatency());
+    if (rule.getDeleteFlagAttribute() != null) {
+      deleteNode = node.getAttributeNode(rule.getDeleteFlagAttribute());
+    } else {
+      try {
+        deleteNode = (Node) rule.getDeleteFlagPath().selectSingleNode(node);
+      } catch (JaxenException je) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            je,
+            "Error evaluating xpath expression for delete flag");
+      }
+    }
+    SplitXmlSetLineage.stopTimer(rule.getDeleteFlagLatency(), start);
+    if (deleteNode != null) {
+      split.flagFolder(node.getAttribute("id"), folderType(node), feed);
+    }
+  }
+
+  /** The XML of a node as text, without XML declaration. */
+  static String serialize(Node node) {
+    DOMImplementationLS ls =
+        (DOMImplementationLS) node.getOwnerDocument().getImplementation().getFeature("LS", "3.0");
+    LSSerializer serializer = ls.createLSSerializer();
+    serializer.getDomConfig().setParameter("xml-declaration", Boolean.FALSE);
+    return serializer.writeToString(node);
+  }
+
+  /**
+   * Reads the ids of all selected nodes, last to first, to keep the last occurrence of every id.
+   *
+   * @return the ids by rule and node, <code>null</code> for an id that occurs again later and for
+   *     the nodes of a rule without id path
+   */
+  private String[][] lastOccurrences(List<List<Element>> selected, IngestDocument doc)
+      throws AttivioException {
+    String[][] ids = new String[selected.size()][];
+    int r = 0;
+    for (SplitRule rule : rules) {
+      List<Element> nodes = selected.get(r);
+      ids[r] = new String[nodes.size()];
+      if (rule.getIdPath() != null) {
+        for (int n = 0; n < nodes.size(); n++) {
+          ids[r][n] = childId(nodes.get(n), rule, n, doc);
+        }
+      }
+      r++;
+    }
+    ChildIdSet seen = new ChildIdSet(duplicateFingerprints);
+    for (r = ids.length - 1; r >= 0; r--) {
+      for (int n = ids[r].length - 1; n >= 0; n--) {
+        if (ids[r][n] != null && !seen.add(ids[r][n])) {
+          ids[r][n] = null;
+        }
+      }
+    }
+    return ids;
+  }
+
+  /** @return the type of a flagged item, <code>null</code> without folderTypePath or type */
+  private String folderType(Element node) throws AttivioException {
+    if (folderTypePath == null) {
+      return null;
+    }
+    Node typeNode;
+    if (folderTypeAttribute != null) {
+      typeNode = node.getAttributeNode(folderTypeAttribute);
+    } else {
+      try {
+        typeNode = (Node) folderTypePath.selectSingleNode(node);
+      } catch (JaxenException je) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            je,
+            "Error evaluating xpath expression for folder type");
+      }
+    }
+    return typeNode == null ? null : typeNode.getTextContent();
+  }
+}
@@ -0,0 +1,58 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.client.DocumentOutputClient;
+import com.attivio.sdk.ingest.IngestDocument;
+
+/**
+ * State of the feed a single {@link SplitXmlSetLineage#process} call is splitting, handed to the
+ * DOM, streaming and shard paths that split it, see {@link DomSplitter}, {@link StreamingSplitter}
+ * and {@link ShardSplitter}.
+ */
+final class FeedState {
+  final IngestDocument doc;
+  final DocumentOutputClient out;
+  final LineageTrie lineage;
+  /** <code>null</code> unless parent fields are copied. */
+  final ParentFieldTemplate parentFields;
+  final OrderedChildEmitter emitter;
+  /** <code>null</code> for a shard, its children are fed by the feed. */
+  final ChildBatcher batcher;
+  /** <code>null</code> unless the first of repeated child ids is kept. */
+  final ChildIdSet childIds;
+  /** Folders flagged for deletion, written to the delete log at the end of the feed. */
+  final DeleteSet deletes = new DeleteSet();
+  /** Memory budget bytes held by {@link #deletes}. */
+  long deleteBytes = 0;
+  /** <code>null</code> unless incremental. */
+  final ChildSignatureStore.Feed signatures;
+  /** Whether this is a shard of a feed, the feed itself feeds the parent and writes deletes. */
+  final boolean shard;
+
+  FeedState(
+      IngestDocument doc,
+      DocumentOutputClient out,
+      LineageTrie lineage,
+      ParentFieldTemplate parentFields,
+      OrderedChildEmitter emitter,
+      ChildBatcher batcher,
+      ChildIdSet childIds,
+      ChildSignatureStore.Feed signatures,
+      boolean shard) {
+    this.doc = doc;
+    this.out = out;
+    this.lineage = lineage;
+    this.parentFields = parentFields;
+    this.emitter = emitter;
+    this.batcher = batcher;
+    this.childIds = childIds;
+    this.signatures = signatures;
+    this.shard = shard;
+  }
+
+  /** @return a shard of this feed splitting into <code>emitter</code>, with deletes of its own */
+  FeedState shard(OrderedChildEmitter emitter) {
+    return new FeedState(
+        doc, out, lineage, parentFields, emitter, null, childIds, signatures, true);
+  }
+}
@@ -0,0 +1,143 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import com.attivio.sdk.ingest.IngestDocument;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Fills fields of the children of {@link SplitXmlSetLineage} from their XML while the splitter
+ * holds the node, so no later stage has to parse the child XML again.
+ *
+ * <p>Every mapping is an XPath relative to the split node. A node set adds the text of every node
+ * as a value, any other result adds its string value; an empty result adds nothing. Mappings that
+ * are a plain attribute such as <code>@title</code> are read directly from the element, and are the
+ * only ones that can be evaluated on the attributes of a text streaming split.
+ */
+final class FieldExtractor {
+
+  private final List<Mapping> mappings = new ArrayList<>();
+
+  private boolean attributesOnly = true;
+
+  /**
+   * @param field the field to fill
+   * @param expression the XPath relative to the split node
+   * @param xpath the compiled <code>expression</code>
+   */
+  void add(String field, String expression, XPath xpath) {
+    String attribute = SplitRule.attributeName(expression);
+    mappings.add(new Mapping(field, expression, xpath, attribute));
+    attributesOnly &= attribute != null;
+  }
+
+  boolean isEmpty() {
+    return mappings.isEmpty();
+  }
+
+  /** @return whether every mapping is a plain attribute */
+  boolean isAttributesOnly() {
+    return attributesOnly;
+  }
+
+  /**
+   * Evaluates the mappings on a split node. The node is only read on the calling thread.
+   *
+   * @return the values, <code>null</code> without mappings
+   */
+  Values extract(Node node) throws AttivioException {
+    if (mappings.isEmpty()) {
+      return null;
+    }
+    Values values = new Values();
+    for (Mapping mapping : mappings) {
+      if (mapping.attribute != null) {
+        if (node instanceof Element) {
+          Attr attribute = ((Element) node).getAttributeNode(mapping.attribute);
+          if (attribute != null) {
+            values.add(mapping.field, attribute.getValue());
+          }
+        }
+        continue;
+      }
+      Object result;
+      try {
+        result = mapping.xpath.evaluate(node);
+      } catch (JaxenException je) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            je,
+            "Error evaluating xpath expression %s for field %s",
+            mapping.expression,
+            mapping.field);
+      }
+      if (result instanceof List) {
+        for (Object item : (List<?>) result) {
+          values.add(mapping.field, item instanceof Node ? ((Node) item).getTextContent() : item);
+        }
+      } else if (result != null) {
+        values.add(mapping.field, result);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Evaluates the mappings on the attributes of a split element, see {@link #isAttributesOnly()}.
+   *
+   * @return the values, <code>null</code> without mappings
+   */
+  Values extract(Map<String, String> attributes) {
+    if (mappings.isEmpty()) {
+      return null;
+    }
+    Values values = new Values();
+    for (Mapping mapping : mappings) {
+      String value = attributes.get(mapping.attribute);
+      if (value != null) {
+        values.add(mapping.field, value);
+      }
+    }
+    return values;
+  }
+
+  private static final class Mapping {
+    private final String field;
+    private final String expression;
+    private final XPath xpath;
+    /** <code>null</code> unless the expression is a plain attribute. */
+    private final String attribute;
+
+    Mapping(String field, String expression, XPath xpath, String attribute) {
+      this.field = field;
+      this.expression = expression;
+      this.xpath = xpath;
+      this.attribute = attribute;
+    }
+  }
+
+  /** The field values of one child, immutable once extracted. */
+  static final class Values {
+    private final List<String> fields = new ArrayList<>(4);
+    private final List<Object> values = new ArrayList<>(4);
+
+    private void add(String field, Object value) {
+      fields.add(field);
+      values.add(value);
+    }
+
+    void addTo(IngestDocument child) {
+      for (int i = 0; i < fields.size(); i++) {
+        child.addValue(fields.get(i), values.get(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether an item flagged for deletion is a folder, whose delete takes everything below
+ * it, or a single asset. Built once when {@link SplitXmlSetLineage} starts:
+ *
+ * <ul>
+ *   <li>{@link #byExtension}: only a listed file extension makes a file, by default those of
+ *       {@link #DEFAULT_FILE_EXTENSIONS}, so a folder named <code>v1.2</code> stays a folder.
+ *   <li>{@link #byPattern}: a path matching a regular expression is a folder.
+ *   <li>{@link #byType}: the type the feed gives the item, such as <code>@type</code>, decides;
+ *       items without a type fall back to another classifier.
+ * </ul>
+ *
+ * {@link #cached} remembers the most recent decisions by path. Thread safe.
+ */
+abstract class FolderClassifier {
+
+  /** Extensions of the files of a typical asset feed, used when none are configured. */
+  static final List<String> DEFAULT_FILE_EXTENSIONS =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "txt", "rtf", "csv", "xml",
+              "htm", "html", "json", "zip", "jpg", "jpeg", "png", "gif", "svg", "tif", "tiff",
+              "mp3", "mp4", "mov", "wav", "avi"));
+
+  /**
+   * @param path the path of the flagged item
+   * @param type the type of the item from the feed, <code>null</code> if not known
+   * @return whether the item is a folder
+   */
+  abstract boolean isFolder(String path, String type);
+
+  /**
+   * @param fileExtensions the extensions of files, case insensitive, <code>null</code> or empty for
+   *     {@link #DEFAULT_FILE_EXTENSIONS}
+   */
+  static FolderClassifier byExtension(Collection<String> fileExtensions) {
+    if (fileExtensions == null || fileExtensions.isEmpty()) {
+      fileExtensions = DEFAULT_FILE_EXTENSIONS;
+    }
+    final Set<String> extensions = new HashSet<>();
+    for (String extension : fileExtensions) {
+      String e = extension.trim().toLowerCase(Locale.ROOT);
+      extensions.add(e.startsWith(".") ? e.substring(1) : e);
+    }
+    return new FolderClassifier() {
+      @Override
+      boolean isFolder(String path, String type) {
+        return !extensions.contains(extension(path).toLowerCase(Locale.ROOT));
+      }
+    };
+  }
+
+  /** @param folderPattern matches the whole path of folders */
+  static FolderClassifier byPattern(final Pattern folderPattern) {
+    return new FolderClassifier() {
+      @Override
+      boolean isFolder(String path, String type) {
+        return folderPattern.matcher(path).matches();
+      }
+    };
+  }
+
+  /**
+   * @param folderTypes the types of folders, case insensitive
+   * @param untyped classifies the items without a type
+   */
+  static FolderClassifier byType(Collection<String> folderTypes, final FolderClassifier untyped) {
+    final Set<String> types = new HashSet<>();
+    for (String type : folderTypes) {
+      types.add(type.trim().toLowerCase(Locale.ROOT));
+    }
+    return new FolderClassifier() {
+      @Override
+      boolean isFolder(String path, String type) {
+        if (type == null) {
+          return untyped.isFolder(path, null);
+        }
+        return types.contains(type.trim().toLowerCase(Locale.ROOT));
+      }
+    };
+  }
+
+  /**
+   * Remembers the decisions for items without a type, the ones that depend on the path only.
+   *
+   * @param maxEntries most recent decisions kept, 0 or less for no cache
+   */
+  static FolderClassifier cached(final FolderClassifier classifier, final int maxEntries) {
+    if (maxEntries <= 0) {
+      return classifier;
+    }
+    final Map<String, Boolean> recent =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > maxEntries;
+          }
+        };
+    return new FolderClassifier() {
+      @Override
+      boolean isFolder(String path, String type) {
+        if (type != null) {
+          return classifier.isFolder(path, type);
+        }
+        synchronized (recent) {
+          Boolean folder = recent.get(path);
+          if (folder != null) {
+            return folder;
+          }
+        }
+        boolean folder = classifier.isFolder(path, null);
+        synchronized (recent) {
+          recent.put(path, folder);
+        }
+        return folder;
+      }
+    };
+  }
+
+  /** @return the extension of the last path segment, empty if it has none */
+  static String extension(String path) {
+    int dot = path.lastIndexOf('.');
+    int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+    return dot > separator ? path.substring(dot + 1) : "";
+  }
+}
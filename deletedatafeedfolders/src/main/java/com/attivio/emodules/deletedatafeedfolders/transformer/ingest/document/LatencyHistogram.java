@@ -0,0 +1,89 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with one bucket per power of two nanoseconds. Recording is lock free and
+ * costs a few atomic increments, so it can stay on in production. Percentiles are reported as the
+ * upper bound of their bucket, which is at most a factor two off.
+ */
+final class LatencyHistogram {
+
+  private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder totalNanos = new LongAdder();
+
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+    count.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @param fraction the percentile as a fraction, 0.99 for the 99th percentile
+   * @return the upper bound of the bucket holding the percentile, 0 when nothing was recorded
+   */
+  long getPercentileNanos(double fraction) {
+    long total = 0;
+    for (int i = 0; i < buckets.length(); i++) {
+      total += buckets.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * fraction);
+    long seen = 0;
+    for (int i = 0; i < buckets.length(); i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return i == 63 ? Long.MAX_VALUE : Math.min((2L << i) - 1, getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+
+  void reset() {
+    for (int i = 0; i < buckets.length(); i++) {
+      buckets.set(i, 0);
+    }
+    count.reset();
+    totalNanos.reset();
+    maxNanos.reset();
+  }
+
+  /** Count, mean, median, 99th percentile and maximum in microseconds. */
+  @Override
+  public String toString() {
+    long n = getCount();
+    return String.format(
+        "n=%d avg=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+        n,
+        n == 0 ? 0.0 : getTotalNanos() / 1e3 / n,
+        getPercentileNanos(0.5) / 1e3,
+        getPercentileNanos(0.99) / 1e3,
+        getMaxNanos() / 1e3);
+  }
+}
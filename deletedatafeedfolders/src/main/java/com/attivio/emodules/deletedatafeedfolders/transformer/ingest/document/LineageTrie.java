@@ -0,0 +1,93 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the lineage ids of a path: <code>/a/b/c</code> has the lineage <code>/a</code>, <code>
+ * /a/b</code> and <code>/a/b/c</code>.
+ *
+ * <p>Every prefix is a node of a trie that holds the prefix string, so siblings and cousins share
+ * the strings of their common ancestors and each ancestor string is built only once, no matter
+ * how many children it has.
+ */
+final class LineageTrie {
+
+  private final boolean concurrent;
+
+  private final int maxNodes;
+
+  private final AtomicInteger nodes = new AtomicInteger();
+
+  private volatile Node root;
+
+  /**
+   * @param concurrent whether several threads use the trie at the same time
+   * @param maxNodes the trie is emptied once it holds more prefixes than this, 0 for no limit
+   */
+  LineageTrie(boolean concurrent, int maxNodes) {
+    this.concurrent = concurrent;
+    this.maxNodes = maxNodes;
+    this.root = new Node("", concurrent);
+  }
+
+  /**
+   * @param path a <code>/</code> separated path, empty segments are ignored
+   * @return the lineage of the path, from its top-level ancestor to the path itself
+   */
+  List<String> lineage(String path) {
+    if (maxNodes > 0 && nodes.get() > maxNodes) {
+      root = new Node("", concurrent);
+      nodes.set(0);
+    }
+    List<String> lineage = new ArrayList<>();
+    Node node = root;
+    int start = 0;
+    int length = path.length();
+    while (start <= length) {
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      if (end > start) {
+        node = node.child(path.substring(start, end));
+        lineage.add(node.path);
+      }
+      start = end + 1;
+    }
+    return lineage;
+  }
+
+  /** @return the number of prefixes currently held */
+  int size() {
+    return nodes.get();
+  }
+
+  private final class Node {
+    private final String path;
+    private final Map<String, Node> children;
+
+    Node(String path, boolean concurrent) {
+      this.path = path;
+      this.children = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+    }
+
+    Node child(String segment) {
+      Node child = children.get(segment);
+      if (child == null) {
+        child = new Node(path + "/" + segment, concurrent);
+        Node existing = children.putIfAbsent(segment, child);
+        if (existing != null) {
+          return existing;
+        }
+        nodes.incrementAndGet();
+      }
+      return child;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.w3c.dom.Node;
+
+/**
+ * Bounds the heap a {@link SplitXmlSetLineage} holds in children built but not yet fed and in
+ * folders flagged but not yet written to the delete log, shared by all its ingest threads.
+ *
+ * <p>Sizes are estimates: the XML of a child in characters times two, a DOM child four times that,
+ * plus a fixed overhead per child, see {@link #estimate(Object)}. A request that does not fit waits
+ * for other threads to release theirs with {@link Policy#THROTTLE}, up to <code>maxWaitMillis
+ * </code>, and fails the document right away with {@link Policy#FAIL}. A single request larger
+ * than the whole budget is let through once nothing else is held, so no document is stuck forever.
+ * Memory the caller itself holds and cannot give back while it waits does not count as held by
+ * others, see {@link #acquire(long, long)}.
+ */
+final class MemoryBudget {
+
+  /** What happens to a request that does not fit. */
+  enum Policy {
+    /** Wait for memory to be released, fail after the longest wait. */
+    THROTTLE,
+    /** Fail the document. */
+    FAIL
+  }
+
+  /** Estimated bytes of a child document besides its XML. */
+  static final long CHILD_OVERHEAD = 512;
+
+  /** Estimated bytes of a flagged folder besides its path. */
+  static final long DELETE_OVERHEAD = 64;
+
+  private final long limitBytes;
+
+  private final Policy policy;
+
+  private final long maxWaitNanos;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition released = lock.newCondition();
+
+  /** Guarded by {@link #lock}. */
+  private long used = 0;
+
+  // statistics, only written with the lock held
+  private volatile long peak = 0;
+  private volatile long waits = 0;
+  private volatile long waitNanos = 0;
+
+  /**
+   * @param limitBytes the budget
+   * @param policy what happens to a request that does not fit
+   * @param maxWaitMillis longest wait for a request with {@link Policy#THROTTLE}
+   */
+  MemoryBudget(long limitBytes, Policy policy, long maxWaitMillis) {
+    this.limitBytes = limitBytes;
+    this.policy = policy;
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+  }
+
+  /**
+   * @param xml the XML of the child as text or DOM, <code>null</code> if the child carries none
+   * @return the estimated heap of the child
+   */
+  static long estimate(Object xml) {
+    if (xml instanceof Node) {
+      return CHILD_OVERHEAD + 8 * SplitMetrics.xmlSize((Node) xml);
+    }
+    return CHILD_OVERHEAD + (xml == null ? 0 : 2L * xml.toString().length());
+  }
+
+  /** @return the estimated heap of a flagged folder */
+  static long estimateDelete(String folder) {
+    return DELETE_OVERHEAD + 2L * folder.length();
+  }
+
+  /** @return whether the bytes were taken, <code>false</code> if they do not fit */
+  boolean tryAcquire(long bytes) {
+    lock.lock();
+    try {
+      if (used > 0 && used + bytes > limitBytes) {
+        return false;
+      }
+      take(bytes);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the bytes, waiting for them to fit with {@link Policy#THROTTLE}.
+   *
+   * @throws AttivioException if the bytes do not fit in time, or at all with {@link Policy#FAIL}
+   */
+  void acquire(long bytes) throws AttivioException {
+    acquire(bytes, 0);
+  }
+
+  /**
+   * Takes the bytes, waiting for them to fit with {@link Policy#THROTTLE}.
+   *
+   * @param held bytes the caller holds itself and cannot release while waiting, a request is let
+   *     through once nothing else is held
+   * @throws AttivioException if the bytes do not fit in time, or at all with {@link Policy#FAIL}
+   */
+  void acquire(long bytes, long held) throws AttivioException {
+    lock.lock();
+    try {
+      if (used > held && used + bytes > limitBytes && policy == Policy.THROTTLE) {
+        long start = System.nanoTime();
+        long remaining = maxWaitNanos;
+        waits++;
+        try {
+          while (used > held && used + bytes > limitBytes && remaining > 0) {
+            remaining = released.awaitNanos(remaining);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new AttivioException(
+              IndexWorkflowError.XML_HANDLING_ERROR, e, "Interrupted waiting for split memory");
+        } finally {
+          waitNanos += System.nanoTime() - start;
+        }
+      }
+      if (used > held && used + bytes > limitBytes) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            "Split memory budget of %d bytes exceeded: %d bytes held, %d more requested",
+            limitBytes,
+            used,
+            bytes);
+      }
+      take(bytes);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Takes the bytes whether they fit or not, for memory held by the caller's own progress. */
+  void force(long bytes) {
+    lock.lock();
+    try {
+      take(bytes);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Must be called with {@link #lock} held. */
+  private void take(long bytes) {
+    used += bytes;
+    if (used > peak) {
+      peak = used;
+    }
+  }
+
+  void release(long bytes) {
+    if (bytes <= 0) {
+      return;
+    }
+    lock.lock();
+    try {
+      used = Math.max(0, used - bytes);
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  Policy getPolicy() {
+    return policy;
+  }
+
+  long getLimitBytes() {
+    return limitBytes;
+  }
+
+  long getUsedBytes() {
+    lock.lock();
+    try {
+      return used;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long getPeakBytes() {
+    return peak;
+  }
+
+  /** @return the number of requests that had to wait */
+  long getWaits() {
+    return waits;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d of %d bytes held, peak %d, %d waits for %.1f ms",
+        getUsedBytes(), limitBytes, peak, waits, waitNanos / 1e6);
+  }
+}
@@ -0,0 +1,215 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import com.attivio.sdk.ingest.IngestDocument;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the children of one parent document on a pool and feeds them in the order they were
+ * submitted.
+ *
+ * <p>Children are fed by the thread that submits them: whenever <code>maxInFlight</code> children
+ * are being built, submitting waits for the oldest one and feeds it. This keeps the output order of
+ * a sequential split and bounds the memory held by finished children waiting for their turn.
+ * Without a pool every child is built and fed right away.
+ *
+ * <p>With a {@link MemoryBudget} every child takes its estimated size from the budget when it is
+ * submitted and gives it back once the sink handed it on. A child that does not fit first feeds the
+ * children this emitter holds and flushes the sink, then waits or fails as the budget says.
+ */
+final class OrderedChildEmitter {
+
+  /** Builds one child document. */
+  interface ChildBuilder {
+    /** @return the child, <code>null</code> to skip it */
+    IngestDocument build() throws AttivioException;
+  }
+
+  /** Receives the children in order. */
+  interface ChildSink {
+    void feed(IngestDocument child) throws AttivioException;
+
+    /**
+     * Feeds a child holding <code>bytes</code> of a budget, released once the child is handed on.
+     */
+    default void feed(IngestDocument child, long bytes, MemoryBudget budget)
+        throws AttivioException {
+      try {
+        feed(child);
+      } finally {
+        budget.release(bytes);
+      }
+    }
+
+    /** Hands on any children held back. */
+    default void flush() throws AttivioException {}
+  }
+
+  private final ExecutorService pool;
+
+  private final int maxInFlight;
+
+  private final ChildSink sink;
+
+  private final MemoryBudget budget;
+
+  private final Deque<Future<IngestDocument>> inFlight = new ArrayDeque<>();
+
+  /** Budget bytes of the children in {@link #inFlight}, in the same order. */
+  private final Deque<Long> inFlightBytes = new ArrayDeque<>();
+
+  /** Budget bytes the caller holds outside this emitter, see {@link #pin(long)}. */
+  private long pinned = 0;
+
+  /**
+   * @param pool builds the children, <code>null</code> to build them on the calling thread
+   * @param maxInFlight most children built ahead of the one being fed
+   * @param sink receives the children
+   */
+  OrderedChildEmitter(ExecutorService pool, int maxInFlight, ChildSink sink) {
+    this(pool, maxInFlight, sink, null);
+  }
+
+  /**
+   * @param pool builds the children, <code>null</code> to build them on the calling thread
+   * @param maxInFlight most children built ahead of the one being fed
+   * @param sink receives the children
+   * @param budget bounds the memory of the children, <code>null</code> for no bound
+   */
+  OrderedChildEmitter(
+      ExecutorService pool, int maxInFlight, ChildSink sink, MemoryBudget budget) {
+    this.pool = pool;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.sink = sink;
+    this.budget = budget;
+  }
+
+  void submit(ChildBuilder child) throws AttivioException {
+    submit(child, 0);
+  }
+
+  /**
+   * @param bytes the estimated size of the child, see {@link MemoryBudget#estimate(Object)}
+   */
+  void submit(ChildBuilder child, long bytes) throws AttivioException {
+    if (budget == null) {
+      bytes = 0;
+    } else if (bytes > 0) {
+      reserve(bytes);
+    }
+    if (pool == null) {
+      IngestDocument doc;
+      try {
+        doc = child.build();
+      } catch (AttivioException | RuntimeException e) {
+        release(bytes);
+        throw e;
+      }
+      feed(doc, bytes);
+      return;
+    }
+    while (inFlight.size() >= maxInFlight) {
+      feedOldest();
+    }
+    try {
+      inFlight.add(pool.submit(child::build));
+    } catch (RuntimeException e) {
+      release(bytes);
+      throw e;
+    }
+    inFlightBytes.add(bytes);
+  }
+
+  /** Takes bytes from the budget, first handing on the children held here if they do not fit. */
+  private void reserve(long bytes) throws AttivioException {
+    while (!budget.tryAcquire(bytes)) {
+      if (!inFlight.isEmpty()) {
+        feedOldest();
+        continue;
+      }
+      sink.flush();
+      budget.acquire(bytes, pinned);
+      return;
+    }
+  }
+
+  /**
+   * Tells the emitter about budget bytes the caller took itself and holds until the end of the
+   * document, so a child waiting for memory does not wait for them.
+   *
+   * @param bytes the bytes taken, negative when they are released
+   */
+  void pin(long bytes) {
+    pinned += bytes;
+  }
+
+  private void feed(IngestDocument doc, long bytes) throws AttivioException {
+    if (doc == null) {
+      release(bytes);
+    } else if (bytes > 0) {
+      sink.feed(doc, bytes, budget);
+    } else {
+      sink.feed(doc);
+    }
+  }
+
+  private void release(long bytes) {
+    if (bytes > 0) {
+      budget.release(bytes);
+    }
+  }
+
+  /** Feeds every child still being built. */
+  void finish() throws AttivioException {
+    while (!inFlight.isEmpty()) {
+      feedOldest();
+    }
+  }
+
+  /** Drops the children still being built, used when the split failed. */
+  void cancel() {
+    for (Future<IngestDocument> child : inFlight) {
+      child.cancel(false);
+    }
+    inFlight.clear();
+    for (Long bytes : inFlightBytes) {
+      release(bytes);
+    }
+    inFlightBytes.clear();
+  }
+
+  private void feedOldest() throws AttivioException {
+    Future<IngestDocument> child = inFlight.poll();
+    long bytes = inFlightBytes.poll();
+    IngestDocument doc;
+    try {
+      doc = child.get();
+    } catch (InterruptedException e) {
+      release(bytes);
+      Thread.currentThread().interrupt();
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, e, "Interrupted while building child documents");
+    } catch (ExecutionException e) {
+      release(bytes);
+      // a fork-join pool may wrap the exception of the builder in a copy made on this thread
+      Throwable cause = e.getCause();
+      for (Throwable t = cause; t != null; t = t.getCause()) {
+        if (t instanceof AttivioException) {
+          throw (AttivioException) t;
+        }
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, cause, "Error building child document");
+    }
+    feed(doc, bytes);
+  }
+}
@@ -0,0 +1,68 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.ContentPointer;
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.ingest.IngestField;
+import com.attivio.sdk.ingest.IngestFieldValue;
+import com.attivio.sdk.schema.FieldNames;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parent fields {@link SplitXmlSetLineage} copies to every child of a parent document, worked
+ * out once per parent instead of once per child.
+ *
+ * <p>Content pointer fields and the excluded fields (the input fields) are never copied, and
+ * neither are the fields every child gets its own value for. Every child gets clones of the
+ * fields, so a later stage modifying a field of one child leaves its siblings and the parent alone.
+ */
+final class ParentFieldTemplate {
+
+  private final List<IngestField> fields = new ArrayList<>();
+
+  /**
+   * @param parent the document being split
+   * @param excluded names of the fields not to copy
+   */
+  ParentFieldTemplate(IngestDocument parent, Collection<String> excluded) {
+    for (IngestField field : parent) {
+      String name = field.getName();
+      if (excluded.contains(name)
+          || FieldNames.XML_DOM.equals(name)
+          || FieldNames.PARENT_ID.equals(name)
+          || isContentPointerField(field)) {
+        continue;
+      }
+      fields.add(field);
+    }
+  }
+
+  /** Sets the inherited fields on a new child document. */
+  void copyTo(IngestDocument child) {
+    for (IngestField field : fields) {
+      child.setField(field.clone());
+    }
+  }
+
+  /** @return the fields every child inherits, not to be modified */
+  List<IngestField> fields() {
+    return Collections.unmodifiableList(fields);
+  }
+
+  /** @return the number of fields every child inherits */
+  int size() {
+    return fields.size();
+  }
+
+  private static boolean isContentPointerField(IngestField field) {
+    for (IngestFieldValue value : field) {
+      if (value.getValue() instanceof ContentPointer) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
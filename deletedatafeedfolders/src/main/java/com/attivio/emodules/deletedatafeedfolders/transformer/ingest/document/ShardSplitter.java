@@ -0,0 +1,319 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.ingest.IngestField;
+import com.attivio.sdk.ingest.IngestFieldValue;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.xml.stream.XMLStreamException;
+import org.xml.sax.SAXException;
+
+/**
+ * Splits every value of the input fields and every file of the shard file field as a shard of its
+ * own on the shard pool, with {@link StreamingSplitter} when streaming and {@link DomSplitter}
+ * otherwise.
+ *
+ * <p>The children come back to the thread that splits the feed through a queue bounded by <code>
+ * maxInFlight</code> and are fed there, the output client is never called by two threads at once.
+ * A queued child keeps its memory budget bytes until it is fed. Every shard ends with a marker on
+ * the queue, so the feeding thread blocks on the queue until all shards are done; once a shard
+ * fails the others stop at their next child, and the children still queued are dropped.
+ */
+final class ShardSplitter {
+
+  private final SplitXmlSetLineage split;
+
+  private final DomSplitter dom;
+
+  /** <code>null</code> unless streaming. */
+  private final StreamingSplitter streaming;
+
+  private final ExecutorService pool;
+
+  private final List<String> input;
+
+  /** <code>null</code> or empty without shard files. */
+  private final String fileField;
+
+  private final int maxInFlight;
+
+  /** <code>null</code> without memory budget. */
+  private final MemoryBudget budget;
+
+  /**
+   * @param split splits the values of the input fields and feeds what is left of the feed
+   * @param dom splits the shard files unless streaming
+   * @param streaming splits the shard files, <code>null</code> unless streaming
+   * @param pool splits the shards
+   * @param input the fields whose values are shards
+   * @param fileField the field holding paths of XML files that are shards, may be <code>null
+   *     </code>
+   * @param maxInFlight most children on their way from the shards to the feeding thread
+   * @param budget bounds the memory of the children, <code>null</code> for no bound
+   */
+  ShardSplitter(
+      SplitXmlSetLineage split,
+      DomSplitter dom,
+      StreamingSplitter streaming,
+      ExecutorService pool,
+      List<String> input,
+      String fileField,
+      int maxInFlight,
+      MemoryBudget budget) {
+    this.split = split;
+    this.dom = dom;
+    this.streaming = streaming;
+    this.pool = pool;
+    this.input = input;
+    this.fileField = fileField;
+    this.maxInFlight = maxInFlight;
+    this.budget = budget;
+  }
+
+  /**
+   * Splits the shards of the feed and feeds their children, then hands the folders the shards
+   * flagged to the feed, which writes them once it is finished.
+   */
+  void split(FeedState feed) throws AttivioException {
+    IngestDocument doc = feed.doc;
+    split.feedParent(feed);
+    List<Object> shards = new ArrayList<>();
+    for (String fieldName : input) {
+      IngestField f = doc.getField(fieldName);
+      if (f != null) {
+        for (IngestFieldValue value : f) {
+          shards.add(value);
+        }
+      }
+    }
+    IngestField files = fileField == null || fileField.isEmpty() ? null : doc.getField(fileField);
+    if (files != null) {
+      for (IngestFieldValue value : files) {
+        shards.add(new File(value.stringValue()));
+      }
+    }
+
+    final BlockingQueue<ShardChild> children = new ArrayBlockingQueue<>(Math.max(1, maxInFlight));
+    final AtomicBoolean stopped = new AtomicBoolean();
+    OrderedChildEmitter.ChildSink toQueue =
+        new OrderedChildEmitter.ChildSink() {
+          @Override
+          public void feed(IngestDocument child) throws AttivioException {
+            feed(child, 0, null);
+          }
+
+          @Override
+          public void feed(IngestDocument child, long bytes, MemoryBudget budget)
+              throws AttivioException {
+            // the bytes go with the child, the feeding thread releases them
+            boolean queued = false;
+            try {
+              if (stopped.get()) {
+                throw new AttivioException(
+                    IndexWorkflowError.XML_HANDLING_ERROR, "Another shard of the feed failed");
+              }
+              children.put(new ShardChild(child, bytes, null));
+              queued = true;
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new AttivioException(
+                  IndexWorkflowError.XML_HANDLING_ERROR, e, "Interrupted splitting a shard");
+            } finally {
+              if (!queued && budget != null) {
+                budget.release(bytes);
+              }
+            }
+          }
+        };
+    List<FeedState> states = new ArrayList<>(shards.size());
+    List<Future<?>> splits = new ArrayList<>(shards.size());
+    Throwable failure = null;
+    try {
+      for (final Object shard : shards) {
+        final FeedState state = feed.shard(new OrderedChildEmitter(null, 1, toQueue, budget));
+        states.add(state);
+        splits.add(
+            pool.submit(
+                () -> {
+                  Throwable error = null;
+                  try {
+                    if (!stopped.get()) {
+                      splitShard(shard, state);
+                    }
+                  } catch (Throwable t) {
+                    error = t;
+                    throw t;
+                  } finally {
+                    endShard(children, error);
+                  }
+                  return null;
+                }));
+      }
+      int running = splits.size();
+      while (running > 0) {
+        ShardChild next = children.poll();
+        if (next == null) {
+          if (budget != null && failure == null) {
+            // the shards may be waiting for the budget bytes of the batch
+            failure = flush(feed);
+            if (failure != null) {
+              stopped.set(true);
+            }
+          }
+          next = children.take();
+        }
+        if (next.child == null) {
+          running--;
+          if (next.error != null && failure == null) {
+            failure = next.error;
+            stopped.set(true);
+          }
+          continue;
+        }
+        if (failure != null) {
+          release(next);
+          continue;
+        }
+        try {
+          feed.batcher.feed(next.child, next.bytes, budget);
+        } catch (AttivioException | RuntimeException e) {
+          // the shards stop, their ends are still awaited
+          failure = e;
+          stopped.set(true);
+        }
+      }
+      if (failure == null) {
+        for (Future<?> split : splits) {
+          split.get();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      stopped.set(true);
+      // shards blocked on the queue are interrupted, the children queued so far are dropped
+      for (Future<?> split : splits) {
+        split.cancel(true);
+      }
+      for (ShardChild next = children.poll(); next != null; next = children.poll()) {
+        release(next);
+      }
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, e, "Interrupted splitting %s", doc.getId());
+    } catch (ExecutionException e) {
+      failure = e.getCause();
+    }
+    if (failure instanceof AttivioException) {
+      throw (AttivioException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, failure, "Error splitting %s", doc.getId());
+    }
+
+    for (FeedState state : states) {
+      for (String folder : state.deletes.folders()) {
+        feed.deletes.add(folder);
+      }
+      feed.deleteBytes += state.deleteBytes;
+      feed.emitter.pin(state.deleteBytes);
+      state.deleteBytes = 0;
+    }
+  }
+
+  /** @return why the batch of the feed could not be fed, <code>null</code> if it was */
+  private static Exception flush(FeedState feed) {
+    try {
+      feed.batcher.flush();
+      return null;
+    } catch (AttivioException | RuntimeException e) {
+      return e;
+    }
+  }
+
+  /** Puts the end marker of a shard on the queue, once the shard is split or failed. */
+  private static void endShard(BlockingQueue<ShardChild> children, Throwable error) {
+    try {
+      children.put(new ShardChild(null, 0, error));
+    } catch (InterruptedException e) {
+      // only when the feeding thread was interrupted itself and stopped reading the queue
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Gives the memory budget bytes of a queued child that will not be fed back. */
+  private void release(ShardChild child) {
+    if (budget != null && child.bytes > 0) {
+      budget.release(child.bytes);
+    }
+  }
+
+  /** Splits one shard on a worker of the shard pool. */
+  private void splitShard(Object shard, FeedState state) throws AttivioException {
+    try {
+      if (shard instanceof File) {
+        splitFile((File) shard, state);
+      } else {
+        split.processValue((IngestFieldValue) shard, state);
+      }
+    } catch (AttivioException | RuntimeException e) {
+      state.emitter.cancel();
+      split.releaseDeletes(state);
+      throw e;
+    }
+  }
+
+  private void splitFile(File file, FeedState feed) throws AttivioException {
+    // the parser reads the encoding from the XML declaration
+    try (InputStream is =
+        new BufferedInputStream(
+            new FileInputStream(file), SplitXmlSetLineage.SPILL_BUFFER_SIZE)) {
+      if (streaming != null) {
+        streaming.split(is, feed);
+      } else {
+        dom.split(split.docBuilder().parse(is).getDocumentElement(), feed);
+      }
+    } catch (XMLStreamException | SAXException | IOException e) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          e,
+          "Error reading XML shard %s of %s",
+          file,
+          feed.doc.getId());
+    }
+  }
+
+  /**
+   * A child on its way from a shard to the feeding thread, or with <code>child</code> <code>null
+   * </code> the end of a shard.
+   */
+  private static final class ShardChild {
+    private final IngestDocument child;
+    /** Memory budget bytes the child holds until it is fed. */
+    private final long bytes;
+    /** Why the shard failed, <code>null</code> if it did not or this is not its end. */
+    private final Throwable error;
+
+    ShardChild(IngestDocument child, long bytes, Throwable error) {
+      this.child = child;
+      this.bytes = bytes;
+      this.error = error;
+    }
+  }
+}
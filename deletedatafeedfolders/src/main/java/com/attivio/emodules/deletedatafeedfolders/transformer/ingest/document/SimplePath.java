@@ -0,0 +1,164 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.namespace.QName;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An absolute XPath made only of child-axis element steps, such as <code>/feed/item</code> or
+ * <code>/m:feed/m:item</code>. Paths of this shape can be matched against a stack of open
+ * elements without an XPath engine, which is what allows feeds to be split while they are being
+ * read, and selected in a DOM by walking down the matching children, see {@link #select}.
+ */
+final class SimplePath {
+
+  private static final Pattern STEP =
+      Pattern.compile("(?:([A-Za-z_][\\w.\\-]*):)?([A-Za-z_][\\w.\\-]*|\\*)");
+
+  private final String expression;
+  private final String[] namespaceUris;
+  private final String[] localNames;
+
+  private SimplePath(String expression, String[] namespaceUris, String[] localNames) {
+    this.expression = expression;
+    this.namespaceUris = namespaceUris;
+    this.localNames = localNames;
+  }
+
+  /**
+   * Parses an XPath expression.
+   *
+   * @param expression the XPath expression
+   * @param namespaces prefix to namespace uri mappings used to resolve prefixed steps
+   * @return the parsed path or <code>null</code> if the expression uses anything other than
+   *     absolute child-axis element steps
+   */
+  static SimplePath parse(String expression, Map<String, String> namespaces) {
+    String expr = expression.trim();
+    if (!expr.startsWith("/") || expr.startsWith("//") || expr.length() == 1) {
+      return null;
+    }
+    String[] steps = expr.substring(1).split("/", -1);
+    String[] uris = new String[steps.length];
+    String[] names = new String[steps.length];
+    for (int i = 0; i < steps.length; i++) {
+      Matcher m = STEP.matcher(steps[i]);
+      if (!m.matches()) {
+        return null;
+      }
+      String prefix = m.group(1);
+      if (prefix != null) {
+        uris[i] = namespaces == null ? null : namespaces.get(prefix);
+        if (uris[i] == null) {
+          return null;
+        }
+      }
+      names[i] = m.group(2);
+    }
+    return new SimplePath(expression, uris, names);
+  }
+
+  /** @return the number of steps in this path */
+  int length() {
+    return localNames.length;
+  }
+
+  /** @return <code>true</code> if the stack of open elements is exactly this path */
+  boolean matches(List<QName> openElements) {
+    if (openElements.size() != localNames.length) {
+      return false;
+    }
+    for (int i = 0; i < localNames.length; i++) {
+      QName name = openElements.get(i);
+      if (!matchesStep(i, name.getNamespaceURI(), name.getLocalPart())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return <code>true</code> if step <code>i</code> accepts the given element name */
+  boolean matchesStep(int i, String namespaceUri, String localName) {
+    if (matchesAnyElement(i)) {
+      return true;
+    }
+    String ns = namespaceUri == null || namespaceUri.isEmpty() ? null : namespaceUri;
+    if (namespaceUris[i] == null ? ns != null : !namespaceUris[i].equals(ns)) {
+      return false;
+    }
+    return "*".equals(localNames[i]) || localNames[i].equals(localName);
+  }
+
+  /**
+   * Selects the elements of this path in the document of <code>context</code>, in document order,
+   * as the XPath does: being absolute, the path starts at the document whatever the context node.
+   * Elements match on namespace uri and local name, or node name for a DOM built without namespace
+   * support.
+   */
+  List<Element> select(Node context) {
+    Node document =
+        context.getNodeType() == Node.DOCUMENT_NODE ? context : context.getOwnerDocument();
+    List<Element> selected = new ArrayList<>();
+    if (document != null) {
+      collect(document, 0, selected);
+    }
+    return selected;
+  }
+
+  private void collect(Node parent, int step, List<Element> selected) {
+    boolean last = step == localNames.length - 1;
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      String localName = child.getLocalName() != null ? child.getLocalName() : child.getNodeName();
+      if (!matchesStep(step, child.getNamespaceURI(), localName)) {
+        continue;
+      }
+      if (last) {
+        selected.add((Element) child);
+      } else {
+        collect(child, step + 1, selected);
+      }
+    }
+  }
+
+  /** An unprefixed <code>*</code> matches elements in any namespace, as in XPath. */
+  private boolean matchesAnyElement(int i) {
+    return namespaceUris[i] == null && "*".equals(localNames[i]);
+  }
+
+  /** @return <code>true</code> if <code>other</code> selects descendants of this path's nodes */
+  boolean isPrefixOf(SimplePath other) {
+    if (other.length() <= length()) {
+      return false;
+    }
+    for (int i = 0; i < localNames.length; i++) {
+      boolean sameNs =
+          matchesAnyElement(i)
+              || other.matchesAnyElement(i)
+              || (namespaceUris[i] == null
+                  ? other.namespaceUris[i] == null
+                  : namespaceUris[i].equals(other.namespaceUris[i]));
+      boolean sameName =
+          "*".equals(localNames[i])
+              || "*".equals(other.localNames[i])
+              || localNames[i].equals(other.localNames[i]);
+      if (!sameNs || !sameName) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
@@ -0,0 +1,300 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Counters and latencies of a {@link SplitXmlSetLineage}, shared by all its ingest threads.
+ *
+ * <p>Everything is recorded with adders and atomics, no locks are taken on the ingest path. The
+ * metrics can be registered with the platform MBean server, see {@link SplitMetricsMBean}, and
+ * {@link #report()} summarizes them for the log.
+ */
+public class SplitMetrics implements SplitMetricsMBean {
+
+  /** Domain of the registered MBeans. */
+  static final String DOMAIN = "com.attivio.emodules.deletedatafeedfolders";
+
+  private final LongAdder documentsIn = new LongAdder();
+
+  private final LongAdder childrenOut = new LongAdder();
+
+  private final LongAdder childrenUnchanged = new LongAdder();
+
+  private final LongAdder batchesOut = new LongAdder();
+
+  private final LongAdder childrenSuppressed = new LongAdder();
+
+  private final LongAdder childrenDuplicate = new LongAdder();
+
+  private final LongAdder deleteEntries = new LongAdder();
+
+  private final LongAccumulator peakChildSize = new LongAccumulator(Math::max, 0);
+
+  private final LatencyHistogram deleteLogFlush = new LatencyHistogram();
+
+  /** Latency per XPath, by name. */
+  private final ConcurrentSkipListMap<String, LatencyHistogram> xpaths =
+      new ConcurrentSkipListMap<>();
+
+  /** Supplies the bytes written to the delete log, <code>null</code> without one. */
+  private volatile DeleteLogWriter deleteLog = null;
+
+  private volatile long deleteLogBytesAtReset = 0;
+
+  private volatile long startNanos = System.nanoTime();
+
+  /** Time and children of the previous {@link #report()}. */
+  private long reportNanos = startNanos;
+
+  private long reportChildren = 0;
+
+  /**
+   * @param name names the XPath in the report, the same name always gets the same histogram
+   * @return the histogram recording the latency of the XPath
+   */
+  LatencyHistogram xpath(String name) {
+    return xpaths.computeIfAbsent(name, k -> new LatencyHistogram());
+  }
+
+  void setDeleteLog(DeleteLogWriter deleteLog) {
+    this.deleteLog = deleteLog;
+    this.deleteLogBytesAtReset = deleteLog == null ? 0 : deleteLog.getBytesWritten();
+  }
+
+  void documentIn() {
+    documentsIn.increment();
+  }
+
+  /** @param size the size of the child XML in characters, see {@link #xmlSize(Node)} */
+  void childOut(long size) {
+    childrenOut.increment();
+    peakChildSize.accumulate(size);
+  }
+
+  void childUnchanged() {
+    childrenUnchanged.increment();
+  }
+
+  void batchOut() {
+    batchesOut.increment();
+  }
+
+  void childSuppressed() {
+    childrenSuppressed.increment();
+  }
+
+  void childDuplicate() {
+    childrenDuplicate.increment();
+  }
+
+  void deleteEntriesWritten(int entries) {
+    deleteEntries.add(entries);
+  }
+
+  void deleteLogFlushed(long nanos) {
+    deleteLogFlush.record(nanos);
+  }
+
+  @Override
+  public long getDocumentsIn() {
+    return documentsIn.sum();
+  }
+
+  @Override
+  public long getChildrenOut() {
+    return childrenOut.sum();
+  }
+
+  @Override
+  public double getChildrenPerSecond() {
+    long nanos = Math.max(1, System.nanoTime() - startNanos);
+    return getChildrenOut() * 1e9 / nanos;
+  }
+
+  @Override
+  public long getChildrenUnchanged() {
+    return childrenUnchanged.sum();
+  }
+
+  @Override
+  public long getChildrenSuppressed() {
+    return childrenSuppressed.sum();
+  }
+
+  @Override
+  public long getChildrenDuplicate() {
+    return childrenDuplicate.sum();
+  }
+
+  @Override
+  public long getBatchesOut() {
+    return batchesOut.sum();
+  }
+
+  @Override
+  public long getDeleteEntriesWritten() {
+    return deleteEntries.sum();
+  }
+
+  @Override
+  public long getDeleteLogBytes() {
+    DeleteLogWriter writer = deleteLog;
+    return writer == null ? 0 : writer.getBytesWritten() - deleteLogBytesAtReset;
+  }
+
+  @Override
+  public long getDeleteLogFlushes() {
+    return deleteLogFlush.getCount();
+  }
+
+  @Override
+  public double getDeleteLogFlushAvgMillis() {
+    long n = deleteLogFlush.getCount();
+    return n == 0 ? 0.0 : deleteLogFlush.getTotalNanos() / 1e6 / n;
+  }
+
+  @Override
+  public double getDeleteLogFlushMaxMillis() {
+    return deleteLogFlush.getMaxNanos() / 1e6;
+  }
+
+  @Override
+  public long getPeakChildSize() {
+    return peakChildSize.get();
+  }
+
+  @Override
+  public String[] getXPathLatencies() {
+    String[] lines = new String[xpaths.size()];
+    int i = 0;
+    for (Map.Entry<String, LatencyHistogram> entry : xpaths.entrySet()) {
+      if (i == lines.length) {
+        break;
+      }
+      lines[i++] = entry.getKey() + ": " + entry.getValue();
+    }
+    return lines;
+  }
+
+  @Override
+  public synchronized void reset() {
+    documentsIn.reset();
+    childrenOut.reset();
+    childrenUnchanged.reset();
+    batchesOut.reset();
+    childrenSuppressed.reset();
+    childrenDuplicate.reset();
+    deleteEntries.reset();
+    peakChildSize.reset();
+    deleteLogFlush.reset();
+    for (LatencyHistogram histogram : xpaths.values()) {
+      histogram.reset();
+    }
+    DeleteLogWriter writer = deleteLog;
+    deleteLogBytesAtReset = writer == null ? 0 : writer.getBytesWritten();
+    startNanos = System.nanoTime();
+    reportNanos = startNanos;
+    reportChildren = 0;
+  }
+
+  /**
+   * Summary for the log. The children per second are those since the previous report, the other
+   * figures are totals.
+   */
+  synchronized String report() {
+    long now = System.nanoTime();
+    long children = getChildrenOut();
+    double rate = (children - reportChildren) * 1e9 / Math.max(1, now - reportNanos);
+    reportNanos = now;
+    reportChildren = children;
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(
+        "%d documents in, %d children out (%.0f/s) in %d batches, %d unchanged, "
+            + "%d suppressed, %d duplicate, peak child size %d, "
+            + "%d delete entries, %d delete log bytes, delete log flush %s",
+        getDocumentsIn(),
+        children,
+        rate,
+        getBatchesOut(),
+        getChildrenUnchanged(),
+        getChildrenSuppressed(),
+        getChildrenDuplicate(),
+        getPeakChildSize(),
+        getDeleteEntriesWritten(),
+        getDeleteLogBytes(),
+        deleteLogFlush));
+    for (String line : getXPathLatencies()) {
+      sb.append("\n  xpath ").append(line);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server.
+   *
+   * @param name the name key of the MBean
+   * @return the name the MBean got
+   */
+  ObjectName register(String name) throws JMException {
+    ObjectName objectName =
+        new ObjectName(DOMAIN + ":type=SplitXmlSetLineage,name=" + ObjectName.quote(name));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.registerMBean(this, objectName);
+    return objectName;
+  }
+
+  static void unregister(ObjectName objectName) throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+  }
+
+  /**
+   * Estimates the length of the XML text of a node without serializing it: names, attributes and
+   * text are counted, escaping and namespace declarations of ancestors are not.
+   */
+  static long xmlSize(Node node) {
+    long size = 0;
+    Node current = node;
+    while (current != null) {
+      switch (current.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          // <name></name>
+          size += 2L * current.getNodeName().length() + 5;
+          NamedNodeMap attributes = current.getAttributes();
+          for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            // name="value" and a space
+            size += attribute.getNodeName().length() + attribute.getNodeValue().length() + 4;
+          }
+          break;
+        case Node.DOCUMENT_NODE:
+          break;
+        default:
+          String value = current.getNodeValue();
+          size += value == null ? 0 : value.length();
+      }
+      // depth first, without recursion
+      Node next = current.getFirstChild();
+      while (next == null && current != node) {
+        next = current.getNextSibling();
+        if (next == null) {
+          current = current.getParentNode();
+        }
+      }
+      current = next;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,49 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+/** JMX view of the {@link SplitMetrics} of a {@link SplitXmlSetLineage}. */
+public interface SplitMetricsMBean {
+
+  /** @return the parent documents processed */
+  long getDocumentsIn();
+
+  /** @return the child documents emitted */
+  long getChildrenOut();
+
+  /** @return the child documents skipped in incremental mode because they did not change */
+  long getChildrenUnchanged();
+
+  /** @return the child documents dropped or diverted because their folder is deleted */
+  long getChildrenSuppressed();
+
+  /** @return the child documents not fed because another child of the feed has the same id */
+  long getChildrenDuplicate();
+
+  /** @return the child documents emitted per second since the start or the last reset */
+  double getChildrenPerSecond();
+
+  /** @return the calls handing children to the output client, one per batch */
+  long getBatchesOut();
+
+  /** @return the folders appended to the delete log */
+  long getDeleteEntriesWritten();
+
+  /** @return the bytes written to the delete log */
+  long getDeleteLogBytes();
+
+  /** @return the number of end of feed delete log flushes */
+  long getDeleteLogFlushes();
+
+  double getDeleteLogFlushAvgMillis();
+
+  double getDeleteLogFlushMaxMillis();
+
+  /** @return the size of the largest child XML, in characters */
+  long getPeakChildSize();
+
+  /** @return the latency of every XPath, one line per expression */
+  String[] getXPathLatencies();
+
+  /** Starts counting from zero. */
+  void reset();
+}
@@ -0,0 +1,164 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.XMLConstants;
+import org.jaxen.JaxenException;
+import org.jaxen.XPath;
+import org.w3c.dom.Element;
+
+/**
+ * One entry of the compiled evaluation plan of {@link SplitXmlSetLineage}. A split rule and a delete
+ * flag rule configured for the same document path share an entry, so the nodes they select are
+ * found once and both the child document and the delete flag are handled in the same visit.
+ *
+ * <p>Paths that are a {@link SimplePath}, and id and delete flag paths that are a plain attribute,
+ * are evaluated directly on the DOM; the compiled XPaths are only used for anything else.
+ */
+final class SplitRule {
+
+  private final String expression;
+  private final XPath documentPath;
+  private final SimplePath simplePath;
+  private XPath idPath;
+  private XPath deleteFlagPath;
+  private String idAttribute;
+  private String deleteFlagAttribute;
+  private LatencyHistogram selectLatency;
+  private LatencyHistogram idLatency;
+  private LatencyHistogram deleteFlagLatency;
+
+  /**
+   * @param expression the XPath to the nodes this rule applies to
+   * @param documentPath the compiled <code>expression</code>
+   * @param simplePath <code>expression</code> as a {@link SimplePath}, <code>null</code> if it is
+   *     not one
+   */
+  SplitRule(String expression, XPath documentPath, SimplePath simplePath) {
+    this.expression = expression;
+    this.documentPath = documentPath;
+    this.simplePath = simplePath;
+  }
+
+  String getExpression() {
+    return expression;
+  }
+
+  XPath getDocumentPath() {
+    return documentPath;
+  }
+
+  SimplePath getSimplePath() {
+    return simplePath;
+  }
+
+  /** @return the elements this rule applies to below <code>context</code>, in document order */
+  List<Element> select(Element context) throws JaxenException {
+    if (simplePath != null) {
+      return simplePath.select(context);
+    }
+    List<?> nodes = documentPath.selectNodes(context);
+    List<Element> elements = new ArrayList<>(nodes.size());
+    for (Object node : nodes) {
+      elements.add((Element) node);
+    }
+    return elements;
+  }
+
+  /** @return the XPath to the child id, <code>null</code> if the nodes are not split off */
+  XPath getIdPath() {
+    return idPath;
+  }
+
+  void setIdPath(XPath idPath) {
+    this.idPath = idPath;
+  }
+
+  /** @return the XPath to the delete flag, <code>null</code> if the nodes carry no delete flag */
+  XPath getDeleteFlagPath() {
+    return deleteFlagPath;
+  }
+
+  void setDeleteFlagPath(XPath deleteFlagPath) {
+    this.deleteFlagPath = deleteFlagPath;
+  }
+
+  /**
+   * @return the attribute the id path selects when it is a plain <code>@name</code>, <code>null
+   *     </code> otherwise
+   */
+  String getIdAttribute() {
+    return idAttribute;
+  }
+
+  void setIdAttribute(String idAttribute) {
+    this.idAttribute = idAttribute;
+  }
+
+  /**
+   * @return the attribute the delete flag path selects when it is a plain <code>@name</code>,
+   *     <code>null</code> otherwise
+   */
+  String getDeleteFlagAttribute() {
+    return deleteFlagAttribute;
+  }
+
+  void setDeleteFlagAttribute(String deleteFlagAttribute) {
+    this.deleteFlagAttribute = deleteFlagAttribute;
+  }
+
+  /**
+   * Records the latency of the XPaths of this rule in <code>metrics</code>, under the rule's
+   * expression. Call once the id and delete flag paths are set.
+   */
+  void instrument(SplitMetrics metrics) {
+    selectLatency = metrics.xpath(expression);
+    idLatency = idPath == null ? null : metrics.xpath(expression + " id " + idPath);
+    deleteFlagLatency =
+        deleteFlagPath == null ? null : metrics.xpath(expression + " deleteFlag " + deleteFlagPath);
+  }
+
+  /** @return the latency of selecting the nodes, <code>null</code> unless instrumented */
+  LatencyHistogram getSelectLatency() {
+    return selectLatency;
+  }
+
+  /** @return the latency of the id path, <code>null</code> unless instrumented */
+  LatencyHistogram getIdLatency() {
+    return idLatency;
+  }
+
+  /** @return the latency of the delete flag path, <code>null</code> unless instrumented */
+  LatencyHistogram getDeleteFlagLatency() {
+    return deleteFlagLatency;
+  }
+
+  /**
+   * @return the attribute name if <code>expression</code> selects an attribute without namespace
+   *     of the context node, such as <code>@id</code>, <code>null</code> otherwise
+   */
+  static String attributeName(String expression) {
+    String s = expression.trim();
+    if (s.length() < 2 || s.charAt(0) != '@') {
+      return null;
+    }
+    if (!Character.isLetter(s.charAt(1)) && s.charAt(1) != '_') {
+      return null;
+    }
+    for (int i = 2; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+        return null;
+      }
+    }
+    String name = s.substring(1);
+    // namespace declarations are no attributes to XPath
+    return XMLConstants.XMLNS_ATTRIBUTE.equals(name) ? null : name;
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
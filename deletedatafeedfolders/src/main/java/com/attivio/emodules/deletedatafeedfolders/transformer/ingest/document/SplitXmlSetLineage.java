@@ -22,33 +22,47 @@ import com.attivio.sdk.server.component.lifecycle.Stoppable;
 import com.attivio.sdk.server.util.AieLogger;
 import com.attivio.util.IOUtils;
 import com.attivio.util.ObjectUtils;
-import com.attivio.emodules.deletedatafeedfolders.connector.DatafeedWithAssetDelete;
+import com.attivio.emodules.deletedatafeedfolders.connector.DeleteLogSegment;
+import com.attivio.emodules.deletedatafeedfolders.connector.LineageDeleteExecutor;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.nio.file.Path; 
-import java.nio.file.Paths;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import org.jaxen.JaxenException;
 import org.jaxen.SimpleNamespaceContext;
 import org.jaxen.XPath;
 import org.jaxen.dom.DOMXPath;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.apache.commons.io.FilenameUtils;
 
 /**
  * Takes XML in a single field and splits it into sub-parts based on XPath expressions.
@@ -76,6 +90,76 @@ import org.apache.commons.io.FilenameUtils;
  * <pre class="code-xml">
  *  &lt;doc id=&quot;1&quot;&gt;&lt;title&gt;doc 1&lt;/title&gt;&lt;/doc&gt;
  * </pre>
+ *
+ * <p>When <code>streaming</code> is enabled, XML held as text or behind a {@link ContentPointer} is
+ * read with StAX instead of being parsed into a DOM first. Each child is emitted as soon as its
+ * element closes, so memory is bounded by the largest child rather than by the whole feed. In this
+ * mode the split and delete flag paths must be simple absolute paths such as <code>/docs/doc
+ * </code>.
+ *
+ * <p>Streaming reads content pointers through a bounded buffer, which is the way to hand over feeds
+ * too large for the heap. Text values longer than <code>spillThreshold</code> characters are
+ * written to a file in <code>spillDirectory</code> and removed from the parent document, so the
+ * text can be collected while the children are split off the file. Since the parent loses its XML,
+ * spilling only happens when the parent document is dropped.
+ *
+ * <p>Split paths that are simple absolute paths, and id and delete flag paths that are a plain
+ * attribute such as <code>@id</code>, are evaluated by walking the DOM directly instead of through
+ * Jaxen, see {@link SplitRule}.
+ *
+ * <p>Only flagged items that are folders are written to the delete log. <code>folderClassification
+ * </code> picks how folders are told from files: by extension, by a pattern over the path or by a
+ * type the feed gives the item, see {@link FolderClassifier}. Children under a folder the same
+ * feed deletes can be dropped or diverted with <code>suppressDeletedChildren</code>.
+ *
+ * <p>Children of a feed with the same id would be indexed once per occurrence. With <code>
+ * duplicateChildIds</code> set to <code>first</code> or <code>last</code> only one of them is fed.
+ * The ids are compared exactly, or as 64-bit fingerprints with <code>duplicateChildIdFingerprints
+ * </code>, see {@link ChildIdSet}.
+ *
+ * <p>The transformer is safe to be called by several ingest threads at once: compiled rules are
+ * only read after {@link #startComponent()}, every thread parses with its own DocumentBuilder and
+ * the delete log accepts concurrent writers, see {@link DeleteLogWriter}. With <code>
+ * deleteLogRotateBytes</code> or <code>deleteLogRotateSeconds</code> the log is rotated at the end
+ * of a feed and the sealed pieces are compacted into indexed segments, see {@link
+ * DeleteLogSegment}.
+ *
+ * <p>With <code>childXmlFormat</code> set to <code>text</code> children carry their XML as a
+ * string instead of a DOM document. When streaming, and every id and delete flag path is a plain
+ * attribute such as <code>@id</code>, no DOM is built at all: the XML of each child is written
+ * straight from the parser events.
+ *
+ * <p><code>fieldMappings</code> fill child fields from XPaths relative to the split node while the
+ * node is at hand, see {@link FieldExtractor}. With <code>omitChildXml</code> the children carry
+ * those fields only, and outside incremental mode their XML is never copied or serialized.
+ *
+ * <p>With a <code>parallelism</code> above 1 the children of a document are built on a shared
+ * fork-join pool while the calling thread keeps walking the XML, and are fed in document order,
+ * see {@link OrderedChildEmitter}. With a <code>feedBatchSize</code> above 1 children are handed to
+ * the workflow in batches, see {@link ChildBatcher}.
+ *
+ * <p>A feed delivered as several shards, values of the input fields or XML files named in <code>
+ * shardFileField</code>, is split <code>shardParallelism</code> shards at a time. Each shard is
+ * read and split on a worker of its own while the ingest thread feeds the children in the order
+ * they come. The folders flagged by all shards are merged and written to the delete log once,
+ * then the deletes run once for the whole feed. Suppression only sees the flags of the child's own
+ * shard, and spilling does not apply to shards.
+ *
+ * <p>A <code>memoryBudgetBytes</code> above 0 bounds the estimated heap all ingest threads hold in
+ * children built but not yet fed and in folders flagged but not yet logged. With <code>
+ * memoryBudgetPolicy</code> <code>throttle</code> a thread over the budget feeds what it holds and
+ * waits up to <code>memoryBudgetWaitMillis</code> for other threads, with <code>fail</code> the
+ * document fails right away, see {@link MemoryBudget}.
+ *
+ * <p>Documents in, children fed, XPath latencies per rule, delete log activity and the peak child
+ * size are recorded in {@link SplitMetrics} and written to the log every <code>
+ * metricsLogIntervalSeconds</code> and when the component stops. With <code>metricsJmx</code> they
+ * are also registered as an MBean.
+ *
+ * <p>In <code>incremental</code> mode the signature of every child is compared with the one of the
+ * previous run, kept in the <code>signatureFile</code>, and only new and changed children are fed,
+ * see {@link ChildSignatureStore}. Children that disappeared from their parent can be deleted.
+ * When the fields the children inherit from their parent change, every child is fed again.
  */
 @ConfigurationOptionInfo(
     description = "Split an XML document based on XPath rules.",
@@ -89,11 +173,53 @@ import org.apache.commons.io.FilenameUtils;
               "validate",
               "throwErrorOnMissingXML",
               "autonumberChildDocIds",
+              "duplicateChildIds",
+              "duplicateChildIdFingerprints",
               "dropParentDocument",
               "namespaces",
               "deleteFlag",
               "deleteFile",
-              "closeLogFileAfterWrite"
+              "closeLogFileAfterWrite",
+              "streaming",
+              "deleteLogBatchSize",
+              "deleteLogBatchDelayMillis",
+              "deleteLogDurability",
+              "deleteLogRotateBytes",
+              "deleteLogRotateSeconds",
+              "shareLineageAcrossFeeds",
+              "lineageCacheMaxNodes",
+              "parallelism",
+              "maxInFlightChildren",
+              "shardParallelism",
+              "shardFileField",
+              "feedBatchSize",
+              "feedBatchMaxBytes",
+              "deleteBatchSize",
+              "deleteZone",
+              "childXmlFormat",
+              "childXmlField",
+              "fieldMappings",
+              "omitChildXml",
+              "metricsEnabled",
+              "metricsJmx",
+              "metricsLogIntervalSeconds",
+              "metricsName",
+              "incremental",
+              "signatureFile",
+              "deleteMissingChildren",
+              "spillThreshold",
+              "spillDirectory",
+              "folderClassification",
+              "fileExtensions",
+              "folderPattern",
+              "folderTypePath",
+              "folderTypes",
+              "folderCacheSize",
+              "suppressDeletedChildren",
+              "suppressedField",
+              "memoryBudgetBytes",
+              "memoryBudgetPolicy",
+              "memoryBudgetWaitMillis"
             }))
 public class SplitXmlSetLineage
     implements MultiOutputDocumentTransformer,
@@ -110,541 +236,2170 @@ public class SplitXmlSetLineage
 
   private boolean autonumberChildDocIds = false;
 
+  /** Which of the children of a feed with the same id are fed. */
+  enum Duplicates {
+    /** All of them. */
+    KEEP,
+    /** The first one. */
+    FIRST,
+    /** The last one, the ids of the whole feed are read before the first child is split off. */
+    LAST
+  }
+
+  private String duplicateChildIds = "keep";
+
+  private boolean duplicateChildIdFingerprints = false;
+
+  private Duplicates duplicates = Duplicates.KEEP;
+
   private boolean dropParentDocument = true;
 
   private boolean throwErrorOnMissingXML = true;
   private List<String> input = ObjectUtils.newList(FieldNames.XML_DOM);
 
-  private DocumentBuilder docBuilder;
+  private DocumentBuilderFactory docBuilderFactory;
+
+  /** DocumentBuilders are not thread safe, every ingest thread gets its own. */
+  private final ThreadLocal<DocumentBuilder> docBuilders = new ThreadLocal<>();
 
   protected ProcessingFeedbackHandler feedbackHandler = null;
 
-  private final Map<XPath, XPath> compiledRules = new HashMap<>();
-  
   private Map<String, String> deleteFlag = new LinkedHashMap<String, String>();
-  
-  private final Map<XPath, XPath> compiledDeleteConf = new HashMap<>();
+
+  /** Split and delete flag rules keyed by document path, see {@link SplitRule}. */
+  private final Map<String, SplitRule> splitPlan = new LinkedHashMap<>();
   
   private final boolean isWindows = IOUtils.getOSFamily().equals(IOUtils.WINDOWS);
   
-  private boolean isOpen = false;
-  
   private boolean closeLogFileAfterWrite = false;
   
   private String deleteFile = null;
   
-  private BufferedWriter fileWriter = null;
-  
-  private String orQuery;
+  private DeleteLogWriter deleteLogWriter = null;
+
+  private int deleteLogBatchSize = 1000;
+
+  private long deleteLogBatchDelayMillis = 1000;
+
+  private String deleteLogDurability = "flush";
+
+  private long deleteLogRotateBytes = 0;
+
+  private long deleteLogRotateSeconds = 0;
+
+  private boolean shareLineageAcrossFeeds = false;
+
+  private int lineageCacheMaxNodes = 1000000;
+
+  /** Lineage prefixes shared by all feeds, <code>null</code> unless shareLineageAcrossFeeds. */
+  private LineageTrie sharedLineage = null;
+
+  private int deleteBatchSize = LineageDeleteExecutor.DEFAULT_MAX_CLAUSES;
+
+  private String deleteZone = LineageDeleteExecutor.DEFAULT_ZONE;
+
+  /** Deletes the folders written to the delete log, <code>null</code> without a delete file. */
+  private LineageDeleteExecutor lineageDeletes = null;
+
+  private boolean streaming = false;
+
+  /** Buffer used to write and read spill files and to read content pointers. */
+  static final int SPILL_BUFFER_SIZE = 64 * 1024;
+
+  private int spillThreshold = 0;
+
+  private String spillDirectory = null;
+
+  private int parallelism = 1;
+
+  private int maxInFlightChildren = 256;
+
+  private int feedBatchSize = 1;
+
+  private long feedBatchMaxBytes = 0;
+
+  /** Builds child documents, <code>null</code> unless parallelism is above 1. */
+  private ForkJoinPool childPool = null;
+
+  private int shardParallelism = 0;
+
+  private String shardFileField = null;
+
+  /** Splits the shards of a feed, <code>null</code> unless shardParallelism is above 0. */
+  private ExecutorService shardPool = null;
+
+  /** Splits XML held as a DOM, and the elements streaming cannot split as text. */
+  private DomSplitter domSplitter = null;
+
+  /** <code>null</code> unless streaming. */
+  private StreamingSplitter streamingSplitter = null;
+
+  /** <code>null</code> unless the feeds are split in shards. */
+  private ShardSplitter shardSplitter = null;
+
+  private String childXmlFormat = "dom";
+
+  private String childXmlField = null;
+
+  private Map<String, String> fieldMappings = new LinkedHashMap<String, String>();
+
+  private boolean omitChildXml = false;
+
+  /** Fills child fields from fieldMappings. */
+  private FieldExtractor fieldExtractor = new FieldExtractor();
+
+  /** Whether children need their XML, for the child itself or its signature. */
+  private boolean childXmlNeeded = true;
+
+  /** Whether children get their XML as text, from childXmlFormat. */
+  private boolean textChildren = false;
+
+  /** Field the child XML goes into, from childXmlField. */
+  private String childField = FieldNames.XML_DOM;
+
+  /** Fields not inherited from the parent: the input fields and the child XML field. */
+  private List<String> notInherited = new ArrayList<>();
   
+  private boolean metricsEnabled = true;
+
+  private boolean metricsJmx = false;
+
+  private long metricsLogIntervalSeconds = 0;
+
+  private String metricsName = null;
+
+  /** Numbers the MBeans of components without a metrics name. */
+  private static final AtomicInteger instances = new AtomicInteger();
+
+  /** <code>null</code> unless metricsEnabled. */
+  private SplitMetrics metrics = null;
+
+  /** Name of the registered metrics MBean, <code>null</code> if not registered. */
+  private ObjectName metricsMBean = null;
+
+  /** Logs the metrics, <code>null</code> unless metricsLogIntervalSeconds is positive. */
+  private ScheduledExecutorService metricsReporter = null;
+
+  private boolean incremental = false;
+
+  private String signatureFile = null;
+
+  private boolean deleteMissingChildren = false;
+
+  /** Child signatures of the previous runs, <code>null</code> unless incremental. */
+  private ChildSignatureStore signatures = null;
+
+  private String folderClassification = "extension";
+
+  private List<String> fileExtensions = new ArrayList<>();
+
+  private String folderPattern = null;
+
+  private String folderTypePath = null;
+
+  private List<String> folderTypes = ObjectUtils.newList("folder");
+
+  private int folderCacheSize = 1024;
+
+  /** Decides which flagged items are folders, see {@link FolderClassifier}. */
+  private FolderClassifier folderClassifier = FolderClassifier.byExtension(null);
+
+  /** <code>null</code> unless folders are classified by type. */
+  private XPath compiledFolderTypePath = null;
+
+  /** The attribute folderTypePath selects, <code>null</code> if it is not a plain attribute. */
+  private String folderTypeAttribute = null;
+
+  /** What happens to children under a folder deleted by the same feed. */
+  enum Suppression {
+    /** Fed like any other child. */
+    OFF,
+    /** Not fed. */
+    DROP,
+    /** Fed with the deleted folder in suppressedField, for the workflow to route. */
+    DIVERT
+  }
+
+  private String suppressDeletedChildren = "off";
+
+  private String suppressedField = "suppressedByFolder";
+
+  private Suppression suppression = Suppression.OFF;
+
+  private long memoryBudgetBytes = 0;
+
+  private String memoryBudgetPolicy = "throttle";
+
+  private long memoryBudgetWaitMillis = 60000;
+
+  /** Shared by all ingest threads, <code>null</code> without memoryBudgetBytes. */
+  private MemoryBudget memoryBudget = null;
+
   private AieLogger log = null;
 
   @Override
   public void startComponent() throws AttivioException {
     SimpleNamespaceContext ns = new SimpleNamespaceContext(getNamespaces());
+    splitPlan.clear();
     for (Map.Entry<String, String> entry : rules.entrySet()) {
+      SplitRule rule = planRule(entry.getKey(), ns);
+      rule.setIdPath(compile(entry.getValue(), ns));
+      rule.setIdAttribute(SplitRule.attributeName(entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : deleteFlag.entrySet()) {
+      SplitRule rule = planRule(entry.getKey(), ns);
+      rule.setDeleteFlagPath(compile(entry.getValue(), ns));
+      rule.setDeleteFlagAttribute(SplitRule.attributeName(entry.getValue()));
+    }
+
+    startFolderClassifier(ns);
+
+    try {
+      suppression = Suppression.valueOf(suppressDeletedChildren.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          e,
+          "Unknown suppression %s, expected off, drop or divert",
+          suppressDeletedChildren);
+    }
+    if (streaming && suppression != Suppression.OFF) {
+      // a single pass would miss the children before the flag of their folder
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          "Suppressing deleted children is not supported when streaming");
+    }
+
+    try {
+      duplicates = Duplicates.valueOf(duplicateChildIds.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          e,
+          "Unknown duplicate child id handling %s, expected keep, first or last",
+          duplicateChildIds);
+    }
+    if (streaming && duplicates == Duplicates.LAST) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          "Keeping the last of repeated child ids is not supported when streaming");
+    }
+
+    if (memoryBudgetBytes > 0) {
+      MemoryBudget.Policy policy;
       try {
-        XPath expDoc = new DOMXPath(entry.getKey());
-        expDoc.setNamespaceContext(ns);
-        XPath expId = new DOMXPath(entry.getValue());
-        expId.setNamespaceContext(ns);
-        compiledRules.put(expDoc, expId);
-      } catch (JaxenException je) {
+        policy = MemoryBudget.Policy.valueOf(memoryBudgetPolicy.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
         throw new AttivioException(
-            IndexWorkflowError.XML_HANDLING_ERROR, je, "Invalid xpath: %s", entry.getKey());
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            e,
+            "Unknown memory budget policy %s, expected throttle or fail",
+            memoryBudgetPolicy);
       }
+      memoryBudget = new MemoryBudget(memoryBudgetBytes, policy, memoryBudgetWaitMillis);
+    } else {
+      memoryBudget = null;
     }
-    for (Map.Entry<String, String> entry : deleteFlag.entrySet()) {
-        try {
-          XPath expDoc = new DOMXPath(entry.getKey());
-          expDoc.setNamespaceContext(ns);
-          XPath expDeleteFlag = new DOMXPath(entry.getValue());
-          expDeleteFlag.setNamespaceContext(ns);
-          compiledDeleteConf.put(expDoc, expDeleteFlag);
-        } catch (JaxenException je) {
-          throw new AttivioException(
-              IndexWorkflowError.XML_HANDLING_ERROR, je, "Invalid xpath: %s", entry.getKey());
+
+    if ("text".equalsIgnoreCase(childXmlFormat)) {
+      textChildren = true;
+    } else if ("dom".equalsIgnoreCase(childXmlFormat)) {
+      textChildren = false;
+    } else {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          "Unknown child XML format %s, expected dom or text",
+          childXmlFormat);
+    }
+    if (childXmlField != null && !childXmlField.isEmpty()) {
+      childField = childXmlField;
+    } else {
+      childField = textChildren ? "xml" : FieldNames.XML_DOM;
+    }
+    notInherited = new ArrayList<>(input);
+    notInherited.add(childField);
+
+    fieldExtractor = new FieldExtractor();
+    for (Map.Entry<String, String> entry : fieldMappings.entrySet()) {
+      fieldExtractor.add(entry.getKey(), entry.getValue(), compile(entry.getValue(), ns));
+      // mapped fields hold the child's own values only
+      notInherited.add(entry.getKey());
+    }
+    childXmlNeeded = !omitChildXml || incremental;
+
+    docBuilderFactory = DocumentBuilderFactory.newInstance();
+    docBuilder();
+
+    sharedLineage = shareLineageAcrossFeeds ? new LineageTrie(true, lineageCacheMaxNodes) : null;
+
+    if (parallelism > 1 && childPool == null) {
+      childPool = new ForkJoinPool(parallelism);
+    }
+    if (shardParallelism > 0 && shardPool == null) {
+      if (duplicates == Duplicates.LAST) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            "Keeping the last of repeated child ids is not supported when splitting shards");
+      }
+      final AtomicInteger shardThreads = new AtomicInteger();
+      shardPool =
+          Executors.newFixedThreadPool(
+              shardParallelism,
+              r -> {
+                Thread t = new Thread(r, "split-shard-" + shardThreads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+    }
+
+    // started again, the log may have been reconfigured
+    closeDeleteLog();
+    if (deleteFile != null) {
+      DeleteLogWriter.Durability durability;
+      try {
+        durability =
+            DeleteLogWriter.Durability.valueOf(deleteLogDurability.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            e,
+            "Unknown delete log durability %s, expected none, flush or fsync",
+            deleteLogDurability);
+      }
+      File logFile = new File(deleteFile);
+      // folders logged before the start were handled by the previous run
+      lineageDeletes =
+          new LineageDeleteExecutor(
+              logFile,
+              deleteBatchSize,
+              deleteZone,
+              DeleteLogSegment.lastSequence(logFile),
+              logFile.length());
+      deleteLogWriter =
+          new DeleteLogWriter(
+              logFile,
+              closeLogFileAfterWrite && isWindows,
+              deleteLogBatchSize,
+              deleteLogBatchDelayMillis,
+              durability,
+              deleteLogRotateBytes,
+              TimeUnit.SECONDS.toMillis(deleteLogRotateSeconds));
+    } else if (!deleteFlag.isEmpty()) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          "A delete file is required when delete flag rules are configured");
+    }
+
+    if (incremental) {
+      if (signatureFile == null || signatureFile.isEmpty()) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            "A signature file is required in incremental mode");
+      }
+      try {
+        signatures = new ChildSignatureStore(new File(signatureFile));
+      } catch (IOException e) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            e,
+            "Error reading signature file %s",
+            signatureFile);
+      }
+    } else {
+      signatures = null;
+    }
+
+    startMetrics();
+
+    domSplitter =
+        new DomSplitter(
+            this,
+            splitPlan.values(),
+            fieldExtractor,
+            childXmlNeeded,
+            textChildren,
+            suppression,
+            duplicates,
+            duplicateChildIdFingerprints,
+            compiledFolderTypePath,
+            folderTypeAttribute);
+    streamingSplitter =
+        streaming
+            ? new StreamingSplitter(
+                this,
+                domSplitter,
+                splitPlan.values(),
+                fieldExtractor,
+                childXmlNeeded,
+                textChildren,
+                compiledFolderTypePath,
+                folderTypeAttribute)
+            : null;
+    shardSplitter =
+        shardPool != null
+            ? new ShardSplitter(
+                this,
+                domSplitter,
+                streamingSplitter,
+                shardPool,
+                input,
+                shardFileField,
+                maxInFlightChildren,
+                memoryBudget)
+            : null;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  private void startFolderClassifier(SimpleNamespaceContext ns) throws AttivioException {
+    FolderClassifier byExtension = FolderClassifier.byExtension(fileExtensions);
+    FolderClassifier classifier;
+    compiledFolderTypePath = null;
+    folderTypeAttribute = null;
+    if ("extension".equalsIgnoreCase(folderClassification)) {
+      classifier = byExtension;
+    } else if ("pattern".equalsIgnoreCase(folderClassification)) {
+      if (folderPattern == null || folderPattern.isEmpty()) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            "A folder pattern is required to classify by pattern");
+      }
+      try {
+        classifier = FolderClassifier.byPattern(Pattern.compile(folderPattern));
+      } catch (PatternSyntaxException e) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR, e, "Invalid folder pattern: %s", folderPattern);
+      }
+    } else if ("type".equalsIgnoreCase(folderClassification)) {
+      if (folderTypePath == null || folderTypePath.isEmpty()) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            "A folder type path is required to classify by type");
+      }
+      compiledFolderTypePath = compile(folderTypePath, ns);
+      folderTypeAttribute = SplitRule.attributeName(folderTypePath);
+      classifier = FolderClassifier.byType(folderTypes, byExtension);
+    } else {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR,
+          "Unknown folder classification %s, expected extension, pattern or type",
+          folderClassification);
+    }
+    folderClassifier = FolderClassifier.cached(classifier, folderCacheSize);
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  private void startMetrics() {
+    // started again, the metrics of the previous start are replaced
+    unregisterMetrics();
+    if (!metricsEnabled) {
+      metrics = null;
+      return;
+    }
+    metrics = new SplitMetrics();
+    for (SplitRule rule : splitPlan.values()) {
+      rule.instrument(metrics);
+    }
+    metrics.setDeleteLog(deleteLogWriter);
+    String name = metricsName;
+    if (name == null || name.isEmpty()) {
+      name = "SplitXmlSetLineage-" + instances.incrementAndGet();
+    }
+    if (metricsJmx) {
+      try {
+        metricsMBean = metrics.register(name);
+      } catch (JMException e) {
+        // the metrics are still logged
+        if (log != null) {
+          log.warn("Could not register split metrics %s: %s", name, e);
+        }
+      }
+    }
+    if (metricsLogIntervalSeconds > 0 && log != null) {
+      final String reporterName = name;
+      metricsReporter =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread t = new Thread(r, "split-metrics-" + reporterName);
+                t.setDaemon(true);
+                return t;
+              });
+      metricsReporter.scheduleAtFixedRate(
+          () -> log.info("Split metrics %s", metrics.report()),
+          metricsLogIntervalSeconds,
+          metricsLogIntervalSeconds,
+          TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  private void stopMetrics() {
+    if (metrics != null && log != null) {
+      log.info("Split metrics %s", metrics.report());
+    }
+    unregisterMetrics();
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Stops the metrics reporter and unregisters the MBean, if any. */
+  private void unregisterMetrics() {
+    if (metricsReporter != null) {
+      metricsReporter.shutdown();
+      metricsReporter = null;
+    }
+    if (metricsMBean != null) {
+      try {
+        SplitMetrics.unregister(metricsMBean);
+      } catch (JMException e) {
+        if (log != null) {
+          log.warn("Could not unregister split metrics %s: %s", metricsMBean, e);
         }
       }
+      metricsMBean = null;
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** @return the metrics, <code>null</code> unless metricsEnabled and started */
+  SplitMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Returns the calling thread's DocumentBuilder. */
+  DocumentBuilder docBuilder() throws AttivioException {
+    DocumentBuilder builder = docBuilders.get();
+    if (builder == null) {
+      try {
+        synchronized (docBuilderFactory) {
+          builder = docBuilderFactory.newDocumentBuilder();
+        }
+      } catch (ParserConfigurationException e) {
+        throw new AttivioException(
+            PlatformError.UNHANDLED_EXCEPTION, e, "Invalid JRE XML configuration");
+      }
+      docBuilders.set(builder);
+    }
+    return builder;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Returns the plan entry for the document path, creating it on first use. */
+  private SplitRule planRule(String expression, SimpleNamespaceContext ns)
+      throws AttivioException {
+    String key = expression.trim();
+    SplitRule rule = splitPlan.get(key);
+    if (rule == null) {
+      rule = new SplitRule(key, compile(key, ns), SimplePath.parse(key, getNamespaces()));
+      splitPlan.put(key, rule);
+    }
+    return rule;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  private XPath compile(String expression, SimpleNamespaceContext ns) throws AttivioException {
+    try {
+      XPath exp = new DOMXPath(expression);
+      exp.setNamespaceContext(ns);
+      return exp;
+    } catch (JaxenException je) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, je, "Invalid xpath: %s", expression);
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Shuts down the thread pools and the metrics and closes the delete log.
+   *
+   * @throws AttivioException if the delete log could not be closed
+   */
+  @Override
+  public void stopComponent() throws AttivioException {
+    if (childPool != null) {
+      childPool.shutdown();
+      childPool = null;
+    }
+    if (shardPool != null) {
+      shardPool.shutdown();
+      shardPool = null;
+    }
+    stopMetrics();
+    if (memoryBudget != null && log != null) {
+      log.info("Split memory budget %s", memoryBudget);
+    }
+    closeDeleteLog();
+  }
 
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Writes out and closes the delete log writer, if any, and drops its delete executor. */
+  private void closeDeleteLog() throws AttivioException {
+    if (deleteLogWriter == null) {
+      return;
+    }
     try {
-      docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-    } catch (ParserConfigurationException e) {
+      deleteLogWriter.close();
+    } catch (IOException ex) {
       throw new AttivioException(
-          PlatformError.UNHANDLED_EXCEPTION, e, "Invalid JRE XML configuration");
+          PlatformError.LIFECYCLE_ERROR, ex, "Exception while closing the delete log writer.");
+    } finally {
+      if (log != null) {
+        log.info("Delete log statistics %s", deleteLogWriter);
+        log.info("Lineage delete statistics %s", lineageDeletes);
+      }
+      deleteLogWriter = null;
+      lineageDeletes = null;
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** {@inheritDoc} */
+  @Override
+  public void process(IngestDocument doc, DocumentOutputClient out) throws AttivioException {
+    if (throwErrorOnMissingXML) {
+      boolean found = false;
+      for (String fieldName : input) {
+        if (doc.getField(fieldName) != null) {
+          found = true;
+          break;
+        }
+      }
+      if (shardPool != null && shardFileField != null && doc.getField(shardFileField) != null) {
+        found = true;
+      }
+
+      if (!found) {
+        if (feedbackHandler != null) {
+          feedbackHandler.warn(
+              doc, null, "No XML found in fields %s of document %s", input, doc.getId());
+        }
+        // don't send this document to the ingest client.  Just return.
+        return;
+      }
+    }
+    if (metrics != null) {
+      metrics.documentIn();
     }
+
+    ChildBatcher batcher =
+        new ChildBatcher(out, feedBatchSize, feedBatchMaxBytes, childField, metrics);
+    ParentFieldTemplate parentFields =
+        copyParentFields ? new ParentFieldTemplate(doc, notInherited) : null;
+    FeedState feed =
+        new FeedState(
+            doc,
+            out,
+            sharedLineage != null
+                ? sharedLineage
+                : new LineageTrie(childPool != null || shardPool != null, 0),
+            parentFields,
+            new OrderedChildEmitter(childPool, maxInFlightChildren, batcher, memoryBudget),
+            batcher,
+            duplicates == Duplicates.FIRST ? new ChildIdSet(duplicateChildIdFingerprints) : null,
+            signatures != null
+                ? signatures.begin(
+                    doc.getId(),
+                    ChildSignatureStore.signature(
+                        parentFields == null
+                            ? Collections.<IngestField>emptyList()
+                            : parentFields.fields()))
+                : null,
+            false);
+    try {
+      if (shardSplitter != null) {
+        shardSplitter.split(feed);
+      } else {
+        processFields(feed);
+      }
+      finishFeed(feed);
+    } catch (AttivioException | RuntimeException e) {
+      feed.emitter.cancel();
+      feed.batcher.discard();
+      releaseDeletes(feed);
+      throw e;
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  private void processFields(FeedState feed) throws AttivioException {
+    IngestDocument doc = feed.doc;
+    for (String fieldName : input) {
+      final IngestField f = doc.getField(fieldName);
+      if (f == null) {
+        continue;
+      }
+      if (mustSpill(f)) {
+        processSpilled(fieldName, f, feed);
+        continue;
+      }
+      for (IngestFieldValue value : f) {
+        processValue(value, feed);
+      }
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /** Feeds what is left of the feed, writes its deletes and runs them. */
+  private void finishFeed(FeedState feed) throws AttivioException {
+    feed.batcher.flush();
+    writeDeletes(feed);
+    flushDeleteLog();
+    if (lineageDeletes != null) {
+      // also picks up the folders other ingest threads logged since the last run
+      lineageDeletes.deleteNew(feed.out);
+    }
+    if (feed.signatures != null) {
+      commitSignatures(feed);
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /** Feeds the parent document ahead of its children, unless it is dropped or this is a shard. */
+  void feedParent(FeedState feed) throws AttivioException {
+    if (!dropParentDocument && !feed.shard) {
+      feed.out.feed(feed.doc);
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Deletes the children that disappeared if configured and stores the signatures of the feed. */
+  private void commitSignatures(FeedState feed) throws AttivioException {
+    if (deleteMissingChildren) {
+      List<String> missing = feed.signatures.missing();
+      if (!missing.isEmpty()) {
+        feed.out.delete(missing.toArray(new String[missing.size()]));
+      }
+    }
+    try {
+      feed.signatures.commit();
+    } catch (IOException e) {
+      throw new AttivioException(
+          IndexWorkflowError.FAILED_WRITE, e, "Error writing signature file %s", signatureFile);
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /** Splits one value of an input field, on a shard worker when the feed is split in shards. */
+  void processValue(IngestFieldValue value, FeedState feed) throws AttivioException {
+    IngestDocument doc = feed.doc;
+    if (streaming && value.getValue() instanceof ContentPointer) {
+      try (InputStream is =
+          new BufferedInputStream(
+              ((ContentPointer) value.getValue()).getStream(), SPILL_BUFFER_SIZE)) {
+        streamingSplitter.split(is, feed);
+      } catch (XMLStreamException | IOException e) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR, e, "Error reading XML of %s", doc.getId());
+      }
+    } else if (streaming && value.getValue() instanceof String) {
+      try {
+        streamingSplitter.split(new StringReader(value.stringValue()), feed);
+      } catch (XMLStreamException e) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR, e, "Error reading XML of %s", doc.getId());
+      }
+    } else {
+      domSplitter.split(value.xmlValue().getDocumentElement(), feed);
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /** @return whether the field holds text above the spill threshold that can be spilled */
+  private boolean mustSpill(IngestField f) {
+    if (spillThreshold <= 0 || !streaming || !dropParentDocument) {
+      return false;
+    }
+    for (IngestFieldValue value : f) {
+      if (value.getValue() instanceof String && value.stringValue().length() > spillThreshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Writes the text values above the spill threshold to temporary files and removes the field from
+   * the parent, so the text can be collected while the children are split off the files.
+   */
+  private void processSpilled(String fieldName, IngestField f, FeedState feed)
+      throws AttivioException {
+    List<Object> values = new ArrayList<>();
+    try {
+      for (IngestFieldValue value : f) {
+        if (value.getValue() instanceof String && value.stringValue().length() > spillThreshold) {
+          values.add(spill(value.stringValue()));
+        } else {
+          values.add(value);
+        }
+      }
+      feed.doc.removeField(fieldName);
+      for (int i = 0; i < values.size(); i++) {
+        // drop the reference as soon as the value is split
+        Object value = values.set(i, null);
+        if (value instanceof File) {
+          processSpillFile((File) value, feed);
+        } else {
+          processValue((IngestFieldValue) value, feed);
+        }
+      }
+    } finally {
+      for (Object value : values) {
+        if (value instanceof File) {
+          ((File) value).delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  private File spill(String xml) throws AttivioException {
+    File dir = spillDirectory == null || spillDirectory.isEmpty() ? null : new File(spillDirectory);
+    File file = null;
+    try {
+      file = File.createTempFile("split-", ".xml", dir);
+      try (Writer writer =
+          new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+        for (int start = 0; start < xml.length(); start += SPILL_BUFFER_SIZE) {
+          writer.write(xml, start, Math.min(SPILL_BUFFER_SIZE, xml.length() - start));
+        }
+      }
+    } catch (IOException e) {
+      if (file != null) {
+        file.delete();
+      }
+      throw new AttivioException(
+          IndexWorkflowError.FAILED_WRITE, e, "Error spilling XML to %s", dir);
+    }
+    if (log != null && log.isDebugEnabled()) {
+      log.debug("Spilled %d characters of XML to %s", xml.length(), file);
+    }
+    return file;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  private void processSpillFile(File file, FeedState feed) throws AttivioException {
+    // read as UTF-8 whatever the XML declaration says, the file was written as UTF-8
+    try (Reader reader =
+        new InputStreamReader(
+            new BufferedInputStream(new FileInputStream(file), SPILL_BUFFER_SIZE),
+            StandardCharsets.UTF_8)) {
+      streamingSplitter.split(reader, feed);
+    } catch (XMLStreamException | IOException e) {
+      throw new AttivioException(
+          IndexWorkflowError.XML_HANDLING_ERROR, e, "Error reading XML of %s", feed.doc.getId());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  void duplicate() {
+    if (metrics != null) {
+      metrics.childDuplicate();
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  String numberChildId(String id, int childId) {
+    if (autonumberChildDocIds) {
+      id = id + "-" + childId;
+    }
+    return id;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  static int nextChildId(Map<SplitRule, Integer> childIds, SplitRule rule) {
+    Integer childId = childIds.get(rule);
+    int next = childId == null ? 0 : childId;
+    childIds.put(rule, next + 1);
+    return next;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Submits a child unless it repeats the id of an earlier child with duplicateChildIds <code>first
+   * </code>, or it lies under a folder the feed deletes: such a child is dropped or diverted,
+   * depending on suppressDeletedChildren. Called on the thread walking the XML.
+   *
+   * @param bytes the estimated size of the child, see {@link #childBytes(Object)}
+   * @param child builds the child, may be <code>null</code> if it is dropped
+   */
+  void submitChild(
+      String id, long bytes, OrderedChildEmitter.ChildBuilder child, FeedState feed)
+      throws AttivioException {
+    if (feed.childIds != null) {
+      boolean first;
+      // shared by the shards of a feed
+      synchronized (feed.childIds) {
+        first = feed.childIds.add(id);
+      }
+      if (!first) {
+        duplicate();
+        return;
+      }
+    }
+    final String folder =
+        suppression == Suppression.OFF ? null : feed.deletes.coveringFolder(id);
+    if (folder == null) {
+      feed.emitter.submit(child, bytes);
+      return;
+    }
+    if (metrics != null) {
+      metrics.childSuppressed();
+    }
+    if (suppression == Suppression.DIVERT) {
+      feed.emitter.submit(
+          () -> {
+            IngestDocument diverted = child.build();
+            if (diverted != null) {
+              diverted.addValue(suppressedField, folder);
+            }
+            return diverted;
+          },
+          bytes);
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** @return the estimated size of a child with this XML, 0 without memory budget */
+  long childBytes(Object xml) {
+    return memoryBudget == null ? 0 : MemoryBudget.estimate(xml);
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** @return the start time for {@link #stopTimer}, 0 without a histogram */
+  static long startTimer(LatencyHistogram histogram) {
+    return histogram == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  static void stopTimer(LatencyHistogram histogram, long start) {
+    if (histogram != null) {
+      histogram.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  void flagFolder(String folder, String type, FeedState feed) throws AttivioException {
+    if (folderClassifier.isFolder(folder, type) && feed.deletes.add(folder)) {
+      if (memoryBudget != null) {
+        long bytes = MemoryBudget.estimateDelete(folder);
+        if (memoryBudget.getPolicy() == MemoryBudget.Policy.THROTTLE) {
+          // the children this thread holds cannot be fed while it waits, so do not wait
+          memoryBudget.force(bytes);
+        } else {
+          memoryBudget.acquire(bytes, feed.deleteBytes);
+        }
+        feed.deleteBytes += bytes;
+        feed.emitter.pin(bytes);
+      }
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Gives the memory of the flagged folders of the feed back to the budget. */
+  void releaseDeletes(FeedState feed) {
+    if (feed.deleteBytes > 0) {
+      memoryBudget.release(feed.deleteBytes);
+      feed.emitter.pin(-feed.deleteBytes);
+      feed.deleteBytes = 0;
+    }
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+
+  /**
+   * Builds the child document for <code>xml</code>, the split off XML as a {@link Document} or as
+   * text. Called from the child pool when parallelism is above 1.
+   *
+   * @param xml the child XML, <code>null</code> if the child does not carry it
+   * @param fields the mapped field values, <code>null</code> without field mappings
+   * @return the child, <code>null</code> if it did not change since the previous incremental run
+   */
+  IngestDocument buildChild(
+      String id, Object xml, FieldExtractor.Values fields, FeedState feed) {
+    if (feed.signatures != null
+        && !feed.signatures.changed(id, ChildSignatureStore.signature(xml))) {
+      if (metrics != null) {
+        metrics.childUnchanged();
+      }
+      return null;
+    }
+    IngestDocument doc = feed.doc;
+    IngestDocument newDoc = new IngestDocument(id);
+    if (feed.parentFields != null) {
+      // Copy all parent fields (except content pointers and input fields) - see PLAT-30347
+      feed.parentFields.copyTo(newDoc);
+    }
+
+    if (!omitChildXml) {
+      newDoc.addValue(childField, xml);
+    }
+    if (fields != null) {
+      fields.addTo(newDoc);
+    }
+    newDoc.addValue(FieldNames.PARENT_ID, doc.getId());
+    for (String val : feed.lineage.lineage(id)) {
+      newDoc.addValue(FieldNames.LINEAGE_IDS, val);
+    }
+    return newDoc;
+  }
+  
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Writes the folders flagged in the feed to the delete log, once the whole feed is split. */
+  private void writeDeletes(FeedState feed) throws AttivioException {
+    if (feed.deletes.isEmpty()) {
+      return;
+    }
+    List<String> folders = feed.deletes.folders();
+    try {
+      for (String folderName : folders) {
+        deleteLogWriter.append(folderName);
+      }
+    } catch (IOException ioe) {
+      throw new AttivioException(IndexWorkflowError.FAILED_WRITE, ioe, "Error writing doc to file");
+    }
+    if (metrics != null) {
+      metrics.deleteEntriesWritten(folders.size());
+    }
+    feed.deletes.clear();
+    releaseDeletes(feed);
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Commits the entries of the feed so the delete step sees all of them. */
+  private void flushDeleteLog() throws AttivioException {
+    if (deleteLogWriter == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      deleteLogWriter.flush();
+    } catch (IOException ioe) {
+      throw new AttivioException(IndexWorkflowError.FAILED_WRITE, ioe, "Error writing doc to file");
+    }
+    if (metrics != null) {
+      metrics.deleteLogFlushed(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * The namespace map is a map of namespace prefix to uri mappings that can be used for xpath
+   * expressions.
+   *
+   * <p>For example a map containing the prefix 'm' mapped to 'http://www.acme.com/myNamespace'
+   * would then allow for xpath expressions of the form <code>/m:my-element/m:my-sub-element</code>.
+   *
+   * <p>See <a href="http://www.w3schools.com/xml/xml_namespaces.asp">
+   * http://www.w3schools.com/xml/xml_namespaces.asp</a> for more information on namespace prefixes.
+   */
+  @ConfigurationOption(
+      displayName = "Namespaces",
+      description = "Prefix to URI namespace map",
+      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP)
+  public Map<String, String> getNamespaces() {
+    return namespaces;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setNamespaces(Map<String, String> namespaces) {
+    this.namespaces = namespaces;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Splitting Rules",
+      labels = {"XPath to Document", "XPath to ID"},
+      description = "Rules for splitting incoming XML document into sub documents.",
+      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP,
+      required = true)
+  public Map<String, String> getRules() {
+    return rules;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setRules(Map<String, String> r) {
+    this.rules = r;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Copy Parent Fields",
+      description =
+          "Copies the parent documents fields to all new child documents (except for ContentPointer fields and input fields).")
+  public boolean isCopyParentFields() {
+    return copyParentFields;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setCopyParentFields(boolean copyParentFields) {
+    this.copyParentFields = copyParentFields;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Number of threads building child documents, shared by all ingest threads. With 1 children are
+   * built by the ingest thread itself.
+   */
+  @ConfigurationOption(
+      displayName = "Parallelism",
+      description = "Number of threads building child documents, 1 to build them sequentially")
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Max In-Flight Children",
+      description =
+          "Most child documents of a parent built ahead of the one being fed when parallelism is above 1")
+  public int getMaxInFlightChildren() {
+    return maxInFlightChildren;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setMaxInFlightChildren(int maxInFlightChildren) {
+    this.maxInFlightChildren = maxInFlightChildren;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Number of shards of a feed split at once, 0 to split the values of the input fields one after
+   * the other. Every shard is split on a thread of its own, its children are built on that thread
+   * whatever the parallelism.
+   */
+  @ConfigurationOption(
+      displayName = "Shard Parallelism",
+      description = "Number of shards of a feed split at once, 0 to split them one by one")
+  public int getShardParallelism() {
+    return shardParallelism;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setShardParallelism(int shardParallelism) {
+    this.shardParallelism = shardParallelism;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /** A field of the parent holding the paths of XML files that are shards of the feed. */
+  @ConfigurationOption(
+      displayName = "Shard File Field",
+      description = "Field holding the paths of XML shard files, split with shardParallelism")
+  public String getShardFileField() {
+    return shardFileField;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setShardFileField(String shardFileField) {
+    this.shardFileField = shardFileField;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Most children handed to the output client in one call, see {@link ChildBatcher}. The children
+   * of a parent are always fed by the end of the parent.
+   */
+  @ConfigurationOption(
+      displayName = "Feed Batch Size",
+      description = "Most child documents fed to the workflow in one call, 1 to feed them one by one")
+  public int getFeedBatchSize() {
+    return feedBatchSize;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setFeedBatchSize(int feedBatchSize) {
+    this.feedBatchSize = feedBatchSize;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /** A batch is fed early once the XML of its children reaches this many estimated bytes. */
+  @ConfigurationOption(
+      displayName = "Feed Batch Max Bytes",
+      description =
+          "Estimated size in bytes of the child XML at which a batch is fed, 0 for no limit")
+  public long getFeedBatchMaxBytes() {
+    return feedBatchMaxBytes;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setFeedBatchMaxBytes(long feedBatchMaxBytes) {
+    this.feedBatchMaxBytes = feedBatchMaxBytes;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * <code>dom</code> gives every child its XML as a DOM document, <code>text</code> as a string,
+   * which takes a fraction of the memory when downstream only needs the text.
+   */
+  @ConfigurationOption(
+      displayName = "Child XML Format",
+      description = "Format of the XML of the child documents: dom or text")
+  public String getChildXmlFormat() {
+    return childXmlFormat;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setChildXmlFormat(String childXmlFormat) {
+    this.childXmlFormat = childXmlFormat;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Child XML Field",
+      description =
+          "Field receiving the XML of the child documents, by default xmldom for dom and xml for text")
+  public String getChildXmlField() {
+    return childXmlField;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setChildXmlField(String childXmlField) {
+    this.childXmlField = childXmlField;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Child fields filled from the split node, by field name, each an XPath relative to the node.
+   * Mapped fields are not copied from the parent. See {@link FieldExtractor}.
+   */
+  @ConfigurationOption(
+      displayName = "Field Mappings",
+      labels = {"Field Name", "XPath relative to the child"},
+      description = "Child fields filled from the XML of the child while it is split off",
+      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP)
+  public Map<String, String> getFieldMappings() {
+    return fieldMappings;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setFieldMappings(Map<String, String> fieldMappings) {
+    this.fieldMappings = fieldMappings;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Whether children are fed without their XML, when the field mappings extract everything the
+   * workflow needs. Unless in incremental mode, which needs the XML for the child signature, no
+   * child XML is copied or serialized at all.
+   */
+  @ConfigurationOption(
+      displayName = "Omit Child XML",
+      description = "Feed children with their mapped fields only, without their XML")
+  public boolean isOmitChildXml() {
+    return omitChildXml;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setOmitChildXml(boolean omitChildXml) {
+    this.omitChildXml = omitChildXml;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Auto Number Child Document Ids",
+      description =
+          "Sets the document id to the value of the xpathToId + an incrementing number for each parent record.")
+  public boolean isAutonumberChildDocIds() {
+    return autonumberChildDocIds;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setAutonumberChildDocIds(boolean autonumberChildDocIds) {
+    this.autonumberChildDocIds = autonumberChildDocIds;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * What happens to children of a feed that have the same id, which only makes sense without
+   * <code>autonumberChildDocIds</code>: <code>keep</code> feeds all of them, <code>first</code> the
+   * first one and <code>last</code> the last one. <code>last</code> reads the ids of the whole feed
+   * before splitting and is not available when streaming. The children left out are counted in the
+   * split metrics.
+   */
+  @ConfigurationOption(
+      displayName = "Duplicate Child Ids",
+      description = "keep, first or last of the children of a feed with the same id")
+  public String getDuplicateChildIds() {
+    return duplicateChildIds;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setDuplicateChildIds(String duplicateChildIds) {
+    this.duplicateChildIds = duplicateChildIds;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  /**
+   * Child ids are compared as 64-bit fingerprints instead of as strings, see {@link ChildIdSet}.
+   * This bounds the memory of long ids in large feeds, at the cost of a rare distinct child being
+   * taken for a repeated one and left out.
+   */
+  @ConfigurationOption(
+      displayName = "Duplicate Child Id Fingerprints",
+      description =
+          "Compare child ids as 64-bit fingerprints to save memory; "
+              + "a rare fingerprint collision leaves a distinct child out")
+  public boolean isDuplicateChildIdFingerprints() {
+    return duplicateChildIdFingerprints;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setDuplicateChildIdFingerprints(boolean duplicateChildIdFingerprints) {
+    this.duplicateChildIdFingerprints = duplicateChildIdFingerprints;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Drop parent Document",
+      description = "Drops the source/parent document after all sub documents have been extracted.")
+  public boolean isDropParentDocument() {
+    return dropParentDocument;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  public void setDropParentDocument(boolean dropParentDocument) {
+    this.dropParentDocument = dropParentDocument;
+  }
+
+  /**
+   * ***************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Throw Error on Missing XML",
+      description = "Throws an exception if document is missing XML content")
+  public boolean isThrowErrorOnMissingXML() {
+    return throwErrorOnMissingXML;
+  }
+
+  /**
+   * ****************************************************************************************************************
+   */
+  public void setThrowErrorOnMissingXML(boolean throwErrorOnMissingXML) {
+    this.throwErrorOnMissingXML = throwErrorOnMissingXML;
+  }
+
+  /**
+   * ****************************************************************************************************************
+   */
+  @Override
+  @ConfigurationOption(
+      displayName = "Input Fields",
+      description = "List of fields containing XML",
+      formEntryClass = ConfigurationOption.STRING_LIST)
+  public List<String> getInput() {
+    return input;
+  }
+
+  /**
+   * ****************************************************************************************************************
+   */
+  @Override
+  public void setInput(List<String> input) {
+    this.input = input;
+  }
+
+  /**
+   * ****************************************************************************************************************
+   */
+  @Override
+  public void setProcessingFeedbackHandler(ProcessingFeedbackHandler feedbackHandler) {
+
+    this.feedbackHandler = feedbackHandler;
+  }
+  
+  /**
+   * ****************************************************************************************************************
+   */
+  @ConfigurationOption(
+	      displayName = "Delete Flag rule",
+	      labels = {"XPath to Delete Flag", "XPath to Delete Attribute"},
+	      description = "Rules for identifying the documents to be deleted.",
+	      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP,
+	      required = true)
+  public Map<String, String> getDeleteFlag() {
+	  return deleteFlag;
+  }
+
+  /**
+   * ****************************************************************************************************************
+   */
+  public void setDeleteFlag(Map<String, String> deleteFlag) {
+	  this.deleteFlag = deleteFlag;
+  }
+  @ConfigurationOption(
+	      displayName = "File with delete paths",
+	      labels = {"Filename"},
+	      description = "File that stores the field paths to delete")
+  /**
+   * ****************************************************************************************************************
+   */
+  public String getDeleteFile() {
+	  return deleteFile;
+  }
+  /**
+   * ****************************************************************************************************************
+   */
+  public void setDeleteFile(String deleteFile) {
+	  this.deleteFile = deleteFile;
+  }
+/**
+   * ****************************************************************************************************************
+   */
+  @Override
+  public void setAieLogger(AieLogger log) {
+	  this.log = log;
+  }
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * On Windows, close the log file after each document write to allow modification of the log file
+   * by another program
+   */
+  @ConfigurationOption(
+		  displayName = "Close log after write",
+		  description = "On Windows, close the log file after each document write.")
+  public boolean isCloseLogFileAfterWrite() {
+	  return closeLogFileAfterWrite;
+  }
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * On Windows, close the log file after each document write to allow modification of the log file
+   * by another program
+   */
+  public void setCloseLogFileAfterWrite(boolean closeLogFileAfterWrite) {
+	  this.closeLogFileAfterWrite = closeLogFileAfterWrite;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Reads XML held as text or behind a content pointer with StAX and emits each child as soon as
+   * its element closes. XML already parsed into a DOM is still split in memory.
+   */
+  @ConfigurationOption(
+      displayName = "Streaming Split",
+      description =
+          "Split XML text and content pointer values while reading them instead of parsing the whole feed first. Split and delete flag paths must be simple absolute paths.")
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Text values longer than this are split from a temporary file instead of from memory, 0 to
+   * never spill. Only used when streaming and dropping the parent document.
+   */
+  @ConfigurationOption(
+      displayName = "Spill Threshold",
+      description =
+          "Characters above which XML text is spilled to a file and streamed from disk, 0 to never spill")
+  public int getSpillThreshold() {
+    return spillThreshold;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setSpillThreshold(int spillThreshold) {
+    this.spillThreshold = spillThreshold;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Spill Directory",
+      description = "Directory for spilled XML, the system temporary directory if not set")
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setSpillDirectory(String spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Number of queued delete log entries that are committed to the file together. */
+  @ConfigurationOption(
+      displayName = "Delete Log Batch Size",
+      description = "Number of delete log entries committed to the file together")
+  public int getDeleteLogBatchSize() {
+    return deleteLogBatchSize;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteLogBatchSize(int deleteLogBatchSize) {
+    this.deleteLogBatchSize = deleteLogBatchSize;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Longest time a delete log entry waits for its batch to fill up. Entries are also committed at
+   * the end of every feed.
+   */
+  @ConfigurationOption(
+      displayName = "Delete Log Batch Delay",
+      description =
+          "Milliseconds after which queued delete log entries are committed even if the batch is not full, 0 to commit by size only")
+  public long getDeleteLogBatchDelayMillis() {
+    return deleteLogBatchDelayMillis;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteLogBatchDelayMillis(long deleteLogBatchDelayMillis) {
+    this.deleteLogBatchDelayMillis = deleteLogBatchDelayMillis;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * How far every delete log commit goes: <code>none</code> keeps entries buffered until the buffer
+   * is full or the feed ends, <code>flush</code> writes every batch to the file and <code>fsync
+   * </code> also forces it to disk.
+   */
+  @ConfigurationOption(
+      displayName = "Delete Log Durability",
+      description = "none, flush or fsync")
+  public String getDeleteLogDurability() {
+    return deleteLogDurability;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteLogDurability(String deleteLogDurability) {
+    this.deleteLogDurability = deleteLogDurability;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Size in bytes at which the delete log is sealed into a numbered piece and started over. Sealed
+   * pieces are compacted into sorted, indexed segments, see {@link DeleteLogSegment}.
+   */
+  @ConfigurationOption(
+      displayName = "Delete Log Rotate Bytes",
+      description = "Size in bytes at which the delete log is rotated, 0 to never rotate by size")
+  public long getDeleteLogRotateBytes() {
+    return deleteLogRotateBytes;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteLogRotateBytes(long deleteLogRotateBytes) {
+    this.deleteLogRotateBytes = deleteLogRotateBytes;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** Age of the oldest delete log entry at which the log is rotated at the end of a feed. */
+  @ConfigurationOption(
+      displayName = "Delete Log Rotate Seconds",
+      description =
+          "Age in seconds of the oldest delete log entry at which the log is rotated, "
+              + "0 to never rotate by age")
+  public long getDeleteLogRotateSeconds() {
+    return deleteLogRotateSeconds;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteLogRotateSeconds(long deleteLogRotateSeconds) {
+    this.deleteLogRotateSeconds = deleteLogRotateSeconds;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * Deleted folders are OR-ed into delete-by-query operations of at most this many folders, see
+   * {@link LineageDeleteExecutor}.
+   */
+  @ConfigurationOption(
+      displayName = "Delete Batch Size",
+      description = "Most folders deleted by a single delete-by-query operation")
+  public int getDeleteBatchSize() {
+    return deleteBatchSize;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteBatchSize(int deleteBatchSize) {
+    this.deleteBatchSize = deleteBatchSize;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "Delete Zone",
+      description = "Zone the documents of deleted folders are deleted from")
+  public String getDeleteZone() {
+    return deleteZone;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setDeleteZone(String deleteZone) {
+    this.deleteZone = deleteZone;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /**
+   * <code>extension</code> treats paths without one of the fileExtensions as folders, <code>
+   * pattern</code> the paths matching folderPattern and <code>type</code> the items whose folderTypePath is one of the
+   * folderTypes; items without a type are then classified by extension.
+   */
+  @ConfigurationOption(
+      displayName = "Folder Classification",
+      description = "How flagged items are recognized as folders: extension, pattern or type")
+  public String getFolderClassification() {
+    return folderClassification;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setFolderClassification(String folderClassification) {
+    this.folderClassification = folderClassification;
+  }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  @ConfigurationOption(
+      displayName = "File Extensions",
+      description =
+          "Extensions that make a flagged item a file when classifying by extension, "
+              + "empty for common document, image and media extensions",
+      formEntryClass = ConfigurationOption.STRING_LIST)
+  public List<String> getFileExtensions() {
+    return fileExtensions;
   }
+
   /**
    * *****************************************************************************************************************
    */
+  public void setFileExtensions(List<String> fileExtensions) {
+    this.fileExtensions = fileExtensions;
+  }
+
   /**
-   * Flushes and closes the writer.
-   *
-   * @throws AttivioException
+   * *****************************************************************************************************************
    */
-  @Override
-  public void stopComponent() throws AttivioException {
-    if (isOpen) {
-      try {
-        if (closeLogFileAfterWrite && isWindows) {
-          openWriter();
-        }
-        closeWriter();
-        isOpen = false;
-      } catch (IOException ex) {
-        throw new AttivioException(
-            PlatformError.LIFECYCLE_ERROR, ex, "Exception while attempting to flush FileWriter.");
-      }
-    }
+  @ConfigurationOption(
+      displayName = "Folder Pattern",
+      description =
+          "Regular expression matching the whole path of folders when classifying by pattern")
+  public String getFolderPattern() {
+    return folderPattern;
   }
 
   /**
    * *****************************************************************************************************************
    */
-  /** {@inheritDoc} */
-  @Override
-  public void process(IngestDocument doc, DocumentOutputClient out) throws AttivioException {
-    if (throwErrorOnMissingXML) {
-      boolean found = false;
-      for (String fieldName : input) {
-        if (doc.getField(fieldName) != null) {
-          found = true;
-          break;
-        }
-      }
-
-      if (!found) {
-        if (feedbackHandler != null) {
-          feedbackHandler.warn(
-              doc, null, "No XML found in fields %s of document %s", input, doc.getId());
-        }
-        // don't send this document to the ingest client.  Just return.
-        return;
-      }
-    }
-
-    for (String fieldName : input) {
-      final IngestField f = doc.getField(fieldName);
-      if (f != null) {
-        for (IngestFieldValue value : f) {
-          processXML(value.xmlValue().getDocumentElement(), doc, out);
-        }
-      }
-    }
+  public void setFolderPattern(String folderPattern) {
+    this.folderPattern = folderPattern;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
+  @ConfigurationOption(
+      displayName = "Folder Type Path",
+      description = "XPath from a flagged item to its type when classifying by type, such as @type")
+  public String getFolderTypePath() {
+    return folderTypePath;
+  }
 
   /**
-   * Splits the incoming document's XML and add all of the parent document field values to the child
-   * documents. Also sets the
-   *
-   * @link PROP_PARENT_DOC_ID for the document.
+   * *****************************************************************************************************************
    */
-  @SuppressWarnings("unchecked")
-  private void processXML(Element elem, IngestDocument doc, DocumentOutputClient out)
-      throws AttivioException {
-
-    if (!this.dropParentDocument) {
-      out.feed(doc);
-    }
-    
-    try {
-    	for (Entry<XPath, XPath> entry : compiledDeleteConf.entrySet()) {
-    		XPath xpathToDoc = entry.getKey();
-    		XPath xpathToDelete = entry.getValue();
-    		List<Element> nodes = xpathToDoc.selectNodes(elem);
-    		for (Element node : nodes) {
-    			Node deleteNode = (Node) xpathToDelete.selectSingleNode(node);
-    			if (deleteNode != null) {
-    				if(isFolderToDelete(node.getAttribute("id"))) {
-    					writeFolderToDelete(node.getAttribute("id"));
-    				}
-    			}
-    		}
-    	}
-    } catch (JaxenException je) {
-    	throw new AttivioException(
-    			IndexWorkflowError.XML_HANDLING_ERROR, je, "Error evaluating xpath expression for delete flag");
-    }
-    
-    try {
-      for (Entry<XPath, XPath> entry : compiledRules.entrySet()) {
-        XPath xpathToDoc = entry.getKey();
-        XPath xpathToId = entry.getValue();
-        List<Element> nodes = xpathToDoc.selectNodes(elem);
-        int childId = 0;
-        for (Element node : nodes) {
-          Node idNode = (Node) xpathToId.selectSingleNode(node);
-          if (idNode == null) {
-            throw new AttivioException(
-                IndexWorkflowError.XML_HANDLING_ERROR,
-                "xpathToId %s not found for document %s",
-                xpathToId,
-                doc.getId());
-          }
-          String id = idNode.getTextContent();
-          if (autonumberChildDocIds) {
-            id = id + "-" + childId++;
-          }
-          IngestDocument newDoc = new IngestDocument(id);
-          if (copyParentFields) {
-            // Copy all parent fields (except content pointers and input fields) - see PLAT-30347
-            for (IngestField srcField : doc) {
-              if (!isInputField(srcField) && !isContentPointerField(srcField)) {
-                // it isn't an input field or a content pointer field
-                newDoc.setField(srcField.clone());
-              }
-            }
-          }
-
-          newDoc.setId(id);
-          //docBuilder.reset();
-          Document d = docBuilder.newDocument();
-          // the following line of code is silly but required
-          d.appendChild(d.importNode(node.cloneNode(true), true));
-          newDoc.removeField(FieldNames.XML_DOM); // overwrite this
-          newDoc.removeField(FieldNames.PARENT_ID); // overwrite this
-          newDoc.addValue(FieldNames.XML_DOM, d);
-          newDoc.addValue(FieldNames.PARENT_ID, doc.getId());
-          Path filePath = Paths.get(id);
-          List<String> sl = generateLineageIDS(filePath);
-          for(String val : sl) {
-        	  newDoc.addValue(FieldNames.LINEAGE_IDS, val);  
-          }
-          out.feed(newDoc);
-        }
-      }
-      deleteFoldersAndChildAssets(deleteFile);
-    } catch (JaxenException je) {
-      throw new AttivioException(
-          IndexWorkflowError.XML_HANDLING_ERROR, je, "Error evaluating xpath expression");
-    }
-    
-    
+  public void setFolderTypePath(String folderTypePath) {
+    this.folderTypePath = folderTypePath;
   }
-  
+
   /**
    * *****************************************************************************************************************
    */
-  private void openWriter() throws IOException {
-	  // TODO: check if file exists
-    FileOutputStream fos = new FileOutputStream(new File(deleteFile), true);
-    fileWriter = new BufferedWriter(new OutputStreamWriter(fos, IOUtils.DEFAULT_ENCODING));
+  @ConfigurationOption(
+      displayName = "Folder Types",
+      description = "Types of folders when classifying by type",
+      formEntryClass = ConfigurationOption.STRING_LIST)
+  public List<String> getFolderTypes() {
+    return folderTypes;
   }
+
   /**
    * *****************************************************************************************************************
    */
-  private void closeWriter() throws IOException {
-    if (fileWriter == null) {
-      return;
-    }
-
-    fileWriter.flush();
-    fileWriter.close();
-    fileWriter = null;
-  }  
+  public void setFolderTypes(List<String> folderTypes) {
+    this.folderTypes = folderTypes;
+  }
 
   /**
    * *****************************************************************************************************************
    */
-  private void writeFolderToDelete(String folderName) throws AttivioException {
-	  try {
-		  if (closeLogFileAfterWrite && isWindows) {
-			  openWriter();
-		  }
-		  fileWriter.write(folderName);
-		  fileWriter.write("\n"); // using \n instead of newline because that is what serializer does.
-		  fileWriter.flush();
-		  if (closeLogFileAfterWrite && isWindows) {
-			  closeWriter();
-		  }
-	  } catch (IOException ioe) {
-		  throw new AttivioException(IndexWorkflowError.FAILED_WRITE, ioe, "Error writing doc to file");
-	  }
+  @ConfigurationOption(
+      displayName = "Folder Cache Size",
+      description = "Number of recent folder decisions remembered, 0 for none")
+  public int getFolderCacheSize() {
+    return folderCacheSize;
   }
+
   /**
    * *****************************************************************************************************************
    */
-  private List<String> generateLineageIDS(Path filePath) {
-	// Creating an iterator 
-      Iterator<Path> elements = filePath.iterator(); 
-      List<String> lineage = new ArrayList<>();
-      StringBuilder sb = new StringBuilder();
-      while (elements.hasNext()) { 
-          String tmp = elements.next().toString();
-          sb.append("/").append(tmp);
-          lineage.add(sb.toString());
-      } 
-      
-	  return lineage;
-	  
+  public void setFolderCacheSize(int folderCacheSize) {
+    this.folderCacheSize = folderCacheSize;
   }
+
   /**
    * *****************************************************************************************************************
    */
-  private boolean isContentPointerField(IngestField field) {
-	  if (field != null) {
-		  for (IngestFieldValue value : field) {
-			  if (value.getValue() instanceof ContentPointer) {
-				  return true;
-			  }
-		  }
-	  }
-	  return false;
+  /**
+   * What happens to a child under a folder the same feed deletes, which would be indexed only to be
+   * deleted right away: <code>off</code> feeds it, <code>drop</code> does not and <code>divert
+   * </code> feeds it with the deleted folder in <code>suppressedField</code>. Every delete flag of
+   * the feed is read before the first child is split off, which is why suppression is not
+   * available when streaming.
+   */
+  @ConfigurationOption(
+      displayName = "Suppress Deleted Children",
+      description = "off, drop or divert children under a folder deleted by the same feed")
+  public String getSuppressDeletedChildren() {
+    return suppressDeletedChildren;
   }
+
   /**
    * *****************************************************************************************************************
-   */  
-  private boolean isFolderToDelete(String s) {
-	  String ext1 = FilenameUtils.getExtension(s);
-	  if(ext1.isEmpty()) {
-		  return true;
-	  }
-	return false;
+   */
+  public void setSuppressDeletedChildren(String suppressDeletedChildren) {
+    this.suppressDeletedChildren = suppressDeletedChildren;
   }
+
   /**
    * *****************************************************************************************************************
    */
-  private boolean isInputField(IngestField field) {
-    if (field == null) {
-      return false;
-    }
-
-    for (String inputName : input) {
-      if (inputName.equals(field.getName())) {
-        return true;
-      }
-    }
-
-    return false;
+  /** The field a diverted child gets the deleted folder in. */
+  @ConfigurationOption(
+      displayName = "Suppressed Field",
+      description = "Field holding the deleted folder of a diverted child")
+  public String getSuppressedField() {
+    return suppressedField;
   }
+
   /**
-   * ***************************************************************************************************************
-   */  
-  private void deleteFoldersAndChildAssets(String path) {
-	DatafeedWithAssetDelete df = new DatafeedWithAssetDelete();
-    try {
-		df.deleteDocsUsingLineageIds(path);
-	} catch (AttivioException e) {
-		// TODO Auto-generated catch block
-		e.printStackTrace();
-	}
+   * *****************************************************************************************************************
+   */
+  public void setSuppressedField(String suppressedField) {
+    this.suppressedField = suppressedField;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
   /**
-   * The namespace map is a map of namespace prefix to uri mappings that can be used for xpath
-   * expressions.
-   *
-   * <p>For example a map containing the prefix 'm' mapped to 'http://www.acme.com/myNamespace'
-   * would then allow for xpath expressions of the form <code>/m:my-element/m:my-sub-element</code>.
-   *
-   * <p>See <a href="http://www.w3schools.com/xml/xml_namespaces.asp">
-   * http://www.w3schools.com/xml/xml_namespaces.asp</a> for more information on namespace prefixes.
+   * Estimated heap in bytes all ingest threads may hold in children built but not yet fed and in
+   * folders flagged but not yet written to the delete log, 0 for no limit. Feed batches count
+   * until they are fed, so the budget should leave room for a full batch per ingest thread.
    */
   @ConfigurationOption(
-      displayName = "Namespaces",
-      description = "Prefix to URI namespace map",
-      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP)
-  public Map<String, String> getNamespaces() {
-    return namespaces;
+      displayName = "Memory Budget Bytes",
+      description = "Estimated heap held by split children and flagged folders, 0 for no limit")
+  public long getMemoryBudgetBytes() {
+    return memoryBudgetBytes;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setNamespaces(Map<String, String> namespaces) {
-    this.namespaces = namespaces;
+  public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+    this.memoryBudgetBytes = memoryBudgetBytes;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
+   */
+  /**
+   * What happens once the memory budget is used up: <code>throttle</code> waits for other ingest
+   * threads to feed their children, <code>fail</code> fails the document.
    */
   @ConfigurationOption(
-      displayName = "Splitting Rules",
-      labels = {"XPath to Document", "XPath to ID"},
-      description = "Rules for splitting incoming XML document into sub documents.",
-      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP,
-      required = true)
-  public Map<String, String> getRules() {
-    return rules;
+      displayName = "Memory Budget Policy",
+      description = "throttle or fail a split over the memory budget")
+  public String getMemoryBudgetPolicy() {
+    return memoryBudgetPolicy;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setRules(Map<String, String> r) {
-    this.rules = r;
+  public void setMemoryBudgetPolicy(String memoryBudgetPolicy) {
+    this.memoryBudgetPolicy = memoryBudgetPolicy;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
+  /** Longest wait for memory when throttling, the document fails after it. */
   @ConfigurationOption(
-      displayName = "Copy Parent Fields",
-      description =
-          "Copies the parent documents fields to all new child documents (except for ContentPointer fields and input fields).")
-  public boolean isCopyParentFields() {
-    return copyParentFields;
+      displayName = "Memory Budget Wait",
+      description = "Milliseconds a throttled split waits for memory before failing")
+  public long getMemoryBudgetWaitMillis() {
+    return memoryBudgetWaitMillis;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setCopyParentFields(boolean copyParentFields) {
-    this.copyParentFields = copyParentFields;
+  public void setMemoryBudgetWaitMillis(long memoryBudgetWaitMillis) {
+    this.memoryBudgetWaitMillis = memoryBudgetWaitMillis;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
+   */
+  /**
+   * Only feeds the children that are new or changed since the previous run. The children of a
+   * parent are compared with those of the previous document with the same id; a change of the
+   * fields they inherit from it changes all of them.
    */
   @ConfigurationOption(
-      displayName = "Auto Number Child Document Ids",
-      description =
-          "Sets the document id to the value of the xpathToId + an incrementing number for each parent record.")
-  public boolean isAutonumberChildDocIds() {
-    return autonumberChildDocIds;
+      displayName = "Incremental",
+      description = "Only feed child documents whose XML changed since the previous run")
+  public boolean isIncremental() {
+    return incremental;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setAutonumberChildDocIds(boolean autonumberChildDocIds) {
-    this.autonumberChildDocIds = autonumberChildDocIds;
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
   @ConfigurationOption(
-      displayName = "Drop parent Document",
-      description = "Drops the source/parent document after all sub documents have been extracted.")
-  public boolean isDropParentDocument() {
-    return dropParentDocument;
+      displayName = "Signature File",
+      description = "File keeping the signatures of the child documents in incremental mode")
+  public String getSignatureFile() {
+    return signatureFile;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setDropParentDocument(boolean dropParentDocument) {
-    this.dropParentDocument = dropParentDocument;
+  public void setSignatureFile(String signatureFile) {
+    this.signatureFile = signatureFile;
   }
 
   /**
-   * ***************************************************************************************************************
+   * *****************************************************************************************************************
    */
   @ConfigurationOption(
-      displayName = "Throw Error on Missing XML",
-      description = "Throws an exception if document is missing XML content")
-  public boolean isThrowErrorOnMissingXML() {
-    return throwErrorOnMissingXML;
+      displayName = "Delete Missing Children",
+      description =
+          "In incremental mode, delete the child documents that are no longer in their parent")
+  public boolean isDeleteMissingChildren() {
+    return deleteMissingChildren;
   }
 
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setThrowErrorOnMissingXML(boolean throwErrorOnMissingXML) {
-    this.throwErrorOnMissingXML = throwErrorOnMissingXML;
+  public void setDeleteMissingChildren(boolean deleteMissingChildren) {
+    this.deleteMissingChildren = deleteMissingChildren;
   }
 
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  @Override
+  /** Records the metrics of {@link SplitMetrics} and logs them. */
   @ConfigurationOption(
-      displayName = "Input Fields",
-      description = "List of fields containing XML",
-      formEntryClass = ConfigurationOption.STRING_LIST)
-  public List<String> getInput() {
-    return input;
+      displayName = "Metrics Enabled",
+      description = "Record split metrics and write them to the log")
+  public boolean isMetricsEnabled() {
+    return metricsEnabled;
   }
 
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  @Override
-  public void setInput(List<String> input) {
-    this.input = input;
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    this.metricsEnabled = metricsEnabled;
   }
 
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  @Override
-  public void setProcessingFeedbackHandler(ProcessingFeedbackHandler feedbackHandler) {
-
-    this.feedbackHandler = feedbackHandler;
-  }
-  
   /**
-   * ****************************************************************************************************************
+   * Registers the split metrics as an MBean with the platform MBean server, under <code>
+   * metricsName</code>. Only used with metricsEnabled.
    */
   @ConfigurationOption(
-	      displayName = "Delete Flag rule",
-	      labels = {"XPath to Delete Flag", "XPath to Delete Attribute"},
-	      description = "Rules for identifying the documents to be deleted.",
-	      formEntryClass = ConfigurationOption.STRING_TO_STRING_MAP,
-	      required = true)
-  public Map<String, String> getDeleteFlag() {
-	  return deleteFlag;
+      displayName = "Metrics JMX",
+      description = "Register the split metrics as an MBean")
+  public boolean isMetricsJmx() {
+    return metricsJmx;
   }
 
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setDeleteFlag(Map<String, String> deleteFlag) {
-	  this.deleteFlag = deleteFlag;
+  public void setMetricsJmx(boolean metricsJmx) {
+    this.metricsJmx = metricsJmx;
   }
+
+  /**
+   * *****************************************************************************************************************
+   */
+  /** The metrics are always logged when the component stops. */
   @ConfigurationOption(
-	      displayName = "File with delete paths",
-	      labels = {"Filename"},
-	      description = "File that stores the field paths to delete")
+      displayName = "Metrics Log Interval",
+      description = "Seconds between writing the split metrics to the log, 0 to only log them on stop")
+  public long getMetricsLogIntervalSeconds() {
+    return metricsLogIntervalSeconds;
+  }
+
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public String getDeleteFile() {
-	  return deleteFile;
+  public void setMetricsLogIntervalSeconds(long metricsLogIntervalSeconds) {
+    this.metricsLogIntervalSeconds = metricsLogIntervalSeconds;
   }
+
   /**
-   * ****************************************************************************************************************
+   * *****************************************************************************************************************
    */
-  public void setDeleteFile(String deleteFile) {
-	  this.deleteFile = deleteFile;
+  /**
+   * Name of the metrics MBean, <code>
+   * com.attivio.emodules.deletedatafeedfolders:type=SplitXmlSetLineage,name=&lt;metricsName&gt;
+   * </code>. Without one the components are numbered.
+   */
+  @ConfigurationOption(
+      displayName = "Metrics Name",
+      description = "Name the split metrics are registered under in JMX")
+  public String getMetricsName() {
+    return metricsName;
   }
-/**
-   * ****************************************************************************************************************
+
+  /**
+   * *****************************************************************************************************************
    */
-  @Override
-  public void setAieLogger(AieLogger log) {
-	  this.log = log;
+  public void setMetricsName(String metricsName) {
+    this.metricsName = metricsName;
   }
+
   /**
    * *****************************************************************************************************************
    */
   /**
-   * On Windows, close the log file after each document write to allow modification of the log file
-   * by another program
+   * Lineage prefixes are always shared by the children of a feed. When this is set they are also
+   * kept and shared across feeds, which pays off when feeds keep updating the same folders.
    */
   @ConfigurationOption(
-		  displayName = "Close log after write",
-		  description = "On Windows, close the log file after each document write.")
-  public boolean isCloseLogFileAfterWrite() {
-	  return closeLogFileAfterWrite;
+      displayName = "Share Lineage Across Feeds",
+      description = "Keep lineage id prefixes in memory and share them across feeds")
+  public boolean isShareLineageAcrossFeeds() {
+    return shareLineageAcrossFeeds;
   }
+
   /**
    * *****************************************************************************************************************
    */
+  public void setShareLineageAcrossFeeds(boolean shareLineageAcrossFeeds) {
+    this.shareLineageAcrossFeeds = shareLineageAcrossFeeds;
+  }
+
   /**
-   * On Windows, close the log file after each document write to allow modification of the log file
-   * by another program
+   * *****************************************************************************************************************
    */
-  public void setCloseLogFileAfterWrite(boolean closeLogFileAfterWrite) {
-	  this.closeLogFileAfterWrite = closeLogFileAfterWrite;
+  @ConfigurationOption(
+      displayName = "Lineage Cache Size",
+      description =
+          "Number of lineage id prefixes kept when sharing them across feeds before the cache is emptied")
+  public int getLineageCacheMaxNodes() {
+    return lineageCacheMaxNodes;
   }
 
-}
\ No newline at end of file
+  /**
+   * *****************************************************************************************************************
+   */
+  public void setLineageCacheMaxNodes(int lineageCacheMaxNodes) {
+    this.lineageCacheMaxNodes = lineageCacheMaxNodes;
+  }
+}
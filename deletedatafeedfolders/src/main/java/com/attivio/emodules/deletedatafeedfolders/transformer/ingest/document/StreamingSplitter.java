@@ -0,0 +1,261 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import com.attivio.sdk.ingest.IngestDocument;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.jaxen.XPath;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Streaming counterpart of {@link DomSplitter}: the XML is read with StAX through {@link
+ * XmlStreamSplitter} and every child is split off and submitted as soon as its element closes,
+ * while the feed is still being read. The split and delete flag paths must be simple absolute
+ * paths that do not nest.
+ *
+ * <p>When the children are text and every id, delete flag, folder type and mapped field is a
+ * plain attribute, the elements are copied as text without building a DOM at all. Otherwise each
+ * matched element is built as a small DOM and read by {@link DomSplitter}.
+ *
+ * <p>Thread safe once built, the shards of a feed split on their own threads.
+ */
+final class StreamingSplitter {
+
+  private final SplitXmlSetLineage split;
+
+  private final DomSplitter dom;
+
+  /** The rules by their simple path. */
+  private final Map<SimplePath, SplitRule> plan = new LinkedHashMap<>();
+
+  private final FieldExtractor fieldExtractor;
+
+  private final boolean childXmlNeeded;
+
+  private final boolean textChildren;
+
+  /** The attribute holding the type of a flagged item, <code>null</code> without one. */
+  private final String folderTypeAttribute;
+
+  /** Whether the elements are copied as text, without DOM. */
+  private final boolean text;
+
+  private final XMLInputFactory xmlInputFactory;
+
+  /**
+   * @param split builds and submits the children
+   * @param dom reads ids and delete flags of the elements built as DOM
+   * @param rules the split plan, in configuration order
+   * @param fieldExtractor maps child values to fields
+   * @param childXmlNeeded whether the children carry their XML or a signature of it
+   * @param textChildren whether the children carry their XML as text rather than as a DOM
+   * @param folderTypePath selects the type of a flagged item, <code>null</code> without type
+   * @param folderTypeAttribute the attribute <code>folderTypePath</code> selects, if plain
+   * @throws AttivioException if a split path is not a simple absolute path or contains another
+   */
+  StreamingSplitter(
+      SplitXmlSetLineage split,
+      DomSplitter dom,
+      Collection<SplitRule> rules,
+      FieldExtractor fieldExtractor,
+      boolean childXmlNeeded,
+      boolean textChildren,
+      XPath folderTypePath,
+      String folderTypeAttribute)
+      throws AttivioException {
+    this.split = split;
+    this.dom = dom;
+    this.fieldExtractor = fieldExtractor;
+    this.childXmlNeeded = childXmlNeeded;
+    this.textChildren = textChildren;
+    this.folderTypeAttribute = folderTypeAttribute;
+    for (SplitRule rule : rules) {
+      if (rule.getSimplePath() == null) {
+        throw new AttivioException(
+            IndexWorkflowError.XML_HANDLING_ERROR,
+            "Streaming split requires a simple absolute path: %s",
+            rule);
+      }
+      plan.put(rule.getSimplePath(), rule);
+    }
+    // a folder type needs the DOM unless it is an attribute
+    boolean attributesOnly =
+        textChildren
+            && (folderTypePath == null || folderTypeAttribute != null)
+            && fieldExtractor.isAttributesOnly();
+    for (SplitRule rule : plan.values()) {
+      if (rule.getIdPath() != null && rule.getIdAttribute() == null
+          || rule.getDeleteFlagPath() != null && rule.getDeleteFlagAttribute() == null) {
+        attributesOnly = false;
+      }
+    }
+    this.text = attributesOnly;
+    for (SimplePath outer : plan.keySet()) {
+      for (SimplePath inner : plan.keySet()) {
+        if (outer.isPrefixOf(inner)) {
+          throw new AttivioException(
+              IndexWorkflowError.XML_HANDLING_ERROR,
+              "Streaming split paths may not be nested: %s contains %s",
+              outer,
+              inner);
+        }
+      }
+    }
+    xmlInputFactory = XMLInputFactory.newInstance();
+    xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  /** Splits the XML read from <code>in</code>, the encoding comes from the XML declaration. */
+  void split(InputStream in, FeedState feed) throws AttivioException, XMLStreamException {
+    split(xmlInputFactory.createXMLStreamReader(in), feed);
+  }
+
+  /** Splits the XML read from <code>in</code>. */
+  void split(Reader in, FeedState feed) throws AttivioException, XMLStreamException {
+    split(xmlInputFactory.createXMLStreamReader(in), feed);
+  }
+
+  /** Splits the XML of <code>reader</code> and closes it, feeding the parent first if kept. */
+  private void split(XMLStreamReader reader, final FeedState feed)
+      throws AttivioException, XMLStreamException {
+    final IngestDocument doc = feed.doc;
+    split.feedParent(feed);
+
+    final Map<SplitRule, Integer> childIds = new HashMap<>();
+    XmlStreamSplitter splitter = new XmlStreamSplitter(plan.keySet());
+    try {
+      if (text) {
+        splitter.splitText(
+            reader,
+            (attributes, xml, matches) -> {
+              for (SimplePath path : matches) {
+                SplitRule rule = plan.get(path);
+                if (rule.getDeleteFlagPath() != null) {
+                  long start = SplitXmlSetLineage.startTimer(rule.getDeleteFlagLatency());
+                  boolean flagged = attributes.containsKey(rule.getDeleteFlagAttribute());
+                  SplitXmlSetLineage.stopTimer(rule.getDeleteFlagLatency(), start);
+                  if (flagged) {
+                    String folder = attributes.get("id");
+                    split.flagFolder(
+                        folder == null ? "" : folder,
+                        folderTypeAttribute == null ? null : attributes.get(folderTypeAttribute),
+                        feed);
+                  }
+                }
+                if (rule.getIdPath() != null) {
+                  long start = SplitXmlSetLineage.startTimer(rule.getIdLatency());
+                  String id = attributes.get(rule.getIdAttribute());
+                  SplitXmlSetLineage.stopTimer(rule.getIdLatency(), start);
+                  if (id == null) {
+                    throw new AttivioException(
+                        IndexWorkflowError.XML_HANDLING_ERROR,
+                        "xpathToId %s not found for document %s",
+                        rule.getIdPath(),
+                        doc.getId());
+                  }
+                  final String childId =
+                      split.numberChildId(id, SplitXmlSetLineage.nextChildId(childIds, rule));
+                  final FieldExtractor.Values fields = fieldExtractor.extract(attributes);
+                  split.submitChild(
+                      childId,
+                      split.childBytes(childXmlNeeded ? xml : null),
+                      () -> split.buildChild(childId, childXmlNeeded ? xml : null, fields, feed),
+                      feed);
+                }
+              }
+            });
+      } else {
+        final DocumentBuilder docBuilder = split.docBuilder();
+        splitter.split(
+            reader,
+            docBuilder::newDocument,
+            (node, matches) -> {
+              List<SplitRule> splits = new ArrayList<>(matches.size());
+              for (SimplePath path : matches) {
+                SplitRule rule = plan.get(path);
+                if (rule.getDeleteFlagPath() != null) {
+                  dom.checkDeleteFlag(node, rule, feed);
+                }
+                if (rule.getIdPath() != null) {
+                  splits.add(rule);
+                }
+              }
+              if (textChildren || !childXmlNeeded) {
+                // ids, fields and text on this thread, the children then share the immutable text
+                FieldExtractor.Values fields =
+                    splits.isEmpty() ? null : fieldExtractor.extract(node);
+                String xml =
+                    splits.isEmpty() || !childXmlNeeded ? null : DomSplitter.serialize(node);
+                for (SplitRule rule : splits) {
+                  final String id =
+                      dom.childId(node, rule, SplitXmlSetLineage.nextChildId(childIds, rule), doc);
+                  split.submitChild(
+                      id,
+                      split.childBytes(xml),
+                      () -> split.buildChild(id, xml, fields, feed),
+                      feed);
+                }
+                return;
+              }
+              // copy before submitting, the element may not be read by two threads at once
+              Element[] elements = new Element[splits.size()];
+              for (int i = 0; i < elements.length; i++) {
+                if (i == 0) {
+                  elements[i] = node;
+                } else {
+                  // another rule already takes the element, give this child its own copy
+                  Document d = docBuilder.newDocument();
+                  elements[i] = (Element) d.appendChild(d.importNode(node, true));
+                }
+              }
+              for (int i = 0; i < elements.length; i++) {
+                final SplitRule rule = splits.get(i);
+                final Element element = elements[i];
+                final int childId = SplitXmlSetLineage.nextChildId(childIds, rule);
+                if (feed.childIds != null) {
+                  // the id is needed here to check it against the earlier ids
+                  final String id = dom.childId(element, rule, childId, doc);
+                  split.submitChild(
+                      id,
+                      split.childBytes(element),
+                      () ->
+                          split.buildChild(
+                              id,
+                              element.getOwnerDocument(),
+                              fieldExtractor.extract(element),
+                              feed),
+                      feed);
+                  continue;
+                }
+                feed.emitter.submit(
+                    () ->
+                        split.buildChild(
+                            dom.childId(element, rule, childId, doc),
+                            element.getOwnerDocument(),
+                            fieldExtractor.extract(element),
+                            feed),
+                    split.childBytes(element));
+              }
+            });
+      }
+    } finally {
+      reader.close();
+    }
+    feed.emitter.finish();
+  }
+}
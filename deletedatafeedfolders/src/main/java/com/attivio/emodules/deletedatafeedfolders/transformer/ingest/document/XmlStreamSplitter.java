@@ -0,0 +1,358 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Reads an XML feed with StAX and hands every element matched by one of the configured {@link
+ * SimplePath}s to a {@link MatchHandler} as soon as the element is closed. Only the matched
+ * element is materialized as DOM, in a document of its own, so memory is bounded by the largest
+ * matched element rather than by the size of the feed.
+ *
+ * <p>{@link #splitText} skips the DOM altogether and hands over the matched element as XML text,
+ * written straight from the StAX events, together with its attributes.
+ */
+final class XmlStreamSplitter {
+
+  /** Receives the matched elements in document order. */
+  interface MatchHandler {
+    /**
+     * @param element the matched element, the document element of its own {@link Document}
+     * @param matches the paths that matched the element
+     */
+    void matched(Element element, List<SimplePath> matches) throws AttivioException;
+  }
+
+  /** Receives the matched elements as text in document order. */
+  interface TextMatchHandler {
+    /**
+     * @param attributes the attributes without namespace of the matched element, by local name
+     * @param xml the matched element, a standalone XML fragment
+     * @param matches the paths that matched the element
+     */
+    void matched(Map<String, String> attributes, String xml, List<SimplePath> matches)
+        throws AttivioException;
+  }
+
+  /** Creates the documents that hold the matched elements. */
+  interface DocumentSupplier {
+    Document newDocument();
+  }
+
+  private final List<SimplePath> paths;
+
+  XmlStreamSplitter(Collection<SimplePath> paths) {
+    this.paths = new ArrayList<>(paths);
+  }
+
+  /**
+   * Reads the remainder of the feed.
+   *
+   * @param reader reader positioned before the document element
+   * @param owner supplies a new, empty document for every matched element
+   * @param handler receives the matched elements
+   */
+  void split(XMLStreamReader reader, DocumentSupplier owner, MatchHandler handler)
+      throws XMLStreamException, AttivioException {
+    List<QName> openElements = new ArrayList<>();
+    List<SimplePath> matches = new ArrayList<>();
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        openElements.add(reader.getName());
+        matches.clear();
+        for (SimplePath path : paths) {
+          if (path.matches(openElements)) {
+            matches.add(path);
+          }
+        }
+        if (!matches.isEmpty()) {
+          Element element = readElement(reader, owner.newDocument());
+          openElements.remove(openElements.size() - 1);
+          handler.matched(element, matches);
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        openElements.remove(openElements.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * Reads the remainder of the feed without building any DOM.
+   *
+   * @param reader reader positioned before the document element
+   * @param handler receives the matched elements
+   */
+  void splitText(XMLStreamReader reader, TextMatchHandler handler)
+      throws XMLStreamException, AttivioException {
+    List<QName> openElements = new ArrayList<>();
+    List<SimplePath> matches = new ArrayList<>();
+    StringBuilder xml = new StringBuilder();
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        openElements.add(reader.getName());
+        matches.clear();
+        for (SimplePath path : paths) {
+          if (path.matches(openElements)) {
+            matches.add(path);
+          }
+        }
+        if (!matches.isEmpty()) {
+          Map<String, String> attributes = new HashMap<>();
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String ns = reader.getAttributeNamespace(i);
+            if (ns == null || ns.isEmpty()) {
+              attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+          }
+          xml.setLength(0);
+          writeElement(reader, xml);
+          openElements.remove(openElements.size() - 1);
+          handler.matched(attributes, xml.toString(), matches);
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        openElements.remove(openElements.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * Writes the element the reader is positioned on, including its subtree, as XML text to <code>
+   * out</code>. Prefixes declared by ancestors outside the element are declared where they are
+   * first used. On return the reader is positioned on the element's end tag.
+   */
+  static void writeElement(XMLStreamReader reader, StringBuilder out) throws XMLStreamException {
+    // prefixes declared within the element, one set per open element
+    Deque<Set<String>> declared = new ArrayDeque<>();
+    int depth = 0;
+    while (true) {
+      switch (reader.getEventType()) {
+        case XMLStreamConstants.START_ELEMENT:
+          Set<String> scope = new HashSet<>();
+          out.append('<').append(qualify(reader.getPrefix(), reader.getLocalName()));
+          for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = nullToEmpty(reader.getNamespacePrefix(i));
+            scope.add(prefix);
+            writeNamespace(prefix, reader.getNamespaceURI(i), out);
+          }
+          declared.push(scope);
+          declareIfNeeded(reader.getPrefix(), reader.getNamespaceURI(), declared, out);
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            if (prefix != null && !prefix.isEmpty()) {
+              declareIfNeeded(prefix, reader.getAttributeNamespace(i), declared, out);
+            }
+            out.append(' ')
+                .append(qualify(prefix, reader.getAttributeLocalName(i)))
+                .append("=\"");
+            escape(reader.getAttributeValue(i), true, out);
+            out.append('"');
+          }
+          out.append('>');
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          out.append("</").append(qualify(reader.getPrefix(), reader.getLocalName())).append('>');
+          declared.pop();
+          if (--depth == 0) {
+            return;
+          }
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          escape(reader.getText(), false, out);
+          break;
+        case XMLStreamConstants.CDATA:
+          out.append("<![CDATA[").append(reader.getText()).append("]]>");
+          break;
+        case XMLStreamConstants.COMMENT:
+          out.append("<!--").append(reader.getText()).append("-->");
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          out.append("<?").append(reader.getPITarget());
+          if (reader.getPIData() != null && !reader.getPIData().isEmpty()) {
+            out.append(' ').append(reader.getPIData());
+          }
+          out.append("?>");
+          break;
+        default:
+          break;
+      }
+      reader.next();
+    }
+  }
+
+  /** Declares a prefix used by the current element unless the written XML already declares it. */
+  private static void declareIfNeeded(
+      String prefix, String uri, Deque<Set<String>> declared, StringBuilder out) {
+    prefix = nullToEmpty(prefix);
+    uri = nullToEmpty(uri);
+    if (XMLConstants.XML_NS_PREFIX.equals(prefix) || (prefix.isEmpty() && uri.isEmpty())) {
+      return;
+    }
+    for (Set<String> scope : declared) {
+      if (scope.contains(prefix)) {
+        return;
+      }
+    }
+    declared.peek().add(prefix);
+    writeNamespace(prefix, uri, out);
+  }
+
+  private static void writeNamespace(String prefix, String uri, StringBuilder out) {
+    out.append(' ').append(XMLConstants.XMLNS_ATTRIBUTE);
+    if (!prefix.isEmpty()) {
+      out.append(':').append(prefix);
+    }
+    out.append("=\"");
+    escape(uri, true, out);
+    out.append('"');
+  }
+
+  private static void escape(String text, boolean attribute, StringBuilder out) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          out.append("&amp;");
+          break;
+        case '<':
+          out.append("&lt;");
+          break;
+        case '>':
+          out.append("&gt;");
+          break;
+        case '"':
+          out.append(attribute ? "&quot;" : "\"");
+          break;
+        case '\n':
+        case '\r':
+        case '\t':
+          if (attribute) {
+            out.append("&#").append((int) c).append(';');
+          } else {
+            out.append(c);
+          }
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+
+  /**
+   * Copies the element the reader is positioned on, including its subtree, into <code>owner
+   * </code>. On return the reader is positioned on the element's end tag.
+   */
+  static Element readElement(XMLStreamReader reader, Document owner) throws XMLStreamException {
+    Node current = owner;
+    int depth = 0;
+    while (true) {
+      switch (reader.getEventType()) {
+        case XMLStreamConstants.START_ELEMENT:
+          Element element = createElement(reader, owner);
+          if (depth == 0) {
+            declarePrefix(element);
+          }
+          current.appendChild(element);
+          current = element;
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          current = current.getParentNode();
+          if (--depth == 0) {
+            return owner.getDocumentElement();
+          }
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          current.appendChild(owner.createTextNode(reader.getText()));
+          break;
+        case XMLStreamConstants.CDATA:
+          current.appendChild(owner.createCDATASection(reader.getText()));
+          break;
+        case XMLStreamConstants.COMMENT:
+          current.appendChild(owner.createComment(reader.getText()));
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          current.appendChild(
+              owner.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+          break;
+        default:
+          break;
+      }
+      reader.next();
+    }
+  }
+
+  private static Element createElement(XMLStreamReader reader, Document owner) {
+    Element element =
+        owner.createElementNS(
+            emptyToNull(reader.getNamespaceURI()),
+            qualify(reader.getPrefix(), reader.getLocalName()));
+    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+      String prefix = reader.getNamespacePrefix(i);
+      element.setAttributeNS(
+          XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+          prefix == null || prefix.isEmpty()
+              ? XMLConstants.XMLNS_ATTRIBUTE
+              : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+          reader.getNamespaceURI(i));
+    }
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      element.setAttributeNS(
+          emptyToNull(reader.getAttributeNamespace(i)),
+          qualify(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+          reader.getAttributeValue(i));
+    }
+    return element;
+  }
+
+  /** The matched element loses its ancestors, so it has to declare the namespace it lives in. */
+  private static void declarePrefix(Element element) {
+    String uri = element.getNamespaceURI();
+    if (uri == null) {
+      return;
+    }
+    String prefix = element.getPrefix();
+    String localName = prefix == null ? XMLConstants.XMLNS_ATTRIBUTE : prefix;
+    if (!element.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, localName)) {
+      element.setAttributeNS(
+          XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+          prefix == null ? localName : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+          uri);
+    }
+  }
+
+  private static String qualify(String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  private static String emptyToNull(String s) {
+    return s == null || s.isEmpty() ? null : s;
+  }
+
+  private static String nullToEmpty(String s) {
+    return s == null ? "" : s;
+  }
+}
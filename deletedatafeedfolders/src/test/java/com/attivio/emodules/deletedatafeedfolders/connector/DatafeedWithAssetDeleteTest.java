@@ -7,10 +7,14 @@ import com.attivio.sdk.ingest.DocumentMode;
 import com.attivio.sdk.ingest.IngestDocument;
 import com.attivio.sdk.scanner.TestScannerRunner;
 import com.attivio.sdk.schema.FieldNames;
+import com.attivio.sdk.test.MockIngestClient;
 import com.attivio.sdk.test.SdkTestUtils;
 import com.attivio.util.FileUtils;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,6 +36,30 @@ public class DatafeedWithAssetDeleteTest {
     doTest(createTestFiles(FILE_COUNT));
   }
 
+  @Test
+  public void testDeleteDocsUsingLineageIds() throws Exception {
+    File log = File.createTempFile("deletePaths", ".txt");
+    try {
+      Files.write(log.toPath(), "/assets/a\n/assets/b\n".getBytes(StandardCharsets.UTF_8));
+      DatafeedWithAssetDelete scanner = new DatafeedWithAssetDelete();
+      MockIngestClient out = new MockIngestClient();
+      Assert.assertEquals(2, scanner.deleteDocsUsingLineageIds(log.getAbsolutePath(), out));
+      // the folders already deleted are not deleted again
+      Assert.assertEquals(0, scanner.deleteDocsUsingLineageIds(log.getAbsolutePath(), out));
+
+      Files.write(
+          log.toPath(), "/assets/c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      Assert.assertEquals(1, scanner.deleteDocsUsingLineageIds(log.getAbsolutePath(), out));
+
+      // nor by a scanner started after a restart
+      scanner = new DatafeedWithAssetDelete();
+      Assert.assertEquals(0, scanner.deleteDocsUsingLineageIds(log.getAbsolutePath(), out));
+    } finally {
+      log.delete();
+      LineageDeleteExecutor.positionFile(log).delete();
+    }
+  }
+
   private void doTest(List<String> fileList) throws Exception {
     List<String> scannerFileList = Arrays.asList(new String[] {dataDir.getAbsolutePath()});
     try {
@@ -0,0 +1,64 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeleteLogSegmentTest {
+
+  @Test
+  public void testCompact() throws Exception {
+    File log = File.createTempFile("deletePaths", ".txt");
+    File sealed = DeleteLogSegment.sealedFile(log, 1);
+    File segment = DeleteLogSegment.segmentFile(log, 1);
+    try {
+      StringBuilder folders = new StringBuilder();
+      for (int i = 999; i >= 0; i--) {
+        folders.append("/assets/f").append(i).append('\n');
+        // below a folder of the piece
+        folders.append("/assets/f").append(i).append("/sub\n");
+      }
+      folders.append("/assets/f0\n\n/assets-other\n");
+      Files.write(sealed.toPath(), folders.toString().getBytes(StandardCharsets.UTF_8));
+
+      Assert.assertEquals(1, DeleteLogCompactor.compactSealed(log));
+      Assert.assertFalse(sealed.exists());
+      Assert.assertEquals(segment, DeleteLogSegment.list(log).get(1L));
+      Assert.assertEquals(1, DeleteLogSegment.lastSequence(log));
+
+      DeleteLogSegment s = DeleteLogSegment.open(segment);
+      Assert.assertEquals(1001, s.size());
+      List<String> paths = new ArrayList<>();
+      try (DeleteLogSegment.Cursor cursor = s.seek(null)) {
+        String path;
+        while ((path = cursor.next()) != null) {
+          paths.add(path);
+        }
+      }
+      Assert.assertEquals(1001, paths.size());
+      Assert.assertEquals("/assets-other", paths.get(0));
+      Assert.assertEquals("/assets/f0", paths.get(1));
+      for (int i = 1; i < paths.size(); i++) {
+        Assert.assertTrue(paths.get(i - 1).compareTo(paths.get(i)) < 0);
+      }
+
+      Assert.assertTrue(s.contains("/assets/f500"));
+      Assert.assertFalse(s.contains("/assets/f500/sub"));
+      Assert.assertTrue(s.covers("/assets/f500/sub"));
+      Assert.assertFalse(s.covers("/assets/g"));
+      try (DeleteLogSegment.Cursor cursor = s.seek("/assets/f998a")) {
+        Assert.assertEquals("/assets/f999", cursor.next());
+        Assert.assertNull(cursor.next());
+      }
+    } finally {
+      sealed.delete();
+      segment.delete();
+      log.delete();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileContentTest {
+
+  private static File write(String text) throws Exception {
+    File file = File.createTempFile("content", ".txt");
+    Files.write(file.toPath(), text.getBytes(Charset.defaultCharset()));
+    return file;
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    File file = write("some\nmore\r\ntext");
+    try {
+      FileContent content = new FileContent(1000);
+      Assert.assertTrue(content.isInline(file));
+      Assert.assertEquals("some\nmore\r\ntext", content.read(file));
+      // the buffer is reused
+      Assert.assertEquals("some\nmore\r\ntext", content.read(file));
+      Assert.assertFalse(new FileContent(5).isInline(file));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testReadLarge() throws Exception {
+    StringBuilder text = new StringBuilder();
+    while (text.length() < 3 * FileContent.BUFFER_SIZE) {
+      text.append("line ").append(text.length()).append('\n');
+    }
+    File file = write(text.toString());
+    try {
+      Assert.assertEquals(text.toString(), new FileContent(Long.MAX_VALUE).read(file));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testSignature() throws Exception {
+    File file = write("some text\nmore text\n");
+    try {
+      FileContent content = new FileContent(1000);
+      content.read(file);
+      byte[] read = content.signature("a.txt", "acme", "A-Team");
+      Assert.assertEquals(16, read.length);
+      Assert.assertArrayEquals(read, content.signature("a.txt", "acme", "A-Team"));
+      Assert.assertFalse(Arrays.equals(read, content.signature("b.txt", "acme", "A-Team")));
+      Assert.assertFalse(Arrays.equals(read, content.signature("a.txt", "acme", null)));
+      Assert.assertFalse(
+          Arrays.equals(content.signature("ab", "c"), content.signature("a", "bc")));
+
+      // streamed or read, the same bytes give the same signature
+      FileContent.MarkerInputStream in = content.open(file, "trigger");
+      try {
+        in.read(new byte[4]);
+      } finally {
+        // the rest is read on close, as many times as the stream is closed
+        in.close();
+        in.close();
+      }
+      Assert.assertArrayEquals(read, content.signature("a.txt", "acme", "A-Team"));
+
+      Files.write(file.toPath(), "some text\nmore text!\n".getBytes(Charset.defaultCharset()));
+      content.read(file);
+      Assert.assertFalse(Arrays.equals(read, content.signature("a.txt", "acme", "A-Team")));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testMarker() throws Exception {
+    StringBuilder text = new StringBuilder();
+    while (text.length() < FileContent.BUFFER_SIZE - 7) {
+      text.append('s');
+    }
+    // straddles the first buffer, after a partial match
+    text.append("some triggesome trigger text and more");
+    File file = write(text.toString());
+    try {
+      ByteArrayOutputStream copy = new ByteArrayOutputStream();
+      FileContent.MarkerInputStream in = new FileContent(0).open(file, "some trigger text");
+      try {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          copy.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+      Assert.assertTrue(in.found());
+      Assert.assertEquals(text.toString(), copy.toString(Charset.defaultCharset().name()));
+
+      InputStream other = new FileContent(0).open(file, "no such text");
+      try {
+        while (other.read() >= 0) {
+          // read it all
+        }
+        Assert.assertFalse(((FileContent.MarkerInputStream) other).found());
+      } finally {
+        other.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.schema.FieldNames;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileDocumentsTest {
+
+  @Test
+  public void testAddContent() throws Exception {
+    File file = File.createTempFile("content", ".txt");
+    try {
+      Files.write(
+          file.toPath(),
+          ("some text\n" + FileDocuments.COMMIT_TRIGGER + "\n").getBytes(Charset.defaultCharset()));
+      FileDocuments files = new FileDocuments(1000);
+      IngestDocument doc = new IngestDocument(file.getAbsolutePath());
+      // small files are sent as text, the publisher is not needed
+      Assert.assertTrue(files.addContent(file, doc, null));
+      Assert.assertEquals(
+          "some text\n" + FileDocuments.COMMIT_TRIGGER + "\n",
+          doc.getFirstValue(FieldNames.TEXT).stringValue());
+
+      byte[] signature = files.signature(file, "acme", "A-Team");
+      Assert.assertEquals(16, signature.length);
+      Assert.assertArrayEquals(signature, files.signature(file, "acme", "A-Team"));
+      Assert.assertFalse(Arrays.equals(signature, files.signature(file, "acme", "B-Team")));
+
+      Files.write(file.toPath(), "some text\n".getBytes(Charset.defaultCharset()));
+      doc = new IngestDocument(file.getAbsolutePath());
+      Assert.assertFalse(files.addContent(file, doc, null));
+      Assert.assertFalse(Arrays.equals(signature, files.signature(file, "acme", "A-Team")));
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.connector;
+
+import com.attivio.sdk.search.query.Query;
+import com.attivio.sdk.test.MockIngestClient;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineageDeleteExecutorTest {
+
+  /** Records the delete queries. */
+  private static class DeleteRecorder extends MockIngestClient {
+    private final List<Query> queries = new ArrayList<Query>();
+
+    @Override
+    public void deleteByQuery(String zone, Query query) {
+      queries.add(query);
+    }
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    File log = File.createTempFile("deletePaths", ".txt");
+    try {
+      StringBuilder folders = new StringBuilder();
+      for (int i = 0; i < 2500; i++) {
+        folders.append("/assets/f").append(i).append('\n');
+      }
+      // duplicates and blank lines cost nothing
+      folders.append("/assets/f0\n\n");
+      Files.write(log.toPath(), folders.toString().getBytes(StandardCharsets.UTF_8));
+
+      LineageDeleteExecutor executor = new LineageDeleteExecutor(log, 1000, "default", 0);
+      DeleteRecorder out = new DeleteRecorder();
+      Assert.assertEquals(2500, executor.deleteNew(out));
+      Assert.assertEquals(3, out.queries.size());
+      Assert.assertEquals(log.length(), executor.getOffset());
+
+      // nothing new
+      Assert.assertEquals(0, executor.deleteNew(out));
+      Assert.assertEquals(3, out.queries.size());
+    } finally {
+      log.delete();
+    }
+  }
+
+  @Test
+  public void testIncremental() throws Exception {
+    File log = File.createTempFile("deletePaths", ".txt");
+    try {
+      Files.write(log.toPath(), "/assets/a\n/assets/b".getBytes(StandardCharsets.UTF_8));
+      LineageDeleteExecutor executor = new LineageDeleteExecutor(log, 1000, "default", 0);
+      DeleteRecorder out = new DeleteRecorder();
+      // the unterminated line is still being written
+      Assert.assertEquals(1, executor.deleteNew(out));
+
+      Files.write(
+          log.toPath(), "\n/assets/c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      Assert.assertEquals(2, executor.deleteNew(out));
+      Assert.assertEquals(2, out.queries.size());
+      Assert.assertEquals(3, executor.getFoldersDeleted());
+    } finally {
+      log.delete();
+    }
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    File log = File.createTempFile("deletePaths", ".txt");
+    File position = LineageDeleteExecutor.positionFile(log);
+    try {
+      Files.write(log.toPath(), "/assets/a\n/assets/b\n".getBytes(StandardCharsets.UTF_8));
+      DeleteRecorder out = new DeleteRecorder();
+      Assert.assertEquals(2, LineageDeleteExecutor.resume(log, 1000, "default").deleteNew(out));
+      Assert.assertTrue(position.exists());
+
+      // a restart goes on where the previous executor stopped
+      Files.write(
+          log.toPath(), "/assets/c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      LineageDeleteExecutor executor = LineageDeleteExecutor.resume(log, 1000, "default");
+      Assert.assertEquals(log.length() - "/assets/c\n".length(), executor.getOffset());
+      Assert.assertEquals(1, executor.deleteNew(out));
+      Assert.assertEquals(2, out.queries.size());
+    } finally {
+      log.delete();
+      position.delete();
+    }
+  }
+
+  @Test
+  public void testSegments() throws Exception {
+    File log = File.createTempFile("deletePaths", ".txt");
+    File sealed = DeleteLogSegment.sealedFile(log, 1);
+    File segment = DeleteLogSegment.segmentFile(log, 2);
+    try {
+      Files.write(log.toPath(), "/assets/a\n".getBytes(StandardCharsets.UTF_8));
+      LineageDeleteExecutor executor = new LineageDeleteExecutor(log, 1000, "default", 0);
+      DeleteRecorder out = new DeleteRecorder();
+      Assert.assertEquals(1, executor.deleteNew(out));
+
+      // rotated twice, the second piece compacted already
+      Files.move(log.toPath(), sealed.toPath());
+      File second = DeleteLogSegment.sealedFile(log, 2);
+      Files.write(second.toPath(), "/assets/b\n/assets/b/c\n".getBytes(StandardCharsets.UTF_8));
+      DeleteLogCompactor.compact(second, segment);
+      Files.write(log.toPath(), "/assets/d\n".getBytes(StandardCharsets.UTF_8));
+
+      // /assets/a is deleted again, /assets/b/c goes with /assets/b
+      Assert.assertEquals(3, executor.deleteNew(out));
+      Assert.assertEquals(2, executor.getSegment());
+      Assert.assertEquals(log.length(), executor.getOffset());
+      Assert.assertEquals(0, executor.deleteNew(out));
+    } finally {
+      sealed.delete();
+      segment.delete();
+      log.delete();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.test.MockIngestClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChildBatcherTest {
+
+  /** Records the size of every batch. */
+  private static class BatchRecorder extends MockIngestClient {
+    private final List<Integer> batches = new ArrayList<Integer>();
+
+    @Override
+    public void feed(IngestDocument... docs) {
+      batches.add(docs.length);
+      super.feed(docs);
+    }
+  }
+
+  private static IngestDocument child(String id, String xml) {
+    IngestDocument doc = new IngestDocument(id);
+    doc.addValue("xml", xml);
+    return doc;
+  }
+
+  @Test
+  public void testCount() throws Exception {
+    BatchRecorder out = new BatchRecorder();
+    SplitMetrics metrics = new SplitMetrics();
+    ChildBatcher batcher = new ChildBatcher(out, 4, 0, "xml", metrics);
+    for (int i = 0; i < 10; i++) {
+      batcher.feed(child("c" + i, "<item/>"));
+    }
+    batcher.flush();
+    // nothing left to flush
+    batcher.flush();
+    Assert.assertEquals(Arrays.asList(4, 4, 2), out.batches);
+    Assert.assertEquals(10, out.getDocumentList().size());
+    Assert.assertEquals("c9", out.getDocumentList().get(9).getId());
+    Assert.assertEquals(3, metrics.getBatchesOut());
+    Assert.assertEquals(10, metrics.getChildrenOut());
+  }
+
+  @Test
+  public void testBytes() throws Exception {
+    BatchRecorder out = new BatchRecorder();
+    ChildBatcher batcher = new ChildBatcher(out, 100, 20, "xml", null);
+    batcher.feed(child("a", "<item>0123</item>"));
+    batcher.feed(child("b", "<item>4567</item>"));
+    batcher.feed(child("c", "<item/>"));
+    batcher.flush();
+    Assert.assertEquals(Arrays.asList(2, 1), out.batches);
+  }
+
+  @Test
+  public void testFailedFeedNotCounted() throws Exception {
+    MockIngestClient out =
+        new MockIngestClient() {
+          @Override
+          public void feed(IngestDocument... docs) {
+            throw new IllegalStateException("workflow down");
+          }
+        };
+    SplitMetrics metrics = new SplitMetrics();
+    ChildBatcher batcher = new ChildBatcher(out, 1, 0, "xml", metrics);
+    try {
+      batcher.feed(child("a", "<item/>"));
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    Assert.assertEquals(0, metrics.getChildrenOut());
+  }
+
+  @Test
+  public void testDiscard() throws Exception {
+    BatchRecorder out = new BatchRecorder();
+    ChildBatcher batcher = new ChildBatcher(out, 100, 0, "xml", null);
+    batcher.feed(child("a", "<item/>"));
+    batcher.discard();
+    batcher.flush();
+    Assert.assertTrue(out.batches.isEmpty());
+  }
+}
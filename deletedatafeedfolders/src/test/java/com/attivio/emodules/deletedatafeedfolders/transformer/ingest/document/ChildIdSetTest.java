@@ -0,0 +1,33 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChildIdSetTest {
+
+  @Test
+  public void testAdd() {
+    for (boolean compact : new boolean[] {false, true}) {
+      ChildIdSet ids = new ChildIdSet(compact);
+      Assert.assertTrue(ids.add("/fragments/videos/strategies/tax-efficient-investing1.doc"));
+      Assert.assertTrue(ids.add("/fragments/videos/strategies/tax-efficient-investing2.doc"));
+      Assert.assertFalse(ids.add("/fragments/videos/strategies/tax-efficient-investing1.doc"));
+      Assert.assertTrue(ids.add(""));
+      Assert.assertFalse(ids.add(""));
+      Assert.assertEquals(3, ids.size());
+    }
+  }
+
+  @Test
+  public void testGrow() {
+    ChildIdSet ids = new ChildIdSet(true, 4);
+    for (int i = 0; i < 100000; i++) {
+      Assert.assertTrue(ids.add("/assets/docs/" + i + ".pdf"));
+    }
+    for (int i = 0; i < 100000; i += 997) {
+      Assert.assertFalse(ids.add("/assets/docs/" + i + ".pdf"));
+    }
+    Assert.assertEquals(100000, ids.size());
+  }
+}
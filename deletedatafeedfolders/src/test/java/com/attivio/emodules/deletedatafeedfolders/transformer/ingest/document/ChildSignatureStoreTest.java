@@ -0,0 +1,148 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.IngestField;
+import com.attivio.util.XMLUtils;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChildSignatureStoreTest {
+
+  private static final byte[] NO_FIELDS = new byte[0];
+
+  @Test
+  public void testSignature() throws Exception {
+    byte[] a = ChildSignatureStore.signature(XMLUtils.parseAsW3c("<doc a='1' b='2'>x</doc>"));
+    // attribute order and comments do not matter
+    byte[] b =
+        ChildSignatureStore.signature(XMLUtils.parseAsW3c("<doc b='2' a='1'>x<!-- c --></doc>"));
+    byte[] c = ChildSignatureStore.signature(XMLUtils.parseAsW3c("<doc a='1' b='2'>y</doc>"));
+    Assert.assertArrayEquals(a, b);
+    Assert.assertFalse(Arrays.equals(a, c));
+    Assert.assertArrayEquals(
+        ChildSignatureStore.signature("<doc/>"), ChildSignatureStore.signature("<doc/>"));
+  }
+
+  @Test
+  public void testPersistence() throws Exception {
+    File file = File.createTempFile("signatures", ".bin");
+    file.delete();
+    try {
+      ChildSignatureStore store = new ChildSignatureStore(file);
+      ChildSignatureStore.Feed feed = store.begin("parent", NO_FIELDS);
+      Assert.assertTrue(feed.changed("a", ChildSignatureStore.signature("<a/>")));
+      Assert.assertTrue(feed.changed("b", ChildSignatureStore.signature("<b/>")));
+      feed.commit();
+      Assert.assertTrue(file.exists());
+
+      // a later run, reading the file
+      store = new ChildSignatureStore(file);
+      Assert.assertEquals(2, store.size());
+      feed = store.begin("parent", NO_FIELDS);
+      Assert.assertFalse(feed.changed("a", ChildSignatureStore.signature("<a/>")));
+      Assert.assertTrue(feed.changed("c", ChildSignatureStore.signature("<c/>")));
+      Assert.assertEquals(Collections.singletonList("b"), feed.missing());
+      feed.commit();
+      Assert.assertEquals(2, new ChildSignatureStore(file).size());
+
+      // other parents have their own children
+      Assert.assertTrue(store.begin("other", NO_FIELDS).changed("a", ChildSignatureStore.signature("<a/>")));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testAppend() throws Exception {
+    File file = File.createTempFile("signatures", ".bin");
+    file.delete();
+    try {
+      ChildSignatureStore store = new ChildSignatureStore(file);
+      commit(store, "p1", "<a/>");
+      byte[] before = Files.readAllBytes(file.toPath());
+
+      // a commit only appends the parent it changed
+      commit(store, "p2", "<b/>");
+      commit(store, "p1", "<a2/>");
+      byte[] after = Files.readAllBytes(file.toPath());
+      Assert.assertArrayEquals(before, Arrays.copyOf(after, before.length));
+      Assert.assertEquals(1, store.getReplaced());
+
+      // the later record of p1 wins
+      store = new ChildSignatureStore(file);
+      Assert.assertEquals(2, store.size());
+      Assert.assertEquals(1, store.getReplaced());
+      Assert.assertFalse(
+          store.begin("p1", NO_FIELDS).changed("a", ChildSignatureStore.signature("<a2/>")));
+
+      // a record cut short by a crash is dropped
+      Files.write(file.toPath(), Arrays.copyOf(after, after.length - 3));
+      store = new ChildSignatureStore(file);
+      Assert.assertTrue(
+          store.begin("p1", NO_FIELDS).changed("a", ChildSignatureStore.signature("<a2/>")));
+      Assert.assertEquals(0, store.getReplaced());
+      commit(store, "p3", "<c/>");
+      Assert.assertEquals(3, new ChildSignatureStore(file).size());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    File file = File.createTempFile("signatures", ".bin");
+    file.delete();
+    try {
+      ChildSignatureStore store = new ChildSignatureStore(file);
+      for (int i = 0; i <= ChildSignatureStore.COMPACT_MIN_RECORDS; i++) {
+        commit(store, "p", "<a n='" + i + "'/>");
+      }
+      // the replaced records reached the minimum, the log was rewritten
+      Assert.assertEquals(0, store.getReplaced());
+      Assert.assertEquals(0, new ChildSignatureStore(file).getReplaced());
+      Assert.assertTrue(file.length() < 100);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testParentFields() throws Exception {
+    File file = File.createTempFile("signatures", ".bin");
+    file.delete();
+    try {
+      byte[] fields =
+          ChildSignatureStore.signature(Arrays.asList(new IngestField("source", "feed-1")));
+      Assert.assertArrayEquals(
+          fields,
+          ChildSignatureStore.signature(Arrays.asList(new IngestField("source", "feed-1"))));
+      byte[] changed =
+          ChildSignatureStore.signature(Arrays.asList(new IngestField("source", "feed-2")));
+      Assert.assertFalse(Arrays.equals(fields, changed));
+
+      ChildSignatureStore store = new ChildSignatureStore(file);
+      ChildSignatureStore.Feed feed = store.begin("parent", fields);
+      feed.changed("a", ChildSignatureStore.signature("<a/>"));
+      feed.commit();
+      store = new ChildSignatureStore(file);
+      Assert.assertFalse(
+          store.begin("parent", fields).changed("a", ChildSignatureStore.signature("<a/>")));
+      // every child inherits the changed field
+      Assert.assertTrue(
+          store.begin("parent", changed).changed("a", ChildSignatureStore.signature("<a/>")));
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static void commit(ChildSignatureStore store, String parent, String xml)
+      throws Exception {
+    ChildSignatureStore.Feed feed = store.begin(parent, NO_FIELDS);
+    feed.changed("a", ChildSignatureStore.signature(xml));
+    feed.commit();
+  }
+}
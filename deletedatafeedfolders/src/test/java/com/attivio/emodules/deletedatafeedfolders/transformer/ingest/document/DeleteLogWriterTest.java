@@ -0,0 +1,172 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.emodules.deletedatafeedfolders.connector.DeleteLogSegment;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeleteLogWriterTest {
+
+  private static final int THREADS = 8;
+  private static final int ENTRIES_PER_THREAD = 5000;
+
+  @Test
+  public void testConcurrentAppends() throws Exception {
+    File file = File.createTempFile("deletePaths", ".txt");
+    try {
+      final DeleteLogWriter writer =
+          new DeleteLogWriter(file, false, 64, 10, DeleteLogWriter.Durability.FLUSH);
+      ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+      List<Future<Void>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        results.add(
+            pool.submit(
+                new Callable<Void>() {
+                  @Override
+                  public Void call() throws Exception {
+                    for (int i = 0; i < ENTRIES_PER_THREAD; i++) {
+                      writer.append("/assets/t" + thread + "/folder" + i);
+                    }
+                    return null;
+                  }
+                }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+      pool.shutdown();
+      writer.close();
+
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(THREADS * ENTRIES_PER_THREAD, lines.size());
+      Set<String> unique = new HashSet<>(lines);
+      Assert.assertEquals("Entries were lost or interleaved", lines.size(), unique.size());
+      for (int t = 0; t < THREADS; t++) {
+        Assert.assertTrue(unique.contains("/assets/t" + t + "/folder" + (ENTRIES_PER_THREAD - 1)));
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    File file = File.createTempFile("deletePaths", ".txt");
+    try {
+      DeleteLogWriter writer =
+          new DeleteLogWriter(file, false, 10, 0, DeleteLogWriter.Durability.FLUSH);
+      for (int i = 0; i < 25; i++) {
+        writer.append("/assets/folder" + i);
+      }
+      // two full batches are committed, the rest waits for the next batch or a flush
+      Assert.assertEquals(20, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+      writer.flush();
+      Assert.assertEquals(25, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+      Assert.assertEquals(25, writer.getEntriesWritten());
+      Assert.assertEquals(3, writer.getBatches());
+      Assert.assertEquals(10, writer.getMaxBatchSize());
+      writer.close();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testDurabilityNone() throws Exception {
+    File file = File.createTempFile("deletePaths", ".txt");
+    try {
+      DeleteLogWriter writer =
+          new DeleteLogWriter(file, false, 1, 0, DeleteLogWriter.Durability.NONE);
+      writer.append("/assets/a");
+      writer.append("/assets/b");
+      Assert.assertEquals(0, file.length());
+      writer.flush();
+      Assert.assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+      writer.close();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testTimedCommit() throws Exception {
+    File file = File.createTempFile("deletePaths", ".txt");
+    try {
+      DeleteLogWriter writer =
+          new DeleteLogWriter(file, false, 1000, 20, DeleteLogWriter.Durability.FSYNC);
+      writer.append("/assets/a");
+      long deadline = System.currentTimeMillis() + 5000;
+      while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(1, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+      writer.close();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testCloseAfterWrite() throws Exception {
+    File file = File.createTempFile("deletePaths", ".txt");
+    try {
+      DeleteLogWriter writer =
+          new DeleteLogWriter(file, true, 1, 0, DeleteLogWriter.Durability.FLUSH);
+      writer.append("/assets/a");
+      // the file is closed between writes, so it can be replaced by another program
+      Assert.assertTrue(file.delete());
+      writer.append("/assets/b");
+      writer.close();
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(1, lines.size());
+      Assert.assertEquals("/assets/b", lines.get(0));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testRotation() throws Exception {
+    File file = File.createTempFile("deletePaths", ".txt");
+    try {
+      DeleteLogWriter writer =
+          new DeleteLogWriter(file, false, 64, 0, DeleteLogWriter.Durability.FLUSH, 100, 0);
+      for (int feed = 0; feed < 10; feed++) {
+        for (int i = 0; i < 5; i++) {
+          writer.append("/assets/feed" + feed + "/folder" + i);
+        }
+        writer.flush();
+      }
+      writer.close();
+
+      // every feed of 5 entries is past 100 bytes
+      Assert.assertEquals(10, writer.getRotations());
+      Assert.assertEquals(0, file.length());
+      SortedMap<Long, File> pieces = DeleteLogSegment.list(file);
+      Assert.assertEquals(10, pieces.size());
+      for (File piece : pieces.values()) {
+        Assert.assertTrue(DeleteLogSegment.isSegment(piece));
+        Assert.assertEquals(5, DeleteLogSegment.open(piece).size());
+      }
+      Assert.assertTrue(DeleteLogSegment.open(pieces.get(10L)).contains("/assets/feed9/folder4"));
+    } finally {
+      for (File piece : DeleteLogSegment.list(file).values()) {
+        piece.delete();
+      }
+      file.delete();
+    }
+  }
+}
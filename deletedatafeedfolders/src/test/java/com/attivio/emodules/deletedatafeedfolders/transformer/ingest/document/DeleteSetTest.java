@@ -0,0 +1,49 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeleteSetTest {
+
+  @Test
+  public void testDuplicates() {
+    DeleteSet deletes = new DeleteSet();
+    Assert.assertTrue(deletes.add("/assets/documents/foldertest1"));
+    Assert.assertFalse(deletes.add("/assets/documents/foldertest1"));
+    Assert.assertFalse(deletes.add("/assets/documents/foldertest1/"));
+    Assert.assertTrue(deletes.add("/assets/documents/foldertest2"));
+    Assert.assertEquals(
+        Arrays.asList("/assets/documents/foldertest1", "/assets/documents/foldertest2"),
+        deletes.folders());
+  }
+
+  @Test
+  public void testCoalescing() {
+    DeleteSet deletes = new DeleteSet();
+    deletes.add("/assets/a/b");
+    deletes.add("/assets/a-b");
+    deletes.add("/assets/a/c/d");
+    Assert.assertEquals(3, deletes.size());
+    Assert.assertTrue(deletes.add("/assets/a"));
+    Assert.assertFalse(deletes.add("/assets/a/e"));
+    Assert.assertEquals(Arrays.asList("/assets/a", "/assets/a-b"), deletes.folders());
+    Assert.assertEquals(2, deletes.size());
+    Assert.assertTrue(deletes.covers("/assets/a/x/y.pdf"));
+    Assert.assertTrue(deletes.covers("/assets/a"));
+    Assert.assertFalse(deletes.covers("/assets/ab"));
+    Assert.assertFalse(deletes.covers("/assets"));
+    Assert.assertEquals("/assets/a-b", deletes.coveringFolder("/assets/a-b/c.pdf"));
+    Assert.assertNull(deletes.coveringFolder("/assets/ab"));
+  }
+
+  @Test
+  public void testClear() {
+    DeleteSet deletes = new DeleteSet();
+    deletes.add("/assets/a");
+    deletes.clear();
+    Assert.assertTrue(deletes.isEmpty());
+    Assert.assertTrue(deletes.add("/assets/a/b"));
+  }
+}
@@ -0,0 +1,50 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.util.XMLUtils;
+import java.util.HashMap;
+import java.util.Map;
+import org.jaxen.dom.DOMXPath;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class FieldExtractorTest {
+
+  @Test
+  public void testExtract() throws Exception {
+    Document d =
+        XMLUtils.parseAsW3c(
+            "<item id='a' title='A'><tag>x</tag><tag>y</tag><date>2021-01-01</date></item>");
+    FieldExtractor extractor = new FieldExtractor();
+    Assert.assertTrue(extractor.isEmpty());
+    Assert.assertNull(extractor.extract(d.getDocumentElement()));
+    extractor.add("title", "@title", new DOMXPath("@title"));
+    Assert.assertTrue(extractor.isAttributesOnly());
+    extractor.add("tags", "tag", new DOMXPath("tag"));
+    extractor.add("date", "date", new DOMXPath("date"));
+    extractor.add("missing", "@missing", new DOMXPath("@missing"));
+    Assert.assertFalse(extractor.isAttributesOnly());
+
+    IngestDocument child = new IngestDocument("a");
+    extractor.extract(d.getDocumentElement()).addTo(child);
+    Assert.assertEquals("A", child.getFirstValue("title").stringValue());
+    Assert.assertEquals(2, child.getField("tags").size());
+    Assert.assertEquals("y", child.getField("tags").getValue(1).stringValue());
+    Assert.assertEquals("2021-01-01", child.getFirstValue("date").stringValue());
+    Assert.assertNull(child.getField("missing"));
+  }
+
+  @Test
+  public void testAttributes() throws Exception {
+    FieldExtractor extractor = new FieldExtractor();
+    extractor.add("title", "@title", new DOMXPath("@title"));
+    Map<String, String> attributes = new HashMap<>();
+    attributes.put("id", "a");
+    attributes.put("title", "A");
+    IngestDocument child = new IngestDocument("a");
+    extractor.extract(attributes).addTo(child);
+    Assert.assertEquals("A", child.getFirstValue("title").stringValue());
+  }
+}
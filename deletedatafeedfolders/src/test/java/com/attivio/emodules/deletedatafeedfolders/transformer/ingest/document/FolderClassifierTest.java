@@ -0,0 +1,75 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FolderClassifierTest {
+
+  @Test
+  public void testByExtension() {
+    for (FolderClassifier defaults :
+        Arrays.asList(
+            FolderClassifier.byExtension(null),
+            FolderClassifier.byExtension(Collections.<String>emptyList()))) {
+      Assert.assertTrue(defaults.isFolder("/assets/documents", null));
+      Assert.assertTrue(defaults.isFolder("/assets/v1.2/documents", null));
+      Assert.assertFalse(defaults.isFolder("/assets/a.pdf", null));
+      Assert.assertFalse(defaults.isFolder("/assets/a.JPG", null));
+      // a dot alone does not make a file
+      Assert.assertTrue(defaults.isFolder("/assets/v1.2", null));
+    }
+
+    FolderClassifier listed = FolderClassifier.byExtension(Arrays.asList(".PDF", "docx"));
+    Assert.assertTrue(listed.isFolder("/assets/v1.2", null));
+    Assert.assertFalse(listed.isFolder("/assets/a.pdf", null));
+    Assert.assertFalse(listed.isFolder("/assets/a.DOCX", null));
+  }
+
+  @Test
+  public void testByPattern() {
+    FolderClassifier classifier = FolderClassifier.byPattern(Pattern.compile("/assets/[^/]+/?"));
+    Assert.assertTrue(classifier.isFolder("/assets/v1.2", null));
+    Assert.assertFalse(classifier.isFolder("/assets/v1.2/a.pdf", null));
+  }
+
+  @Test
+  public void testByType() {
+    FolderClassifier classifier =
+        FolderClassifier.byType(
+            Collections.singletonList("Folder"), FolderClassifier.byExtension(null));
+    Assert.assertTrue(classifier.isFolder("/assets/v1.2", "folder"));
+    Assert.assertFalse(classifier.isFolder("/assets/documents", "asset"));
+    // untyped items are classified by extension
+    Assert.assertTrue(classifier.isFolder("/assets/documents", null));
+  }
+
+  @Test
+  public void testCached() {
+    final AtomicInteger calls = new AtomicInteger();
+    FolderClassifier counting =
+        new FolderClassifier() {
+          @Override
+          boolean isFolder(String path, String type) {
+            calls.incrementAndGet();
+            return true;
+          }
+        };
+    FolderClassifier cached = FolderClassifier.cached(counting, 2);
+    cached.isFolder("/a", null);
+    cached.isFolder("/a", null);
+    Assert.assertEquals(1, calls.get());
+    cached.isFolder("/b", null);
+    cached.isFolder("/c", null);
+    // /a was evicted
+    cached.isFolder("/a", null);
+    Assert.assertEquals(4, calls.get());
+    // typed decisions are not cached
+    cached.isFolder("/c", "folder");
+    Assert.assertEquals(5, calls.get());
+  }
+}
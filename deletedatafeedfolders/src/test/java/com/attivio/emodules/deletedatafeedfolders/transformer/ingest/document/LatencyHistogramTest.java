@@ -0,0 +1,37 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(1000);
+    }
+    histogram.record(1000000);
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(1000000, histogram.getMaxNanos());
+    // within the power of two bucket holding the value
+    long p50 = histogram.getPercentileNanos(0.5);
+    Assert.assertTrue(p50 >= 1000 && p50 < 2048);
+    long p99 = histogram.getPercentileNanos(0.99);
+    Assert.assertTrue(p99 >= 1000 && p99 < 2048);
+    Assert.assertEquals(1000000, histogram.getPercentileNanos(1.0));
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(0);
+    histogram.record(-5);
+    Assert.assertEquals(2, histogram.getCount());
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getPercentileNanos(0.5));
+    Assert.assertEquals(0, histogram.getMaxNanos());
+  }
+}
@@ -0,0 +1,39 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineageTrieTest {
+
+  @Test
+  public void testLineage() {
+    LineageTrie trie = new LineageTrie(false, 0);
+    Assert.assertEquals(Arrays.asList("/a", "/a/b", "/a/b/c"), trie.lineage("/a/b/c"));
+    Assert.assertEquals(Arrays.asList("/a", "/a/b", "/a/b/c"), trie.lineage("a//b/c/"));
+    Assert.assertTrue(trie.lineage("/").isEmpty());
+    Assert.assertEquals(3, trie.size());
+  }
+
+  @Test
+  public void testSharedPrefixes() {
+    LineageTrie trie = new LineageTrie(true, 0);
+    List<String> first = trie.lineage("/a/b/c");
+    List<String> second = trie.lineage("/a/b/d");
+    Assert.assertSame(first.get(0), second.get(0));
+    Assert.assertSame(first.get(1), second.get(1));
+    Assert.assertEquals("/a/b/d", second.get(2));
+    Assert.assertEquals(4, trie.size());
+  }
+
+  @Test
+  public void testMaxNodes() {
+    LineageTrie trie = new LineageTrie(false, 2);
+    trie.lineage("/a/b/c");
+    Assert.assertEquals(3, trie.size());
+    Assert.assertEquals(Arrays.asList("/x", "/x/y"), trie.lineage("/x/y"));
+    Assert.assertEquals(2, trie.size());
+  }
+}
@@ -0,0 +1,77 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+  @Test
+  public void testTryAcquire() throws Exception {
+    MemoryBudget budget = new MemoryBudget(100, MemoryBudget.Policy.FAIL, 0);
+    Assert.assertTrue(budget.tryAcquire(60));
+    Assert.assertFalse(budget.tryAcquire(60));
+    Assert.assertTrue(budget.tryAcquire(40));
+    budget.release(100);
+    Assert.assertEquals(0, budget.getUsedBytes());
+    // too large for the whole budget, but nothing else is held
+    Assert.assertTrue(budget.tryAcquire(500));
+    Assert.assertEquals(500, budget.getPeakBytes());
+  }
+
+  @Test
+  public void testFail() throws Exception {
+    MemoryBudget budget = new MemoryBudget(100, MemoryBudget.Policy.FAIL, 60000);
+    budget.acquire(80);
+    try {
+      budget.acquire(30);
+      Assert.fail("over budget");
+    } catch (AttivioException e) {
+      // expected
+    }
+    // the caller's own bytes do not count against it
+    budget.acquire(30, 80);
+    Assert.assertEquals(110, budget.getUsedBytes());
+  }
+
+  @Test
+  public void testThrottle() throws Exception {
+    final MemoryBudget budget = new MemoryBudget(100, MemoryBudget.Policy.THROTTLE, 60000);
+    budget.acquire(80);
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiter =
+        new Thread(
+            () -> {
+              try {
+                budget.acquire(50);
+                acquired.countDown();
+              } catch (AttivioException e) {
+                // the latch stays closed
+              }
+            });
+    waiter.start();
+    Assert.assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+    budget.release(80);
+    Assert.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    waiter.join();
+    Assert.assertEquals(50, budget.getUsedBytes());
+    Assert.assertEquals(1, budget.getWaits());
+  }
+
+  @Test(expected = AttivioException.class)
+  public void testThrottleTimeout() throws Exception {
+    MemoryBudget budget = new MemoryBudget(100, MemoryBudget.Policy.THROTTLE, 20);
+    budget.acquire(80);
+    budget.acquire(50);
+  }
+
+  @Test
+  public void testEstimate() {
+    Assert.assertEquals(MemoryBudget.CHILD_OVERHEAD, MemoryBudget.estimate(null));
+    Assert.assertEquals(MemoryBudget.CHILD_OVERHEAD + 14, MemoryBudget.estimate("<item/>"));
+    Assert.assertEquals(MemoryBudget.DELETE_OVERHEAD + 8, MemoryBudget.estimateDelete("/foo"));
+  }
+}
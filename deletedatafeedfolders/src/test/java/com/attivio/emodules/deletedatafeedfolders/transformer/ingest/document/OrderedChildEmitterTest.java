@@ -0,0 +1,124 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.AttivioException;
+import com.attivio.sdk.error.IndexWorkflowError;
+import com.attivio.sdk.ingest.IngestDocument;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrderedChildEmitterTest {
+
+  @Test
+  public void testOrderedEmission() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final List<String> fed = new ArrayList<>();
+      final AtomicInteger running = new AtomicInteger();
+      final AtomicInteger maxRunning = new AtomicInteger();
+      OrderedChildEmitter emitter =
+          new OrderedChildEmitter(pool, 8, child -> fed.add(child.getId()));
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        final String id = "child-" + i;
+        expected.add(id);
+        final long sleep = (100 - i) % 7;
+        emitter.submit(
+            () -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              try {
+                Thread.sleep(sleep);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              running.decrementAndGet();
+              return new IngestDocument(id);
+            });
+      }
+      emitter.finish();
+      Assert.assertEquals(expected, fed);
+      Assert.assertTrue(maxRunning.get() <= 8);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testWithoutPool() throws Exception {
+    final List<String> fed = new ArrayList<>();
+    OrderedChildEmitter emitter = new OrderedChildEmitter(null, 8, child -> fed.add(child.getId()));
+    emitter.submit(() -> new IngestDocument("a"));
+    Assert.assertEquals(Collections.singletonList("a"), fed);
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      final List<String> fed = new ArrayList<>();
+      OrderedChildEmitter emitter = new OrderedChildEmitter(pool, 2, child -> fed.add(child.getId()));
+      emitter.submit(() -> new IngestDocument("a"));
+      emitter.submit(() -> null);
+      emitter.submit(() -> new IngestDocument("c"));
+      emitter.finish();
+      Assert.assertEquals(Arrays.asList("a", "c"), fed);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final List<String> fed = new ArrayList<>();
+      final MemoryBudget budget = new MemoryBudget(250, MemoryBudget.Policy.FAIL, 0);
+      OrderedChildEmitter emitter =
+          new OrderedChildEmitter(
+              pool,
+              8,
+              child -> {
+                // the child fed still holds its bytes
+                Assert.assertTrue(budget.getUsedBytes() >= 100);
+                fed.add(child.getId());
+              },
+              budget);
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        final String id = "child-" + i;
+        expected.add(id);
+        emitter.submit(() -> new IngestDocument(id), 100);
+      }
+      emitter.submit(() -> null, 100);
+      emitter.finish();
+      Assert.assertEquals(expected, fed);
+      Assert.assertEquals(0, budget.getUsedBytes());
+      // never more than two children held at once
+      Assert.assertEquals(200, budget.getPeakBytes());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(expected = AttivioException.class)
+  public void testFailure() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      OrderedChildEmitter emitter = new OrderedChildEmitter(pool, 8, child -> {});
+      emitter.submit(() -> new IngestDocument("a"));
+      emitter.submit(
+          () -> {
+            throw new AttivioException(IndexWorkflowError.XML_HANDLING_ERROR, "no id");
+          });
+      emitter.finish();
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
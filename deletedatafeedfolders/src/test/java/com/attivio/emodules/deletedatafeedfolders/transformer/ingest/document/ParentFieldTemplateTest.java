@@ -0,0 +1,37 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.schema.FieldNames;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParentFieldTemplateTest {
+
+  private IngestDocument parent() {
+    IngestDocument parent = new IngestDocument("parent");
+    parent.setField("title", "Feed");
+    parent.setField("xml", "<feed/>");
+    parent.setField(FieldNames.PARENT_ID, "grandparent");
+    parent.setField(FieldNames.LINEAGE_IDS, "/feed");
+    return parent;
+  }
+
+  @Test
+  public void testClone() {
+    IngestDocument parent = parent();
+    ParentFieldTemplate template =
+        new ParentFieldTemplate(parent, Collections.singletonList("xml"));
+    Assert.assertEquals(2, template.size());
+
+    IngestDocument child = new IngestDocument("child");
+    template.copyTo(child);
+    Assert.assertNull(child.getField("xml"));
+    Assert.assertNull(child.getField(FieldNames.PARENT_ID));
+    Assert.assertEquals("Feed", child.getFirstValue("title").stringValue());
+    Assert.assertNotSame(parent.getField("title"), child.getField("title"));
+    Assert.assertNotSame(
+        parent.getField(FieldNames.LINEAGE_IDS), child.getField(FieldNames.LINEAGE_IDS));
+  }
+}
@@ -0,0 +1,56 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import com.attivio.util.XMLUtils;
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class SplitMetricsTest {
+
+  @Test
+  public void testCounters() {
+    SplitMetrics metrics = new SplitMetrics();
+    metrics.documentIn();
+    metrics.childOut(10);
+    metrics.childOut(30);
+    metrics.deleteEntriesWritten(3);
+    metrics.xpath("/feed/item").record(1000);
+    Assert.assertSame(metrics.xpath("/feed/item"), metrics.xpath("/feed/item"));
+
+    Assert.assertEquals(1, metrics.getDocumentsIn());
+    Assert.assertEquals(2, metrics.getChildrenOut());
+    Assert.assertEquals(30, metrics.getPeakChildSize());
+    Assert.assertEquals(3, metrics.getDeleteEntriesWritten());
+    Assert.assertEquals(1, metrics.getXPathLatencies().length);
+    Assert.assertTrue(metrics.report().contains("2 children out"));
+
+    metrics.reset();
+    Assert.assertEquals(0, metrics.getChildrenOut());
+    Assert.assertEquals(0, metrics.getPeakChildSize());
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    SplitMetrics metrics = new SplitMetrics();
+    metrics.childOut(1);
+    ObjectName name = metrics.register("SplitMetricsTest");
+    try {
+      Assert.assertEquals(
+          1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ChildrenOut"));
+    } finally {
+      SplitMetrics.unregister(name);
+    }
+    Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  @Test
+  public void testXmlSize() throws Exception {
+    String xml = "<doc id=\"1\"><title>doc 1</title></doc>";
+    Document d = XMLUtils.parseAsW3c(xml);
+    Assert.assertEquals(xml.length(), SplitMetrics.xmlSize(d.getDocumentElement()));
+    Assert.assertEquals(xml.length(), SplitMetrics.xmlSize(d));
+  }
+}
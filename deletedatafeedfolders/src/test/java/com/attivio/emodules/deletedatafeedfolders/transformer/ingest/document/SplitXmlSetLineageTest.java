@@ -4,13 +4,30 @@ package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
 import com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document.SplitXmlSetLineage;
 import com.attivio.sdk.AttivioException;
 import com.attivio.sdk.ingest.IngestDocument;
+import com.attivio.sdk.ingest.IngestFieldValue;
 import com.attivio.sdk.schema.FieldNames;
 import com.attivio.sdk.test.MockIngestClient;
 import com.attivio.sdk.test.SdkTestUtils;
 import com.attivio.util.XMLUtils;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.w3c.dom.Element;
 
 public class SplitXmlSetLineageTest {
 	
@@ -24,35 +41,793 @@ public class SplitXmlSetLineageTest {
 	    		+ "<item id='/assets/documents/foldertest1' delete='true'>3</item>"
 	    		+ "<item id='/assets/documents/foldertest2' delete='true'>3</item>"
 	    		+ "</feed>"));
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    try {
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      s.setDeleteFile(deleteFile.getAbsolutePath());
+	      s.startComponent();
+	      HashMap<String, String> rules = new HashMap<String, String>();
+	      rules.put("/feed/item", "@id");
+	      s.setRules(rules);
+	      HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	      deleteFlag.put("/feed/item", "@delete");
+	      s.setDeleteFlag(deleteFlag);
+	      s.setCloseLogFileAfterWrite(true);
+	      SdkTestUtils.startTransformer(s);
+	      MockIngestClient mock = new MockIngestClient();
+	      s.process(ad, mock);
+	      s.stopComponent();
+
+	      List<String> lines = Files.readAllLines(deleteFile.toPath(), StandardCharsets.UTF_8);
+	      Assert.assertEquals(
+	          Arrays.asList("/assets/documents/foldertest1", "/assets/documents/foldertest2"), lines);
+	    } finally {
+	      deleteFile.delete();
+	    }
+	  }
+	  
+	  @Test
+	  public void simpleTest() throws Exception {
+	    IngestDocument ad = new IngestDocument("1");
+	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c("<docs><doc id='/test/folder'>1</doc></docs>"));
 	    SplitXmlSetLineage s = new SplitXmlSetLineage();
-	    s.setDeleteFile("C:\\temp\\deletePaths.txt");
 	    s.startComponent();
 	    HashMap<String, String> rules = new HashMap<String, String>();
-	    rules.put("/feed/item", "@id");
+	    rules.put("/docs/doc", "@id");
 	    s.setRules(rules);
-	    HashMap<String, String> deleteFlag = new HashMap<String, String>();
-	    deleteFlag.put("/feed/item", "@delete");
-	    s.setDeleteFlag(deleteFlag);
-	    s.setCloseLogFileAfterWrite(true);
 	    SdkTestUtils.startTransformer(s);
 	    MockIngestClient mock = new MockIngestClient();
 	    s.process(ad, mock);
 	  }
 	  
 	  @Test
-	  public void simpleTest() throws Exception {
+	  public void testConcurrentProcess() throws Exception {
+	    final int threads = 8;
+	    final int feedsPerThread = 25;
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    try {
+	      final SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      HashMap<String, String> rules = new HashMap<String, String>();
+	      rules.put("/feed/item", "@id");
+	      s.setRules(rules);
+	      HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	      deleteFlag.put("/feed/item", "@delete");
+	      s.setDeleteFlag(deleteFlag);
+	      s.setDeleteFile(deleteFile.getAbsolutePath());
+	      // DOM values are split in memory, text values are streamed
+	      s.setInput(Arrays.asList(FieldNames.XML_DOM, "xml"));
+	      s.setStreaming(true);
+	      SdkTestUtils.startTransformer(s);
+
+	      ExecutorService pool = Executors.newFixedThreadPool(threads);
+	      List<Future<Void>> results = new ArrayList<>();
+	      for (int t = 0; t < threads; t++) {
+	        final int thread = t;
+	        results.add(pool.submit(new Callable<Void>() {
+	          @Override
+	          public Void call() throws Exception {
+	            MockIngestClient mock = new MockIngestClient();
+	            for (int i = 0; i < feedsPerThread; i++) {
+	              String xml = "<feed>"
+	                  + "<item id='/assets/t" + thread + "/f" + i + "/a.pdf'>1</item>"
+	                  + "<item id='/assets/t" + thread + "/f" + i + "' delete='true'>2</item>"
+	                  + "</feed>";
+	              IngestDocument ad = new IngestDocument("t" + thread + "-" + i);
+	              if (i % 2 == 0) {
+	                ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	              } else {
+	                ad.setField("xml", xml);
+	              }
+	              s.process(ad, mock);
+	            }
+	            return null;
+	          }
+	        }));
+	      }
+	      for (Future<Void> result : results) {
+	        result.get();
+	      }
+	      pool.shutdown();
+	      s.stopComponent();
+
+	      List<String> lines = Files.readAllLines(deleteFile.toPath(), StandardCharsets.UTF_8);
+	      Assert.assertEquals(threads * feedsPerThread, lines.size());
+	      Assert.assertEquals(lines.size(), new HashSet<String>(lines).size());
+	    } finally {
+	      deleteFile.delete();
+	    }
+	  }
+
+	  @Test
+	  public void testShards() throws Exception {
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    List<File> shards = new ArrayList<File>();
+	    try {
+	      IngestDocument ad = new IngestDocument("1");
+	      for (int i = 0; i < 4; i++) {
+	        File shard = File.createTempFile("shard", ".xml");
+	        shards.add(shard);
+	        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?><feed>");
+	        for (int j = 0; j < 50; j++) {
+	          xml.append("<item id='/assets/s" + i + "/" + j + ".pdf'>" + j + "</item>");
+	        }
+	        // the same folder flagged by two shards is logged once
+	        xml.append("<item id='/assets/s" + i % 2 + "' delete='true'/>");
+	        xml.append("</feed>");
+	        Files.write(shard.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+	        ad.addValue("shards", shard.getAbsolutePath());
+	      }
+	      String text = "<feed><item id='/assets/text/a.pdf'>1</item></feed>";
+	      ad.setField("xml", text);
+	      ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(text));
+	      for (boolean streaming : new boolean[] {false, true}) {
+	        deleteFile.delete();
+	        SplitXmlSetLineage s = new SplitXmlSetLineage();
+	        HashMap<String, String> rules = new HashMap<String, String>();
+	        rules.put("/feed/item", "@id");
+	        s.setRules(rules);
+	        HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	        deleteFlag.put("/feed/item", "@delete");
+	        s.setDeleteFlag(deleteFlag);
+	        s.setDeleteFile(deleteFile.getAbsolutePath());
+	        // a DOM value is split in memory, text only when streaming
+	        s.setInput(Arrays.asList(streaming ? "xml" : FieldNames.XML_DOM));
+	        s.setStreaming(streaming);
+	        s.setShardParallelism(3);
+	        s.setShardFileField("shards");
+	        s.setFeedBatchSize(16);
+	        s.setMaxInFlightChildren(8);
+	        SdkTestUtils.startTransformer(s);
+	        MockIngestClient mock = new MockIngestClient();
+	        s.process(ad, mock);
+	        s.stopComponent();
+
+	        // the field shard and the file shards, the flagged folders are split as well
+	        HashSet<String> ids = new HashSet<String>();
+	        for (IngestDocument child : mock.getDocumentList()) {
+	          ids.add(child.getId());
+	        }
+	        Assert.assertEquals(1 + 4 * 51, mock.getDocumentList().size());
+	        Assert.assertEquals(1 + 4 * 50 + 2, ids.size());
+	        Assert.assertTrue(ids.contains("/assets/text/a.pdf"));
+	        Assert.assertTrue(ids.contains("/assets/s3/49.pdf"));
+	        List<String> lines = Files.readAllLines(deleteFile.toPath(), StandardCharsets.UTF_8);
+	        Assert.assertEquals(
+	            new HashSet<String>(Arrays.asList("/assets/s0", "/assets/s1")),
+	            new HashSet<String>(lines));
+	      }
+	    } finally {
+	      deleteFile.delete();
+	      for (File shard : shards) {
+	        shard.delete();
+	      }
+	    }
+	  }
+
+	  @Test(expected = AttivioException.class)
+	  public void testShardFailure() throws Exception {
 	    IngestDocument ad = new IngestDocument("1");
-	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c("<docs><doc id='/test/folder'>1</doc></docs>"));
+	    ad.addValue("shards", new File("no-such-shard.xml").getAbsolutePath());
+	    ad.setField("xml", "<feed><item id='/assets/text/a.pdf'>1</item></feed>");
 	    SplitXmlSetLineage s = new SplitXmlSetLineage();
-	    s.startComponent();
 	    HashMap<String, String> rules = new HashMap<String, String>();
-	    rules.put("/docs/doc", "@id");
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setInput(Arrays.asList("xml"));
+	    s.setStreaming(true);
+	    s.setShardParallelism(2);
+	    s.setShardFileField("shards");
+	    SdkTestUtils.startTransformer(s);
+	    try {
+	      s.process(ad, new MockIngestClient());
+	    } finally {
+	      s.stopComponent();
+	    }
+	  }
+
+	  @Test
+	  public void testStreaming() throws Exception {
+	    String xml = "<feed>"
+	    		+ "<item id='/assets/documents/a.pdf'>1</item>"
+	    		+ "<item id='/assets/documents/b.pdf'>2</item>"
+	    		+ "</feed>";
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    List<List<IngestDocument>> results = new ArrayList<List<IngestDocument>>();
+	    for (boolean streaming : new boolean[] {true, false}) {
+	      IngestDocument ad = new IngestDocument("1");
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      s.setRules(rules);
+	      if (streaming) {
+	        ad.setField("xml", xml);
+	        s.setInput(Arrays.asList("xml"));
+	        s.setStreaming(true);
+	      } else {
+	        ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	      }
+	      SdkTestUtils.startTransformer(s);
+	      MockIngestClient mock = new MockIngestClient();
+	      s.process(ad, mock);
+	      s.stopComponent();
+	      results.add(mock.getDocumentList());
+	    }
+
+	    List<IngestDocument> streamed = results.get(0);
+	    Assert.assertEquals(2, streamed.size());
+	    IngestDocument a = streamed.get(0);
+	    Assert.assertEquals("/assets/documents/a.pdf", a.getId());
+	    Assert.assertEquals("1", a.getFirstValue(FieldNames.PARENT_ID).stringValue());
+	    Assert.assertEquals(
+	        Arrays.asList("/assets", "/assets/documents", "/assets/documents/a.pdf"), lineage(a));
+	    Assert.assertEquals("/assets/documents/b.pdf", streamed.get(1).getId());
+
+	    // streaming splits the same children as the DOM
+	    List<IngestDocument> dom = results.get(1);
+	    Assert.assertEquals(dom.size(), streamed.size());
+	    for (int i = 0; i < dom.size(); i++) {
+	      IngestDocument expected = dom.get(i);
+	      IngestDocument actual = streamed.get(i);
+	      Assert.assertEquals(expected.getId(), actual.getId());
+	      Assert.assertEquals(
+	          expected.getFirstValue(FieldNames.PARENT_ID).stringValue(),
+	          actual.getFirstValue(FieldNames.PARENT_ID).stringValue());
+	      Assert.assertEquals(lineage(expected), lineage(actual));
+	      Element expectedXml =
+	          expected.getFirstValue(FieldNames.XML_DOM).xmlValue().getDocumentElement();
+	      Element actualXml = actual.getFirstValue(FieldNames.XML_DOM).xmlValue().getDocumentElement();
+	      Assert.assertEquals(expectedXml.getAttribute("id"), actualXml.getAttribute("id"));
+	      Assert.assertEquals(expectedXml.getTextContent(), actualXml.getTextContent());
+	    }
+	  }
+
+	  private static List<String> lineage(IngestDocument doc) {
+	    List<String> ids = new ArrayList<String>();
+	    for (IngestFieldValue value : doc.getField(FieldNames.LINEAGE_IDS)) {
+	      ids.add(value.stringValue());
+	    }
+	    return ids;
+	  }
+
+	  @Test
+	  public void testParallel() throws Exception {
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    try {
+	      StringBuilder xml = new StringBuilder("<feed>");
+	      for (int i = 0; i < 500; i++) {
+	        xml.append("<item id='/assets/f" + (i % 10) + "/" + i + ".pdf'>" + i + "</item>");
+	      }
+	      xml.append("<item id='/assets/f3' delete='true'/>");
+	      xml.append("</feed>");
+	      IngestDocument ad = new IngestDocument("1");
+	      ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml.toString()));
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      HashMap<String, String> rules = new HashMap<String, String>();
+	      rules.put("/feed/item", "@id");
+	      s.setRules(rules);
+	      HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	      deleteFlag.put("/feed/item", "@delete");
+	      s.setDeleteFlag(deleteFlag);
+	      s.setDeleteFile(deleteFile.getAbsolutePath());
+	      s.setParallelism(4);
+	      s.setMaxInFlightChildren(16);
+	      SdkTestUtils.startTransformer(s);
+	      MockIngestClient mock = new MockIngestClient();
+	      s.process(ad, mock);
+	      s.stopComponent();
+	      Assert.assertEquals(Arrays.asList("/assets/f3"),
+	          Files.readAllLines(deleteFile.toPath(), StandardCharsets.UTF_8));
+	    } finally {
+	      deleteFile.delete();
+	    }
+	  }
+
+	  @Test
+	  public void testFeedBatches() throws Exception {
+	    StringBuilder xml = new StringBuilder("<feed>");
+	    for (int i = 0; i < 250; i++) {
+	      xml.append("<item id='/assets/f/" + i + ".pdf'>" + i + "</item>");
+	    }
+	    xml.append("</feed>");
+	    IngestDocument ad = new IngestDocument("1");
+	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml.toString()));
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setParallelism(4);
+	    s.setFeedBatchSize(100);
+	    SdkTestUtils.startTransformer(s);
+	    final List<Integer> batches = new ArrayList<Integer>();
+	    MockIngestClient mock = new MockIngestClient() {
+	      @Override
+	      public void feed(IngestDocument... docs) {
+	        batches.add(docs.length);
+	        super.feed(docs);
+	      }
+	    };
+	    s.process(ad, mock);
+	    s.stopComponent();
+	    // the last batch is fed at the end of the parent
+	    Assert.assertEquals(Arrays.asList(100, 100, 50), batches);
+	    Assert.assertEquals(250, mock.getDocumentList().size());
+	    Assert.assertEquals("/assets/f/249.pdf", mock.getDocumentList().get(249).getId());
+	  }
+
+	  @Test
+	  public void testIncremental() throws Exception {
+	    File signatureFile = File.createTempFile("signatures", ".bin");
+	    signatureFile.delete();
+	    try {
+	      String first = "<feed>"
+	      		+ "<item id='/assets/documents/a.pdf'><title>a</title></item>"
+	      		+ "<item id='/assets/documents/b.pdf'><title>b</title></item>"
+	      		+ "<item id='/assets/documents/c.pdf'><title>c</title></item>"
+	      		+ "</feed>";
+	      // b changed, c disappeared
+	      String second = "<feed>"
+	      		+ "<item id='/assets/documents/a.pdf'><title>a</title></item>"
+	      		+ "<item id='/assets/documents/b.pdf'><title>b2</title></item>"
+	      		+ "</feed>";
+	      MockIngestClient mock = new MockIngestClient();
+	      splitIncremental(first, "feed-1", signatureFile, mock);
+	      Assert.assertEquals(3, mock.getDocumentList().size());
+
+	      // a new run reads the signatures of the previous one
+	      final List<String> deletedIds = new ArrayList<String>();
+	      mock = new MockIngestClient() {
+	        @Override
+	        public void delete(String... docIds) {
+	          deletedIds.addAll(Arrays.asList(docIds));
+	        }
+	      };
+	      splitIncremental(second, "feed-1", signatureFile, mock);
+	      Assert.assertEquals(Arrays.asList("/assets/documents/c.pdf"), deletedIds);
+	      Assert.assertEquals(1, mock.getDocumentList().size());
+	      Assert.assertEquals("/assets/documents/b.pdf", mock.getDocumentList().get(0).getId());
+
+	      // the children inherit the changed parent field
+	      mock = new MockIngestClient();
+	      splitIncremental(second, "feed-2", signatureFile, mock);
+	      Assert.assertEquals(2, mock.getDocumentList().size());
+	      Assert.assertEquals(
+	          "feed-2", mock.getDocumentList().get(0).getFirstValue("source").stringValue());
+	    } finally {
+	      signatureFile.delete();
+	    }
+	  }
+
+	  private static void splitIncremental(
+	      String xml, String source, File signatureFile, MockIngestClient out) throws Exception {
+	    IngestDocument ad = new IngestDocument("1");
+	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	    ad.setField("source", source);
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
 	    s.setRules(rules);
+	    s.setIncremental(true);
+	    s.setSignatureFile(signatureFile.getAbsolutePath());
+	    s.setDeleteMissingChildren(true);
+	    SdkTestUtils.startTransformer(s);
+	    s.process(ad, out);
+	    s.stopComponent();
+	  }
+
+	  @Test
+	  public void testSpill() throws Exception {
+	    File spillDirectory = Files.createTempDirectory("spill").toFile();
+	    try {
+	      String xml = "<?xml version='1.0' encoding='ISO-8859-1'?><feed>"
+	      		+ "<item id='/assets/documents/a.pdf'><title>\u00e9t\u00e9</title></item>"
+	      		+ "<item id='/assets/documents/b.pdf'><title>b</title></item>"
+	      		+ "</feed>";
+	      IngestDocument ad = new IngestDocument("1");
+	      ad.setField("xml", xml);
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      HashMap<String, String> rules = new HashMap<String, String>();
+	      rules.put("/feed/item", "@id");
+	      s.setRules(rules);
+	      s.setInput(Arrays.asList("xml"));
+	      s.setStreaming(true);
+	      s.setChildXmlFormat("text");
+	      s.setSpillThreshold(10);
+	      s.setSpillDirectory(spillDirectory.getAbsolutePath());
+	      SdkTestUtils.startTransformer(s);
+	      MockIngestClient mock = new MockIngestClient();
+	      s.process(ad, mock);
+	      Assert.assertEquals(2, mock.getDocumentList().size());
+	      Assert.assertTrue(
+	          mock.getDocumentList().get(0).getFirstValue("xml").stringValue().contains("\u00e9t\u00e9"));
+	      // the text went to disk and was released
+	      Assert.assertNull(ad.getField("xml"));
+	      Assert.assertEquals(0, spillDirectory.list().length);
+	    } finally {
+	      spillDirectory.delete();
+	    }
+	  }
+
+	  @Test
+	  public void testFolderType() throws Exception {
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    try {
+	      String xml = "<feed>"
+	      		+ "<item id='/assets/v1.2' type='folder' deleted='true'/>"
+	      		+ "<item id='/assets/documents' type='asset' deleted='true'/>"
+	      		+ "<item id='/assets/other' deleted='true'/>"
+	      		+ "</feed>";
+	      IngestDocument ad = new IngestDocument("1");
+	      ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      s.setRules(new HashMap<String, String>());
+	      HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	      deleteFlag.put("/feed/item", "@deleted");
+	      s.setDeleteFlag(deleteFlag);
+	      s.setDeleteFile(deleteFile.getAbsolutePath());
+	      s.setFolderClassification("type");
+	      s.setFolderTypePath("@type");
+	      SdkTestUtils.startTransformer(s);
+	      s.process(ad, new MockIngestClient());
+	      s.stopComponent();
+	      Assert.assertEquals(
+	          Arrays.asList("/assets/v1.2", "/assets/other"),
+	          Files.readAllLines(deleteFile.toPath(), StandardCharsets.UTF_8));
+	    } finally {
+	      deleteFile.delete();
+	    }
+	  }
+
+	  @Test
+	  public void testMetrics() throws Exception {
+	    String xml = "<feed>"
+	    		+ "<item id='/assets/documents/a.pdf'><title>a</title></item>"
+	    		+ "<item id='/assets/documents/b.pdf'><title>b</title></item>"
+	    		+ "</feed>";
+	    IngestDocument ad = new IngestDocument("1");
+	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setMetricsName("SplitXmlSetLineageTest");
+	    s.setMetricsJmx(true);
+	    SdkTestUtils.startTransformer(s);
+	    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	    ObjectName name = new ObjectName(
+	        SplitMetrics.DOMAIN + ":type=SplitXmlSetLineage,name=\"SplitXmlSetLineageTest\"");
+	    try {
+	      // started again, the MBean of the new metrics replaces the first one
+	      s.startComponent();
+	      s.process(ad, new MockIngestClient());
+	      SplitMetrics metrics = s.getMetrics();
+	      Assert.assertEquals(1, metrics.getDocumentsIn());
+	      Assert.assertEquals(1L, server.getAttribute(name, "DocumentsIn"));
+	      Assert.assertEquals(2, metrics.getChildrenOut());
+	      Assert.assertTrue(metrics.getPeakChildSize() > 0);
+	      // the split path and the id path
+	      Assert.assertEquals(2, metrics.getXPathLatencies().length);
+	    } finally {
+	      s.stopComponent();
+	    }
+	    Assert.assertFalse(server.isRegistered(name));
+	  }
+
+	  @Test
+	  public void testTextChildren() throws Exception {
+	    String xml = "<feed xmlns:x='urn:x'>"
+	    		+ "<item id='/assets/documents/a.pdf'><x:title>a &amp; &lt;b&gt;</x:title></item>"
+	    		+ "<item id='/assets/documents/b.pdf'><title>b</title></item>"
+	    		+ "</feed>";
+	    IngestDocument ad = new IngestDocument("1");
+	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	    ad.setField("xml", xml);
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    // DOM values are serialized, text values are streamed without DOM
+	    s.setInput(Arrays.asList(FieldNames.XML_DOM, "xml"));
+	    s.setStreaming(true);
+	    s.setChildXmlFormat("text");
 	    SdkTestUtils.startTransformer(s);
 	    MockIngestClient mock = new MockIngestClient();
 	    s.process(ad, mock);
+
+	    // the serialized and the streamed children come out the same
+	    List<IngestDocument> children = mock.getDocumentList();
+	    Assert.assertEquals(4, children.size());
+	    for (int i = 0; i < children.size(); i += 2) {
+	      IngestDocument a = children.get(i);
+	      Assert.assertEquals("/assets/documents/a.pdf", a.getId());
+	      Assert.assertNull(a.getField(FieldNames.XML_DOM));
+	      // the namespace is declared where it is used, the text stays escaped
+	      Assert.assertEquals(
+	          "<item id=\"/assets/documents/a.pdf\">"
+	              + "<x:title xmlns:x=\"urn:x\">a &amp; &lt;b&gt;</x:title></item>",
+	          a.getFirstValue("xml").stringValue());
+	      IngestDocument b = children.get(i + 1);
+	      Assert.assertEquals("/assets/documents/b.pdf", b.getId());
+	      Assert.assertEquals(
+	          "<item id=\"/assets/documents/b.pdf\"><title>b</title></item>",
+	          b.getFirstValue("xml").stringValue());
+	    }
+	    // the ids read from the parser events are timed like the ids read from the DOM
+	    Assert.assertEquals(4, s.getMetrics().getChildrenOut());
+	    boolean idTimed = false;
+	    for (String line : s.getMetrics().getXPathLatencies()) {
+	      idTimed |= line.contains(" id ") && line.contains("n=4 ");
+	    }
+	    Assert.assertTrue(idTimed);
 	  }
-	  
+
+	  @Test
+	  public void testMetricsNotRegisteredByDefault() throws Exception {
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setMetricsName("SplitXmlSetLineageTestDefault");
+	    SdkTestUtils.startTransformer(s);
+	    try {
+	      Assert.assertNotNull(s.getMetrics());
+	      Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(
+	          SplitMetrics.DOMAIN + ":type=SplitXmlSetLineage,name=\"SplitXmlSetLineageTestDefault\"")));
+	    } finally {
+	      s.stopComponent();
+	    }
+	  }
+
+	  @Test
+	  public void testFieldMappings() throws Exception {
+	    String xml = "<feed>"
+	    		+ "<item id='/assets/documents/a.pdf' kind='pdf'><title>a</title></item>"
+	    		+ "<item id='/assets/documents/b.pdf' kind='pdf'><title>b</title></item>"
+	    		+ "</feed>";
+	    IngestDocument ad = new IngestDocument("1");
+	    ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	    ad.setField("title", "parent");
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    HashMap<String, String> mappings = new HashMap<String, String>();
+	    mappings.put("title", "title");
+	    mappings.put("kind", "@kind");
+	    s.setFieldMappings(mappings);
+	    SdkTestUtils.startTransformer(s);
+	    MockIngestClient mock = new MockIngestClient();
+	    s.process(ad, mock);
+	    IngestDocument b = mock.getDocumentList().get(1);
+	    Assert.assertEquals(1, b.getField("title").size());
+	    Assert.assertEquals("b", b.getFirstValue("title").stringValue());
+	    Assert.assertEquals("pdf", b.getFirstValue("kind").stringValue());
+	    Assert.assertNotNull(b.getField(FieldNames.XML_DOM));
+
+	    // the attribute mapping alone streams without DOM, children carry no XML
+	    ad = new IngestDocument("2");
+	    ad.setField("xml", xml);
+	    s = new SplitXmlSetLineage();
+	    s.setRules(rules);
+	    mappings.remove("title");
+	    s.setFieldMappings(mappings);
+	    s.setInput(Arrays.asList("xml"));
+	    s.setStreaming(true);
+	    s.setChildXmlFormat("text");
+	    s.setOmitChildXml(true);
+	    SdkTestUtils.startTransformer(s);
+	    mock = new MockIngestClient();
+	    s.process(ad, mock);
+	    Assert.assertEquals(2, mock.getDocumentList().size());
+	    IngestDocument a = mock.getDocumentList().get(0);
+	    Assert.assertEquals("pdf", a.getFirstValue("kind").stringValue());
+	    Assert.assertNull(a.getField("xml"));
+	  }
+
+	  @Test
+	  public void testSuppressDeletedChildren() throws Exception {
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    try {
+	      // the children come before the flag of their folder
+	      String xml = "<feed>"
+	      		+ "<item id='/assets/docs/foo/a.pdf'/>"
+	      		+ "<item id='/assets/docs/bar/b.pdf'/>"
+	      		+ "<item id='/assets/docs/foo' delete='true'/>"
+	      		+ "</feed>";
+	      HashMap<String, String> rules = new HashMap<String, String>();
+	      rules.put("/feed/item", "@id");
+	      HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	      deleteFlag.put("/feed/item", "@delete");
+	      for (String mode : Arrays.asList("drop", "divert")) {
+	        IngestDocument ad = new IngestDocument("1");
+	        ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	        SplitXmlSetLineage s = new SplitXmlSetLineage();
+	        s.setRules(rules);
+	        s.setDeleteFlag(deleteFlag);
+	        s.setDeleteFile(deleteFile.getAbsolutePath());
+	        s.setSuppressDeletedChildren(mode);
+	        s.setMetricsEnabled(true);
+	        SdkTestUtils.startTransformer(s);
+	        MockIngestClient mock = new MockIngestClient();
+	        s.process(ad, mock);
+	        Assert.assertEquals(2, s.getMetrics().getChildrenSuppressed());
+	        s.stopComponent();
+	        if ("drop".equals(mode)) {
+	          Assert.assertEquals(1, mock.getDocumentList().size());
+	          Assert.assertEquals("/assets/docs/bar/b.pdf", mock.getDocumentList().get(0).getId());
+	        } else {
+	          Assert.assertEquals(3, mock.getDocumentList().size());
+	          IngestDocument a = mock.getDocumentList().get(0);
+	          Assert.assertEquals(
+	              "/assets/docs/foo", a.getFirstValue("suppressedByFolder").stringValue());
+	          Assert.assertNull(mock.getDocumentList().get(1).getField("suppressedByFolder"));
+	        }
+	      }
+	    } finally {
+	      deleteFile.delete();
+	    }
+	  }
+
+	  @Test
+	  public void testDuplicateChildIds() throws Exception {
+	    String xml = "<feed>"
+	    		+ "<item id='/fragments/videos/strategies/tax-efficient-investing1.doc'>1</item>"
+	    		+ "<item id='/fragments/videos/strategies/growth.doc'>2</item>"
+	    		+ "<item id='/fragments/videos/strategies/tax-efficient-investing1.doc'>3</item>"
+	    		+ "</feed>";
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    for (String mode : Arrays.asList("first", "last", "fingerprints", "streaming")) {
+	      IngestDocument ad = new IngestDocument("1");
+	      ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      s.setRules(rules);
+	      s.setChildXmlFormat("text");
+	      s.setMetricsEnabled(true);
+	      if ("streaming".equals(mode)) {
+	        ad.setField("xml", xml);
+	        s.setInput(Arrays.asList("xml"));
+	        s.setStreaming(true);
+	        s.setDuplicateChildIds("first");
+	      } else if ("fingerprints".equals(mode)) {
+	        s.setDuplicateChildIds("first");
+	        s.setDuplicateChildIdFingerprints(true);
+	      } else {
+	        s.setDuplicateChildIds(mode);
+	      }
+	      SdkTestUtils.startTransformer(s);
+	      MockIngestClient mock = new MockIngestClient();
+	      s.process(ad, mock);
+	      Assert.assertEquals(1, s.getMetrics().getChildrenDuplicate());
+	      s.stopComponent();
+	      List<IngestDocument> children = mock.getDocumentList();
+	      Assert.assertEquals(2, children.size());
+	      IngestDocument kept = "last".equals(mode) ? children.get(1) : children.get(0);
+	      Assert.assertEquals(
+	          "/fragments/videos/strategies/tax-efficient-investing1.doc", kept.getId());
+	      Assert.assertTrue(
+	          kept.getFirstValue("xml").stringValue().contains("last".equals(mode) ? ">3<" : ">1<"));
+	    }
+	  }
+
+	  @Test(expected = AttivioException.class)
+	  public void testStreamingDoesNotSuppress() throws Exception {
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setStreaming(true);
+	    s.setSuppressDeletedChildren("drop");
+	    s.startComponent();
+	  }
+
+	  @Test(expected = AttivioException.class)
+	  public void testStreamingKeepsFirstOnly() throws Exception {
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setStreaming(true);
+	    s.setDuplicateChildIds("last");
+	    s.startComponent();
+	  }
+
+	  @Test
+	  public void testMemoryBudget() throws Exception {
+	    File deleteFile = File.createTempFile("deletePaths", ".txt");
+	    try {
+	      String xml = "<feed>"
+	      		+ "<item id='/assets/docs/foo' delete='true'/>"
+	      		+ "<item id='/assets/docs/bar/a.pdf'/>"
+	      		+ "<item id='/assets/docs/bar/b.pdf'/>"
+	      		+ "<item id='/assets/docs/bar/c.pdf'/>"
+	      		+ "</feed>";
+	      HashMap<String, String> rules = new HashMap<String, String>();
+	      rules.put("/feed/item", "@id");
+	      HashMap<String, String> deleteFlag = new HashMap<String, String>();
+	      deleteFlag.put("/feed/item", "@delete");
+	      SplitXmlSetLineage s = new SplitXmlSetLineage();
+	      s.setRules(rules);
+	      s.setDeleteFlag(deleteFlag);
+	      s.setDeleteFile(deleteFile.getAbsolutePath());
+	      s.setParallelism(2);
+	      s.setFeedBatchSize(10);
+	      // smaller than a single child, every child waits for the one before
+	      s.setMemoryBudgetBytes(100);
+	      s.setMemoryBudgetWaitMillis(100);
+	      SdkTestUtils.startTransformer(s);
+	      // memory left held by the first feed would fail the second one
+	      for (int i = 0; i < 2; i++) {
+	        IngestDocument ad = new IngestDocument("1");
+	        ad.setField(FieldNames.XML_DOM, XMLUtils.parseAsW3c(xml));
+	        MockIngestClient mock = new MockIngestClient();
+	        s.process(ad, mock);
+	        Assert.assertEquals(4, mock.getDocumentList().size());
+	        Assert.assertEquals("/assets/docs/bar/c.pdf", mock.getDocumentList().get(3).getId());
+	      }
+	      s.stopComponent();
+	    } finally {
+	      deleteFile.delete();
+	    }
+	  }
+
+	  @Test
+	  public void testShardsMemoryBudget() throws Exception {
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("/feed/item", "@id");
+	    s.setRules(rules);
+	    s.setInput(Arrays.asList("xml"));
+	    s.setStreaming(true);
+	    s.setShardParallelism(3);
+	    s.setShardFileField("shards");
+	    s.setFeedBatchSize(16);
+	    s.setMaxInFlightChildren(2);
+	    // smaller than a single child, a queued or batched child holds back every shard
+	    s.setMemoryBudgetBytes(100);
+	    s.setMemoryBudgetWaitMillis(5000);
+	    SdkTestUtils.startTransformer(s);
+	    try {
+	      // memory left held by a feed, also a failed one, would fail the next one
+	      for (int i = 0; i < 3; i++) {
+	        IngestDocument ad = new IngestDocument("1");
+	        for (int j = 0; j < 3; j++) {
+	          ad.addValue("xml", "<feed><item id='/assets/" + j + "/a.pdf'/>"
+	              + "<item id='/assets/" + j + "/b.pdf'/></feed>");
+	        }
+	        if (i == 1) {
+	          ad.addValue("shards", new File("no-such-shard.xml").getAbsolutePath());
+	        }
+	        MockIngestClient mock = new MockIngestClient();
+	        try {
+	          s.process(ad, mock);
+	          Assert.assertNotEquals(1, i);
+	          Assert.assertEquals(6, mock.getDocumentList().size());
+	        } catch (AttivioException e) {
+	          Assert.assertEquals(1, i);
+	        }
+	      }
+	    } finally {
+	      s.stopComponent();
+	    }
+	  }
+
+	  @Test(expected = AttivioException.class)
+	  public void testUnknownMemoryBudgetPolicy() throws Exception {
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    s.setMemoryBudgetBytes(1000);
+	    s.setMemoryBudgetPolicy("spill");
+	    s.startComponent();
+	  }
+
+	  @Test(expected = AttivioException.class)
+	  public void testStreamingRequiresSimplePaths() throws Exception {
+	    SplitXmlSetLineage s = new SplitXmlSetLineage();
+	    HashMap<String, String> rules = new HashMap<String, String>();
+	    rules.put("//item", "@id");
+	    s.setRules(rules);
+	    s.setStreaming(true);
+	    s.startComponent();
+	  }
+
 	  @Test(expected = AttivioException.class)
 	  public void testPLAT21918() throws Exception {
 	    IngestDocument ad = new IngestDocument("1");
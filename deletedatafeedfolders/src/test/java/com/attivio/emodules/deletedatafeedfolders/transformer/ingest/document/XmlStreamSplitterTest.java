@@ -0,0 +1,142 @@
+/** Copyright 2021 Lucidworks Inc., All rights reserved. */
+package com.attivio.emodules.deletedatafeedfolders.transformer.ingest.document;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import org.junit.Assert;
+import org.jaxen.SimpleNamespaceContext;
+import org.jaxen.dom.DOMXPath;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+public class XmlStreamSplitterTest {
+
+  @Test
+  public void testParseSimplePaths() {
+    Assert.assertNotNull(SimplePath.parse("/feed/item", null));
+    Assert.assertNotNull(SimplePath.parse("/feed/*", null));
+    Assert.assertNotNull(
+        SimplePath.parse("/m:feed/m:item", Collections.singletonMap("m", "urn:m")));
+    Assert.assertNull(SimplePath.parse("//item", null));
+    Assert.assertNull(SimplePath.parse("/feed/item[@delete]", null));
+    Assert.assertNull(SimplePath.parse("feed/item", null));
+    Assert.assertNull(SimplePath.parse("/m:feed", null));
+  }
+
+  @Test
+  public void testSplit() throws Exception {
+    String xml =
+        "<feed><header><item id='h'/></header>"
+            + "<item id='1'><title>one</title></item>"
+            + "<item id='2' delete='true'><title><![CDATA[two]]></title></item>"
+            + "</feed>";
+    List<Element> matched = split(xml, SimplePath.parse("/feed/item", null));
+    Assert.assertEquals(2, matched.size());
+    Assert.assertEquals("1", matched.get(0).getAttribute("id"));
+    Assert.assertEquals("one", matched.get(0).getTextContent());
+    Assert.assertEquals("true", matched.get(1).getAttribute("delete"));
+    Assert.assertEquals("two", matched.get(1).getTextContent());
+    Assert.assertSame(matched.get(1), matched.get(1).getOwnerDocument().getDocumentElement());
+  }
+
+  @Test
+  public void testSplitWithNamespaces() throws Exception {
+    String xml =
+        "<m:feed xmlns:m='urn:m'><m:item id='1'/><item id='2'/><m:item id='3'/></m:feed>";
+    List<Element> matched =
+        split(xml, SimplePath.parse("/x:feed/x:item", Collections.singletonMap("x", "urn:m")));
+    Assert.assertEquals(2, matched.size());
+    Assert.assertEquals("urn:m", matched.get(0).getNamespaceURI());
+    Assert.assertEquals("3", matched.get(1).getAttribute("id"));
+  }
+
+  @Test
+  public void testSplitText() throws Exception {
+    String xml =
+        "<m:feed xmlns:m='urn:m' xmlns:x='urn:x'>"
+            + "<m:item id='1' x:kind='a&amp;b'><title>one &lt; two</title><![CDATA[c]]></m:item>"
+            + "<m:item id='2' delete='true'/>"
+            + "</m:feed>";
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xml));
+    final List<Map<String, String>> attributes = new ArrayList<>();
+    final List<String> texts = new ArrayList<>();
+    new XmlStreamSplitter(
+            Arrays.asList(
+                SimplePath.parse("/m:feed/m:item", Collections.singletonMap("m", "urn:m"))))
+        .splitText(
+            reader,
+            (attrs, text, matches) -> {
+              attributes.add(attrs);
+              texts.add(text);
+            });
+    Assert.assertEquals(2, texts.size());
+    Assert.assertEquals("1", attributes.get(0).get("id"));
+    Assert.assertNull(attributes.get(0).get("kind"));
+    Assert.assertEquals("true", attributes.get(1).get("delete"));
+
+    // every fragment is well formed XML on its own
+    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    dbf.setNamespaceAware(true);
+    Element first =
+        dbf.newDocumentBuilder()
+            .parse(new InputSource(new StringReader(texts.get(0))))
+            .getDocumentElement();
+    Assert.assertEquals("urn:m", first.getNamespaceURI());
+    Assert.assertEquals("a&b", first.getAttributeNS("urn:x", "kind"));
+    Assert.assertEquals("one < twoc", first.getTextContent());
+  }
+
+  @Test
+  public void testSelect() throws Exception {
+    String xml =
+        "<m:feed xmlns:m='urn:m'><m:item id='1'><m:item id='nested'/></m:item>"
+            + "<item id='2'/><m:item id='3'/></m:feed>";
+    for (boolean namespaceAware : new boolean[] {true, false}) {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(namespaceAware);
+      Document d = factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+      Map<String, String> ns = Collections.singletonMap("x", "urn:m");
+      for (String expression : new String[] {"/x:feed/x:item", "/x:feed/item", "/x:feed/*"}) {
+        DOMXPath xpath = new DOMXPath(expression);
+        xpath.setNamespaceContext(new SimpleNamespaceContext(ns));
+        // evaluated from a node deep in the document, like the XPath
+        Element context = (Element) d.getDocumentElement().getLastChild();
+        Assert.assertEquals(
+            expression + " namespaceAware=" + namespaceAware,
+            xpath.selectNodes(context),
+            SimplePath.parse(expression, ns).select(context));
+      }
+    }
+  }
+
+  @Test
+  public void testAttributeName() {
+    Assert.assertEquals("id", SplitRule.attributeName(" @id "));
+    Assert.assertNull(SplitRule.attributeName("@m:id"));
+    Assert.assertNull(SplitRule.attributeName("id"));
+    Assert.assertNull(SplitRule.attributeName("../@id"));
+    Assert.assertNull(SplitRule.attributeName("@xmlns"));
+  }
+
+  private List<Element> split(String xml, SimplePath... paths) throws Exception {
+    final DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xml));
+    final List<Element> matched = new ArrayList<>();
+    new XmlStreamSplitter(Arrays.asList(paths))
+        .split(reader, builder::newDocument, (element, matches) -> matched.add(element));
+    return matched;
+  }
+}